@@ -37,12 +37,19 @@ graalvmNative {
 dependencies {
     implementation(libs.bouncycastle)
     implementation(libs.jackson.databind)
+    implementation(libs.jackson.cbor)
     implementation(libs.argparse4j)
     implementation(libs.dbusjava)
     implementation(libs.slf4j.api)
     implementation(libs.slf4j.jul)
     implementation(libs.logback)
     implementation(project(":lib"))
+
+    testImplementation(libs.junit)
+}
+
+tasks.named<Test>("test") {
+    useJUnitPlatform()
 }
 
 configurations {
@@ -3,6 +3,7 @@ package org.asamk.signal.manager;
 import org.asamk.signal.manager.api.AlreadyReceivingException;
 import org.asamk.signal.manager.api.AttachmentInvalidException;
 import org.asamk.signal.manager.api.Configuration;
+import org.asamk.signal.manager.api.DatabaseStatistics;
 import org.asamk.signal.manager.api.Device;
 import org.asamk.signal.manager.api.DeviceLinkUrl;
 import org.asamk.signal.manager.api.Group;
@@ -21,6 +22,7 @@ import org.asamk.signal.manager.api.Message;
 import org.asamk.signal.manager.api.MessageEnvelope;
 import org.asamk.signal.manager.api.NotAGroupMemberException;
 import org.asamk.signal.manager.api.NotPrimaryDeviceException;
+import org.asamk.signal.manager.api.OutboxResult;
 import org.asamk.signal.manager.api.Pair;
 import org.asamk.signal.manager.api.PendingAdminApprovalException;
 import org.asamk.signal.manager.api.ReceiveConfig;
@@ -28,6 +30,7 @@ import org.asamk.signal.manager.api.Recipient;
 import org.asamk.signal.manager.api.RecipientIdentifier;
 import org.asamk.signal.manager.api.SendGroupMessageResults;
 import org.asamk.signal.manager.api.SendMessageResults;
+import org.asamk.signal.manager.api.SendThrottleStatus;
 import org.asamk.signal.manager.api.StickerPack;
 import org.asamk.signal.manager.api.StickerPackInvalidException;
 import org.asamk.signal.manager.api.StickerPackUrl;
@@ -161,6 +164,24 @@ public interface Manager extends Closeable {
             Message message, Set<RecipientIdentifier> recipients, long editTargetTimestamp
     ) throws IOException, AttachmentInvalidException, NotAGroupMemberException, GroupNotFoundException, GroupSendingNotAllowedException, UnregisteredRecipientException, InvalidStickerException;
 
+    /**
+     * Queue the message in the persistent outbox and return without waiting for the network.
+     * Queued messages are sent in the background while the manager is receiving messages or has outbox listeners,
+     * the final result for each recipient is passed to the outbox listeners and can be queried with
+     * {@link #getOutboxResults(long)}.
+     *
+     * @return the timestamp of the queued message
+     */
+    long queueMessage(
+            Message message, Set<RecipientIdentifier.Single> recipients
+    ) throws UnregisteredRecipientException;
+
+    /**
+     * Get the final results of a message queued with {@link #queueMessage(Message, Set)}.
+     * Recipients the message is still queued for are not included, results are kept for a week.
+     */
+    List<OutboxResult> getOutboxResults(long timestamp);
+
     SendMessageResults sendRemoteDeleteMessage(
             long targetSentTimestamp, Set<RecipientIdentifier> recipients
     ) throws IOException, NotAGroupMemberException, GroupNotFoundException, GroupSendingNotAllowedException;
@@ -233,6 +254,10 @@ public interface Manager extends Closeable {
 
     boolean isReceiving();
 
+    void addOutboxListener(OutboxListener listener);
+
+    void removeOutboxListener(OutboxListener listener);
+
     /**
      * Receive new messages from server, returns if no new message arrive in a timespan of timeout.
      */
@@ -277,10 +302,19 @@ public interface Manager extends Closeable {
      */
     boolean trustIdentityAllKeys(RecipientIdentifier.Single recipient) throws UnregisteredRecipientException;
 
+    DatabaseStatistics getDatabaseStatistics();
+
+    /**
+     * Get the current state of the adaptive send rate limiting of this account.
+     */
+    SendThrottleStatus getSendThrottleStatus();
+
     void addAddressChangedListener(Runnable listener);
 
     void addClosedListener(Runnable listener);
 
+    void removeClosedListener(Runnable listener);
+
     InputStream retrieveAttachment(final String id) throws IOException;
 
     @Override
@@ -293,4 +327,9 @@ public interface Manager extends Closeable {
 
         void handleMessage(MessageEnvelope envelope, Throwable e);
     }
+
+    interface OutboxListener {
+
+        void handleResult(OutboxResult result);
+    }
 }
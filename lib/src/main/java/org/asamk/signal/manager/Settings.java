@@ -2,7 +2,21 @@ package org.asamk.signal.manager;
 
 import org.asamk.signal.manager.api.TrustNewIdentity;
 
-public record Settings(TrustNewIdentity trustNewIdentity, boolean disableMessageSendLog) {
+import java.time.Duration;
 
-    public static Settings DEFAULT = new Settings(TrustNewIdentity.ON_FIRST_USE, false);
+public record Settings(
+        TrustNewIdentity trustNewIdentity,
+        boolean disableMessageSendLog,
+        Duration slowQueryThreshold,
+        int sendParallelism,
+        int profileFetchParallelism,
+        Double sendRateLimit
+) {
+
+    public static Settings DEFAULT = new Settings(TrustNewIdentity.ON_FIRST_USE,
+            false,
+            Duration.ofMillis(500),
+            10,
+            10,
+            null);
 }
@@ -0,0 +1,13 @@
+package org.asamk.signal.manager.api;
+
+import java.util.List;
+import java.util.Optional;
+
+public record DatabaseStatistics(
+        long size,
+        long pageCount,
+        long freePageCount,
+        Optional<Long> lastMaintenanceTimestamp,
+        LatencyStatistics connectionWait,
+        List<LatencyStatistics> queries
+) {}
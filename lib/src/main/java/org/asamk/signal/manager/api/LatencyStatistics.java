@@ -0,0 +1,13 @@
+package org.asamk.signal.manager.api;
+
+import java.util.List;
+
+/**
+ * Latency histogram of a timed operation.
+ *
+ * @param buckets non-cumulative bucket counts, the upper bound of the last bucket is null
+ */
+public record LatencyStatistics(String name, long count, long totalMicros, long maxMicros, List<Bucket> buckets) {
+
+    public record Bucket(Long upperBoundMicros, long count) {}
+}
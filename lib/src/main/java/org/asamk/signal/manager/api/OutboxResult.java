@@ -0,0 +1,18 @@
+package org.asamk.signal.manager.api;
+
+import java.util.Optional;
+
+/**
+ * Final result of a message sent via the outbox.
+ *
+ * @param result the result of the last send attempt, empty if the message couldn't be prepared for sending
+ * @param error  reason why the message couldn't be sent, if it failed before a send attempt was made
+ */
+public record OutboxResult(
+        long timestamp,
+        RecipientAddress recipient,
+        boolean isSuccess,
+        int attempts,
+        Optional<SendMessageResult> result,
+        Optional<String> error
+) {}
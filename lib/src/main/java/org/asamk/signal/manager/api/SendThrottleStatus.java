@@ -0,0 +1,8 @@
+package org.asamk.signal.manager.api;
+
+import java.time.Duration;
+
+/**
+ * @param rate the permitted messages per second, null if messages are currently not paced
+ */
+public record SendThrottleStatus(Double rate, int queuedSends, Duration untilNextSend) {}
@@ -4,8 +4,11 @@ import org.asamk.signal.manager.api.AttachmentInvalidException;
 import org.asamk.signal.manager.config.ServiceConfig;
 import org.asamk.signal.manager.internal.SignalDependencies;
 import org.asamk.signal.manager.storage.AttachmentStore;
+import org.asamk.signal.manager.storage.SignalAccount;
+import org.asamk.signal.manager.storage.attachmentUploads.AttachmentUploadStore;
 import org.asamk.signal.manager.util.AttachmentUtils;
 import org.asamk.signal.manager.util.IOUtils;
+import org.asamk.signal.manager.util.Utils;
 import org.signal.libsignal.protocol.InvalidMessageException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,23 +17,42 @@ import org.whispersystems.signalservice.api.messages.SignalServiceAttachmentPoin
 import org.whispersystems.signalservice.api.messages.SignalServiceAttachmentStream;
 import org.whispersystems.signalservice.api.push.exceptions.MissingConfigurationException;
 import org.whispersystems.signalservice.api.util.StreamDetails;
+import org.whispersystems.signalservice.internal.push.http.CancelationSignal;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class AttachmentHelper {
 
     private final static Logger logger = LoggerFactory.getLogger(AttachmentHelper.class);
 
+    private final static int MAX_PARALLEL_UPLOADS = 4;
+    // Attachments are kept on the CDN for 30 days, reuse uploads only while they are far from expiring
+    private final static long UPLOAD_REUSE_DURATION = TimeUnit.DAYS.toMillis(3);
+
+    private final SignalAccount account;
     private final SignalDependencies dependencies;
     private final AttachmentStore attachmentStore;
+    // Limits the concurrent uploads of all messages sent by this account
+    private final Semaphore uploadPermits = new Semaphore(MAX_PARALLEL_UPLOADS);
 
     public AttachmentHelper(final Context context) {
+        this.account = context.getAccount();
         this.dependencies = context.getDependencies();
         this.attachmentStore = context.getAttachmentStore();
     }
@@ -43,20 +65,54 @@ public class AttachmentHelper {
         return attachmentStore.retrieveAttachment(id);
     }
 
+    /**
+     * Upload the attachments concurrently, the returned pointers are in the same order as the given attachments.
+     * All attachments are validated before the first upload starts. If one upload fails, the remaining uploads are
+     * canceled.
+     */
     public List<SignalServiceAttachment> uploadAttachments(final List<String> attachments) throws AttachmentInvalidException, IOException {
-        var attachmentStreams = AttachmentUtils.createAttachmentStreams(attachments);
+        final var uploadKeys = new ArrayList<AttachmentUploadStore.Key>(attachments.size());
+        for (final var attachment : attachments) {
+            uploadKeys.add(getUploadKey(attachment));
+        }
 
         // Upload attachments here, so we only upload once even for multiple recipients
-        var attachmentPointers = new ArrayList<SignalServiceAttachment>(attachmentStreams.size());
-        for (var attachmentStream : attachmentStreams) {
-            attachmentPointers.add(uploadAttachment(attachmentStream));
+        final var progress = new UploadProgress(attachments.size());
+        final var canceled = new AtomicBoolean(false);
+        final var uploads = new ArrayList<Future<SignalServiceAttachmentPointer>>(attachments.size());
+        for (var i = 0; i < attachments.size(); i++) {
+            final var attachment = attachments.get(i);
+            final var uploadKey = uploadKeys.get(i);
+            uploads.add(dependencies.getExecutor()
+                    .submit(() -> uploadBatchAttachment(attachment, uploadKey, progress, canceled)));
         }
+
+        final var attachmentPointers = new ArrayList<SignalServiceAttachment>(attachments.size());
+        try {
+            for (final var upload : uploads) {
+                attachmentPointers.add(upload.get());
+            }
+        } catch (ExecutionException e) {
+            cancelUploads(uploads, canceled);
+            if (e.getCause() instanceof AttachmentInvalidException ex) {
+                throw ex;
+            } else if (e.getCause() instanceof IOException ex) {
+                throw ex;
+            } else if (e.getCause() instanceof RuntimeException ex) {
+                throw ex;
+            }
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            cancelUploads(uploads, canceled);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading attachments");
+        }
+        progress.logSummary();
         return attachmentPointers;
     }
 
     public SignalServiceAttachmentPointer uploadAttachment(String attachment) throws IOException, AttachmentInvalidException {
-        var attachmentStream = AttachmentUtils.createAttachmentStream(attachment);
-        return uploadAttachment(attachmentStream);
+        return uploadAttachment(attachment, getUploadKey(attachment), null, null);
     }
 
     public SignalServiceAttachmentPointer uploadAttachment(SignalServiceAttachmentStream attachment) throws IOException {
@@ -64,6 +120,93 @@ public class AttachmentHelper {
         return messageSender.uploadAttachment(attachment);
     }
 
+    private SignalServiceAttachmentPointer uploadBatchAttachment(
+            final String attachment,
+            final AttachmentUploadStore.Key uploadKey,
+            final UploadProgress progress,
+            final AtomicBoolean canceled
+    ) throws IOException, AttachmentInvalidException, InterruptedException {
+        uploadPermits.acquire();
+        try {
+            if (canceled.get()) {
+                throw new InterruptedIOException("Upload canceled");
+            }
+            final var index = progress.start();
+            final var pointer = uploadAttachment(attachment, uploadKey, new SignalServiceAttachment.ProgressListener() {
+                @Override
+                public void onAttachmentProgress(final long total, final long current) {
+                    progress.update(index, total, current);
+                }
+
+                @Override
+                public boolean shouldCancel() {
+                    return canceled.get();
+                }
+            }, canceled::get);
+            progress.finish(index, pointer.getSize().orElse(0));
+            return pointer;
+        } finally {
+            uploadPermits.release();
+        }
+    }
+
+    /**
+     * Upload the attachment, unless the same content with the same metadata has been uploaded recently.
+     * In that case the previous attachment pointer, including its key and digest, is reused.
+     */
+    private SignalServiceAttachmentPointer uploadAttachment(
+            final String attachment,
+            final AttachmentUploadStore.Key uploadKey,
+            final SignalServiceAttachment.ProgressListener progressListener,
+            final CancelationSignal cancelationSignal
+    ) throws IOException, AttachmentInvalidException {
+        final var attachmentUploadStore = account.getAttachmentUploadStore();
+        final var previousUpload = attachmentUploadStore.getPointer(uploadKey);
+        if (previousUpload.isPresent()) {
+            logger.debug("Reusing previous upload {} of attachment", previousUpload.get().getRemoteId());
+            return previousUpload.get();
+        }
+
+        final var attachmentStream = AttachmentUtils.createAttachmentStream(attachment,
+                progressListener,
+                cancelationSignal);
+        final var pointer = uploadAttachment(attachmentStream);
+        attachmentUploadStore.storePointer(uploadKey, pointer, System.currentTimeMillis() + UPLOAD_REUSE_DURATION);
+        return pointer;
+    }
+
+    private static AttachmentUploadStore.Key getUploadKey(final String attachment) throws AttachmentInvalidException {
+        try {
+            final var streamDetails = Utils.createStreamDetails(attachment);
+            final var details = streamDetails.first();
+            final var digest = MessageDigest.getInstance("SHA-256");
+            try (final var input = details.getStream()) {
+                final var buffer = new byte[8192];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            return new AttachmentUploadStore.Key(digest.digest(),
+                    details.getContentType(),
+                    streamDetails.second(),
+                    details.getLength());
+        } catch (IOException e) {
+            throw new AttachmentInvalidException(attachment, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static void cancelUploads(
+            final List<Future<SignalServiceAttachmentPointer>> uploads, final AtomicBoolean canceled
+    ) {
+        canceled.set(true);
+        for (final var upload : uploads) {
+            upload.cancel(true);
+        }
+    }
+
     public void downloadAttachment(final SignalServiceAttachment attachment) {
         if (!attachment.isPointer()) {
             logger.warn("Invalid state, can't store an attachment stream.");
@@ -128,6 +271,58 @@ public class AttachmentHelper {
         }
     }
 
+    /**
+     * Tracks the progress and throughput of uploading the attachments of one message.
+     */
+    private static class UploadProgress {
+
+        private final int count;
+        private final long startTime = System.nanoTime();
+        private final AtomicInteger started = new AtomicInteger();
+        private final AtomicInteger finished = new AtomicInteger();
+        private final AtomicLong uploadedBytes = new AtomicLong();
+
+        private UploadProgress(final int count) {
+            this.count = count;
+        }
+
+        int start() {
+            return started.incrementAndGet();
+        }
+
+        void update(int index, long total, long current) {
+            logger.trace("Attachment {}/{} upload progress: {}/{} bytes", index, count, current, total);
+        }
+
+        void finish(int index, long bytes) {
+            final var totalBytes = uploadedBytes.addAndGet(bytes);
+            logger.debug("Uploaded attachment {}/{} ({} bytes), {}/{} done, {} KiB/s",
+                    index,
+                    count,
+                    bytes,
+                    finished.incrementAndGet(),
+                    count,
+                    getThroughput(totalBytes));
+        }
+
+        void logSummary() {
+            if (count == 0) {
+                return;
+            }
+            final var totalBytes = uploadedBytes.get();
+            logger.debug("Uploaded {} attachments ({} bytes) in {}ms, {} KiB/s",
+                    count,
+                    totalBytes,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                    getThroughput(totalBytes));
+        }
+
+        private long getThroughput(long bytes) {
+            final var elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+            return bytes * 1000 / 1024 / elapsedMillis;
+        }
+    }
+
     @FunctionalInterface
     public interface AttachmentHandler {
 
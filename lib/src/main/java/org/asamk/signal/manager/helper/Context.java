@@ -28,12 +28,14 @@ public class Context {
     private GroupV2Helper groupV2Helper;
     private IdentityHelper identityHelper;
     private IncomingMessageHandler incomingMessageHandler;
+    private OutboxHelper outboxHelper;
     private PinHelper pinHelper;
     private PreKeyHelper preKeyHelper;
     private ProfileHelper profileHelper;
     private ReceiveHelper receiveHelper;
     private RecipientHelper recipientHelper;
     private SendHelper sendHelper;
+    private SendThrottler sendThrottler;
     private StickerHelper stickerHelper;
     private StorageHelper storageHelper;
     private SyncHelper syncHelper;
@@ -113,6 +115,10 @@ public class Context {
                 () -> this.incomingMessageHandler = new IncomingMessageHandler(this));
     }
 
+    public OutboxHelper getOutboxHelper() {
+        return getOrCreate(() -> outboxHelper, () -> outboxHelper = new OutboxHelper(this));
+    }
+
     PinHelper getPinHelper() {
         return getOrCreate(() -> pinHelper,
                 () -> pinHelper = new PinHelper(dependencies.getKeyBackupService(),
@@ -139,6 +145,10 @@ public class Context {
         return getOrCreate(() -> sendHelper, () -> sendHelper = new SendHelper(this));
     }
 
+    public SendThrottler getSendThrottler() {
+        return getOrCreate(() -> sendThrottler, () -> sendThrottler = new SendThrottler(account.getSettings().sendRateLimit()));
+    }
+
     public StickerHelper getStickerHelper() {
         return getOrCreate(() -> stickerHelper, () -> stickerHelper = new StickerHelper(this));
     }
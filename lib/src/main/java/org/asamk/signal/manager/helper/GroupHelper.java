@@ -64,6 +64,9 @@ public class GroupHelper {
 
     private final static Logger logger = LoggerFactory.getLogger(GroupHelper.class);
 
+    // Retrieve the full group state instead of applying the group changes, if there are more changes than this
+    private final static int MAX_INCREMENTAL_GROUP_CHANGES = 100;
+
     private final SignalAccount account;
     private final SignalDependencies dependencies;
     private final Context context;
@@ -141,11 +144,7 @@ public class GroupHelper {
             }
             if (group == null) {
                 try {
-                    group = context.getGroupV2Helper().getDecryptedGroup(groupSecretParams);
-
-                    if (group != null) {
-                        storeProfileKeysFromHistory(groupSecretParams, groupInfoV2, group);
-                    }
+                    group = retrieveGroupState(groupSecretParams, groupInfoV2);
                 } catch (NotAGroupMemberException ignored) {
                 }
             }
@@ -389,16 +388,12 @@ public class GroupHelper {
                 final var groupSecretParams = GroupSecretParams.deriveFromMasterKey(groupInfoV2.getMasterKey());
                 DecryptedGroup decryptedGroup;
                 try {
-                    decryptedGroup = context.getGroupV2Helper().getDecryptedGroup(groupSecretParams);
+                    decryptedGroup = retrieveGroupState(groupSecretParams, groupInfoV2);
                 } catch (NotAGroupMemberException e) {
                     groupInfoV2.setPermissionDenied(true);
                     decryptedGroup = null;
                 }
                 if (decryptedGroup != null) {
-                    try {
-                        storeProfileKeysFromHistory(groupSecretParams, groupInfoV2, decryptedGroup);
-                    } catch (NotAGroupMemberException ignored) {
-                    }
                     storeProfileKeysFromMembers(decryptedGroup);
                     final var avatar = decryptedGroup.getAvatar();
                     if (avatar != null && !avatar.isEmpty()) {
@@ -412,6 +407,96 @@ public class GroupHelper {
         return group;
     }
 
+    /**
+     * Retrieve the current group state from the server and store the profile keys from the group history.
+     * If a local group state exists, only the group changes since its revision are retrieved and applied to it.
+     * The full group state is only retrieved if there are too many changes or they can't be retrieved or applied,
+     * then the profile keys are only read from the history after the last applied change.
+     */
+    private DecryptedGroup retrieveGroupState(
+            final GroupSecretParams groupSecretParams, final GroupInfoV2 localGroup
+    ) throws NotAGroupMemberException {
+        final var localState = localGroup.getGroup();
+        var processedRevision = -1;
+        if (localState != null) {
+            final var changes = retrieveGroupChanges(groupSecretParams, localState);
+            if (changes.complete()) {
+                return changes.group();
+            }
+            processedRevision = changes.group().getRevision();
+        }
+
+        final var group = context.getGroupV2Helper().getDecryptedGroup(groupSecretParams);
+        if (group != null) {
+            try {
+                storeProfileKeysFromHistory(groupSecretParams, processedRevision, group);
+            } catch (NotAGroupMemberException ignored) {
+            }
+        }
+        return group;
+    }
+
+    /**
+     * Apply the group changes since the revision of the local group state.
+     * The profile keys from the applied changes are stored, even if not all changes could be applied.
+     */
+    private GroupChanges retrieveGroupChanges(
+            final GroupSecretParams groupSecretParams, final DecryptedGroup localState
+    ) throws NotAGroupMemberException {
+        var group = localState;
+        var fromRevision = localState.getRevision();
+        var changeCount = 0;
+        final var newProfileKeys = new HashMap<RecipientId, ProfileKey>();
+        try {
+            while (true) {
+                final var page = context.getGroupV2Helper()
+                        .getDecryptedGroupHistoryPage(groupSecretParams, fromRevision);
+                if (page == null) {
+                    return new GroupChanges(group, false);
+                }
+                for (final var entry : page.getResults()) {
+                    final var change = entry.getChange().orElse(null);
+                    if (change == null || change.getRevision() <= group.getRevision()) {
+                        continue;
+                    }
+                    if (change.getRevision() != group.getRevision() + 1) {
+                        logger.debug("Missing group change for revision {}, retrieving full group state",
+                                group.getRevision() + 1);
+                        return new GroupChanges(group, false);
+                    }
+                    if (++changeCount > MAX_INCREMENTAL_GROUP_CHANGES) {
+                        logger.debug("Too many group changes, retrieving full group state");
+                        return new GroupChanges(group, false);
+                    }
+                    final var updatedGroup = context.getGroupV2Helper().getUpdatedDecryptedGroup(group, change);
+                    if (updatedGroup == null) {
+                        logger.debug("Failed to apply group change for revision {}, retrieving full group state",
+                                change.getRevision());
+                        return new GroupChanges(group, false);
+                    }
+                    group = updatedGroup;
+                    final var profileKey = context.getGroupV2Helper().getAuthoritativeProfileKeyFromChange(change);
+                    if (profileKey != null) {
+                        final var recipientId = account.getRecipientResolver().resolveRecipient(profileKey.first());
+                        newProfileKeys.put(recipientId, profileKey.second());
+                    }
+                }
+                if (!page.getPagingData().hasMorePages()) {
+                    break;
+                }
+                fromRevision = page.getPagingData().getNextPageRevision();
+            }
+        } finally {
+            newProfileKeys.forEach(account.getProfileStore()::storeProfileKey);
+        }
+
+        logger.debug("Applied {} group changes, updated group from revision {} to {}",
+                changeCount,
+                localState.getRevision(),
+                group.getRevision());
+        return new GroupChanges(group, true);
+    }
+
     private void downloadGroupAvatar(GroupIdV2 groupId, GroupSecretParams groupSecretParams, String cdnKey) {
         try {
             context.getAvatarStore()
@@ -473,22 +558,29 @@ public class GroupHelper {
         }
     }
 
+    /**
+     * @param processedRevision the revision up to which the profile keys from the history have already been stored,
+     *                          or -1 if none have been stored
+     */
     private void storeProfileKeysFromHistory(
             final GroupSecretParams groupSecretParams,
-            final GroupInfoV2 localGroup,
+            final int processedRevision,
             final DecryptedGroup newDecryptedGroup
     ) throws NotAGroupMemberException {
         final var revisionWeWereAdded = context.getGroupV2Helper().findRevisionWeWereAdded(newDecryptedGroup);
-        final var localRevision = localGroup.getGroup() == null ? 0 : localGroup.getGroup().getRevision();
-        var fromRevision = Math.max(revisionWeWereAdded, localRevision);
+        var fromRevision = Math.max(revisionWeWereAdded, Math.max(0, processedRevision));
         final var newProfileKeys = new HashMap<RecipientId, ProfileKey>();
         while (true) {
             final var page = context.getGroupV2Helper().getDecryptedGroupHistoryPage(groupSecretParams, fromRevision);
+            if (page == null) {
+                break;
+            }
             page.getResults()
                     .stream()
                     .map(DecryptedGroupHistoryEntry::getChange)
                     .filter(Optional::isPresent)
                     .map(Optional::get)
+                    .filter(change -> change.getRevision() > processedRevision)
                     .map(context.getGroupV2Helper()::getAuthoritativeProfileKeyFromChange)
                     .filter(Objects::nonNull)
                     .forEach(p -> {
@@ -826,4 +918,6 @@ public class GroupHelper {
             return IOUtils.readFully(avatar);
         }
     }
+
+    private record GroupChanges(DecryptedGroup group, boolean complete) {}
 }
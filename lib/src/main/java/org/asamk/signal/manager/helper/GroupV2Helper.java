@@ -55,6 +55,7 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -63,10 +64,16 @@ class GroupV2Helper {
 
     private final static Logger logger = LoggerFactory.getLogger(GroupV2Helper.class);
 
+    // Renew the credentials in the background, when they expire in less than this many days
+    private final static int CREDENTIAL_REFRESH_DAYS = 2;
+    private final static long CREDENTIAL_REFRESH_RETRY_DELAY = TimeUnit.HOURS.toMillis(1);
+
     private final SignalDependencies dependencies;
     private final Context context;
 
-    private Map<Long, AuthCredentialWithPniResponse> groupApiCredentials;
+    private volatile Map<Long, AuthCredentialWithPniResponse> groupApiCredentials;
+    private final AtomicBoolean credentialRefreshRunning = new AtomicBoolean(false);
+    private volatile long lastCredentialRefreshAttempt = 0;
 
     GroupV2Helper(final Context context) {
         this.dependencies = context.getDependencies();
@@ -75,6 +82,30 @@ class GroupV2Helper {
 
     void clearAuthCredentialCache() {
         groupApiCredentials = null;
+        context.getAccount().getGroupAuthCredentialStore().deleteCredentials();
+    }
+
+    /**
+     * Fetch new group api credentials in the background, if the current ones run out in the next days.
+     */
+    void refreshAuthCredentialsIfNecessary() {
+        final var refreshDaySeconds = currentDaySeconds() + TimeUnit.DAYS.toSeconds(CREDENTIAL_REFRESH_DAYS);
+        if (getCachedCredentials().containsKey(refreshDaySeconds)
+                || System.currentTimeMillis() - lastCredentialRefreshAttempt < CREDENTIAL_REFRESH_RETRY_DELAY
+                || !credentialRefreshRunning.compareAndSet(false, true)) {
+            return;
+        }
+        lastCredentialRefreshAttempt = System.currentTimeMillis();
+        dependencies.getExecutor().execute(() -> {
+            try {
+                logger.debug("Refreshing group api credentials");
+                fetchCredentials(currentDaySeconds());
+            } catch (IOException e) {
+                logger.debug("Failed to refresh group api credentials, ignoring: {}", e.getMessage());
+            } finally {
+                credentialRefreshRunning.set(false);
+            }
+        });
     }
 
     DecryptedGroup getDecryptedGroup(final GroupSecretParams groupSecretParams) throws NotAGroupMemberException {
@@ -644,34 +675,48 @@ class GroupV2Helper {
             final GroupSecretParams groupSecretParams
     ) throws IOException {
         final var todaySeconds = currentDaySeconds();
-        if (groupApiCredentials == null || !groupApiCredentials.containsKey(todaySeconds)) {
-            // Returns credentials for the next 7 days
-            groupApiCredentials = dependencies.getGroupsV2Api()
-                    .getCredentials(todaySeconds)
-                    .getAuthCredentialWithPniResponseHashMap();
-            // TODO cache credentials on disk until they expire
+        var credentials = getCachedCredentials();
+        if (!credentials.containsKey(todaySeconds)) {
+            credentials = fetchCredentials(todaySeconds);
         }
         try {
-            return getAuthorizationString(groupSecretParams, todaySeconds);
+            return getAuthorizationString(groupSecretParams, todaySeconds, credentials.get(todaySeconds));
         } catch (VerificationFailedException e) {
             logger.debug("Group api credentials invalid, renewing and trying again.");
-            groupApiCredentials.clear();
         }
 
-        groupApiCredentials = dependencies.getGroupsV2Api()
-                .getCredentials(todaySeconds)
-                .getAuthCredentialWithPniResponseHashMap();
+        credentials = fetchCredentials(todaySeconds);
         try {
-            return getAuthorizationString(groupSecretParams, todaySeconds);
+            return getAuthorizationString(groupSecretParams, todaySeconds, credentials.get(todaySeconds));
         } catch (VerificationFailedException e) {
             throw new IOException(e);
         }
     }
 
+    private Map<Long, AuthCredentialWithPniResponse> getCachedCredentials() {
+        var credentials = groupApiCredentials;
+        if (credentials == null) {
+            credentials = context.getAccount().getGroupAuthCredentialStore().getCredentials(currentDaySeconds());
+            groupApiCredentials = credentials;
+        }
+        return credentials;
+    }
+
+    private Map<Long, AuthCredentialWithPniResponse> fetchCredentials(final long todaySeconds) throws IOException {
+        // Returns credentials for the next 7 days
+        final var credentials = Map.copyOf(dependencies.getGroupsV2Api()
+                .getCredentials(todaySeconds)
+                .getAuthCredentialWithPniResponseHashMap());
+        context.getAccount().getGroupAuthCredentialStore().storeCredentials(credentials);
+        groupApiCredentials = credentials;
+        return credentials;
+    }
+
     private GroupsV2AuthorizationString getAuthorizationString(
-            final GroupSecretParams groupSecretParams, final long todaySeconds
+            final GroupSecretParams groupSecretParams,
+            final long todaySeconds,
+            final AuthCredentialWithPniResponse authCredentialResponse
     ) throws VerificationFailedException {
-        var authCredentialResponse = groupApiCredentials.get(todaySeconds);
         final var aci = getSelfAci();
         final var pni = getSelfPni();
         return dependencies.getGroupsV2Api()
@@ -322,6 +322,7 @@ public final class IncomingMessageHandler {
         final var senderServiceId = senderDeviceAddress.serviceId();
         final var senderDeviceId = senderDeviceAddress.deviceId();
         final var destination = getDestination(envelope);
+        context.getProfileHelper().markRecipientActive(sender);
 
         if (content.getReceiptMessage().isPresent()) {
             final var message = content.getReceiptMessage().get();
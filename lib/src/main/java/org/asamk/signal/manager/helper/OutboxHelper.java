@@ -0,0 +1,273 @@
+package org.asamk.signal.manager.helper;
+
+import org.asamk.signal.manager.Manager;
+import org.asamk.signal.manager.api.OutboxResult;
+import org.asamk.signal.manager.api.RecipientAddress;
+import org.asamk.signal.manager.storage.SignalAccount;
+import org.asamk.signal.manager.storage.outbox.OutboxEntry;
+import org.asamk.signal.manager.storage.outbox.OutboxMessage;
+import org.asamk.signal.manager.storage.outbox.OutboxResultEntry;
+import org.asamk.signal.manager.storage.recipients.RecipientId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.signalservice.api.messages.SendMessageResult;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Sends the messages queued in the outbox in the background.
+ * Failed sends are retried with exponential backoff, a rate limit response from the server pauses sending for all
+ * recipients until the given retry time.
+ * The final result of each recipient is stored for a week, so it can be queried by the message timestamp even if no
+ * listener was registered when it finished.
+ */
+public class OutboxHelper {
+
+    private final static Logger logger = LoggerFactory.getLogger(OutboxHelper.class);
+
+    private final static int MAX_ATTEMPTS = 10;
+    private final static int BATCH_SIZE = 20;
+    private final static Duration INITIAL_RETRY_DELAY = Duration.ofSeconds(5);
+    private final static Duration MAX_RETRY_DELAY = Duration.ofHours(1);
+    private final static Duration DEFAULT_RATE_LIMIT_DELAY = Duration.ofMinutes(1);
+    private final static Duration RESULT_RETENTION = Duration.ofDays(7);
+
+    private final SignalAccount account;
+    private final List<Manager.OutboxListener> listeners = new ArrayList<>();
+
+    private MessageSender messageSender;
+    private Thread schedulerThread;
+    private boolean hasNewEntries = false;
+    private long pausedUntil = 0;
+
+    public OutboxHelper(final Context context) {
+        this.account = context.getAccount();
+    }
+
+    public void setMessageSender(final MessageSender messageSender) {
+        this.messageSender = messageSender;
+    }
+
+    public void addListener(final Manager.OutboxListener listener) {
+        synchronized (listeners) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(final Manager.OutboxListener listener) {
+        synchronized (listeners) {
+            listeners.remove(listener);
+        }
+    }
+
+    public void addMessage(final OutboxMessage message, final Collection<RecipientId> recipientIds, long timestamp) {
+        account.getOutboxStore().addMessage(recipientIds, timestamp, message);
+        synchronized (this) {
+            hasNewEntries = true;
+            notifyAll();
+        }
+    }
+
+    public List<OutboxResult> getResults(final long timestamp) {
+        return account.getOutboxStore().getResults(timestamp).stream().map(this::toOutboxResult).toList();
+    }
+
+    /**
+     * Start sending the queued messages, including the ones left over from previous runs.
+     */
+    public synchronized void start() {
+        if (schedulerThread != null) {
+            return;
+        }
+        schedulerThread = new Thread(this::runScheduler);
+        schedulerThread.setName("outbox");
+        schedulerThread.setDaemon(true);
+        schedulerThread.start();
+    }
+
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            thread = schedulerThread;
+            schedulerThread = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    private void runScheduler() {
+        logger.debug("Starting outbox scheduler");
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final var now = System.currentTimeMillis();
+                final var entries = now < pausedUntil
+                        ? List.<OutboxEntry>of()
+                        : account.getOutboxStore().getDueEntries(now, BATCH_SIZE);
+                for (final var entry : entries) {
+                    handleEntry(entry);
+                    if (System.currentTimeMillis() < pausedUntil || Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                }
+                if (entries.isEmpty()) {
+                    waitForNextEntry(now);
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } catch (RuntimeException e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                logger.warn("Outbox scheduler failed: {}", e.getMessage(), e);
+            }
+        }
+        logger.debug("Stopped outbox scheduler");
+    }
+
+    private void waitForNextEntry(final long now) throws InterruptedException {
+        final var nextAttempt = Math.max(pausedUntil,
+                account.getOutboxStore().getNextAttemptTimestamp().orElse(Long.MAX_VALUE));
+        synchronized (this) {
+            if (!hasNewEntries) {
+                if (nextAttempt == Long.MAX_VALUE) {
+                    wait();
+                } else if (nextAttempt > now) {
+                    wait(nextAttempt - now);
+                }
+            }
+            hasNewEntries = false;
+        }
+    }
+
+    private void handleEntry(final OutboxEntry entry) {
+        final var attempts = entry.attempts() + 1;
+        final SendMessageResult result;
+        try {
+            result = messageSender.send(entry.message(), entry.recipientId(), entry.timestamp());
+        } catch (IOException e) {
+            logger.debug("Failed to send outbox message {}: {}", entry.timestamp(), e.getMessage());
+            retryOrFail(entry, attempts, null, e.getMessage());
+            return;
+        } catch (Exception e) {
+            logger.warn("Dropping invalid outbox message {}: {}", entry.timestamp(), e.getMessage());
+            finish(entry, attempts, null, e.getMessage());
+            return;
+        }
+
+        if (result.isSuccess()) {
+            finish(entry, attempts, result, null);
+        } else if (result.getRateLimitFailure() != null || result.getProofRequiredFailure() != null) {
+            final var retryAfter = result.getProofRequiredFailure() != null
+                    ? Duration.ofSeconds(result.getProofRequiredFailure().getRetryAfterSeconds())
+                    : result.getRateLimitFailure()
+                            .getRetryAfterMilliseconds()
+                            .map(Duration::ofMillis)
+                            .orElse(DEFAULT_RATE_LIMIT_DELAY);
+            pausedUntil = System.currentTimeMillis() + Math.max(retryAfter.toMillis(), 1000);
+            logger.info("Pausing outbox for {}s due to rate limiting", retryAfter.toSeconds());
+            // Rate limits don't count as failed attempt
+            account.getOutboxStore().rescheduleEntry(entry.id(), entry.attempts(), pausedUntil);
+        } else if (result.isNetworkFailure() || result.isInvalidPreKeyFailure()) {
+            retryOrFail(entry, attempts, result, null);
+        } else {
+            finish(entry, attempts, result, null);
+        }
+    }
+
+    private void retryOrFail(
+            final OutboxEntry entry, final int attempts, final SendMessageResult result, final String error
+    ) {
+        if (attempts >= MAX_ATTEMPTS) {
+            logger.warn("Giving up sending outbox message {} after {} attempts", entry.timestamp(), attempts);
+            finish(entry, attempts, result, error);
+            return;
+        }
+        final var delay = Math.min(INITIAL_RETRY_DELAY.toMillis() << (attempts - 1), MAX_RETRY_DELAY.toMillis());
+        account.getOutboxStore().rescheduleEntry(entry.id(), attempts, System.currentTimeMillis() + delay);
+    }
+
+    private void finish(
+            final OutboxEntry entry, final int attempts, final SendMessageResult result, final String error
+    ) {
+        final var resultEntry = new OutboxResultEntry(entry.recipientId(),
+                entry.timestamp(),
+                attempts,
+                result == null ? null : getResultType(result),
+                error);
+        account.getOutboxStore()
+                .finishEntry(entry.id(), resultEntry, System.currentTimeMillis() - RESULT_RETENTION.toMillis());
+
+        final var outboxResult = toOutboxResult(resultEntry);
+        final List<Manager.OutboxListener> currentListeners;
+        synchronized (listeners) {
+            currentListeners = List.copyOf(listeners);
+        }
+        for (final var listener : currentListeners) {
+            try {
+                listener.handleResult(outboxResult);
+            } catch (Throwable e) {
+                logger.warn("Outbox listener failed: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private OutboxResult toOutboxResult(final OutboxResultEntry entry) {
+        final var address = account.getRecipientAddressResolver()
+                .resolveRecipientAddress(entry.recipientId())
+                .toApiRecipientAddress();
+        return new OutboxResult(entry.timestamp(),
+                address,
+                entry.isSuccess(),
+                entry.attempts(),
+                Optional.ofNullable(entry.type()).map(type -> toSendMessageResult(address, type)),
+                Optional.ofNullable(entry.error()));
+    }
+
+    private static org.asamk.signal.manager.api.SendMessageResult toSendMessageResult(
+            final RecipientAddress address, final OutboxResultEntry.Type type
+    ) {
+        return new org.asamk.signal.manager.api.SendMessageResult(address,
+                type == OutboxResultEntry.Type.SUCCESS,
+                type == OutboxResultEntry.Type.NETWORK_FAILURE,
+                type == OutboxResultEntry.Type.UNREGISTERED_FAILURE,
+                type == OutboxResultEntry.Type.IDENTITY_FAILURE,
+                type == OutboxResultEntry.Type.RATE_LIMIT_FAILURE,
+                null,
+                type == OutboxResultEntry.Type.INVALID_PRE_KEY_FAILURE);
+    }
+
+    private static OutboxResultEntry.Type getResultType(final SendMessageResult result) {
+        if (result.isSuccess()) {
+            return OutboxResultEntry.Type.SUCCESS;
+        } else if (result.getRateLimitFailure() != null || result.getProofRequiredFailure() != null) {
+            return OutboxResultEntry.Type.RATE_LIMIT_FAILURE;
+        } else if (result.isNetworkFailure()) {
+            return OutboxResultEntry.Type.NETWORK_FAILURE;
+        } else if (result.isUnregisteredFailure()) {
+            return OutboxResultEntry.Type.UNREGISTERED_FAILURE;
+        } else if (result.isInvalidPreKeyFailure()) {
+            return OutboxResultEntry.Type.INVALID_PRE_KEY_FAILURE;
+        } else {
+            return OutboxResultEntry.Type.IDENTITY_FAILURE;
+        }
+    }
+
+    public interface MessageSender {
+
+        /**
+         * Send the message to the recipient.
+         *
+         * @throws IOException for transient failures, the message is retried later
+         * @throws Exception   if the message can't be sent, it's removed from the outbox
+         */
+        SendMessageResult send(OutboxMessage message, RecipientId recipientId, long timestamp) throws Exception;
+    }
+}
@@ -5,6 +5,7 @@ import org.asamk.signal.manager.internal.SignalDependencies;
 import org.asamk.signal.manager.storage.SignalAccount;
 import org.asamk.signal.manager.util.KeyUtils;
 import org.signal.libsignal.protocol.IdentityKeyPair;
+import org.signal.libsignal.protocol.ecc.ECPrivateKey;
 import org.signal.libsignal.protocol.state.KyberPreKeyRecord;
 import org.signal.libsignal.protocol.state.PreKeyRecord;
 import org.signal.libsignal.protocol.state.SignedPreKeyRecord;
@@ -14,7 +15,12 @@ import org.whispersystems.signalservice.api.account.PreKeyUpload;
 import org.whispersystems.signalservice.api.push.ServiceIdType;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PreKeyHelper {
 
@@ -22,6 +28,7 @@ public class PreKeyHelper {
 
     private final SignalAccount account;
     private final SignalDependencies dependencies;
+    private final Map<ServiceIdType, PreGeneratedKyberKeyPairs> kyberKeyPairPool = new ConcurrentHashMap<>();
 
     public PreKeyHelper(
             final SignalAccount account, final SignalDependencies dependencies
@@ -142,12 +149,40 @@ public class PreKeyHelper {
     ) {
         final var offset = account.getKyberPreKeyIdOffset(serviceIdType);
 
-        var records = KeyUtils.generateKyberPreKeyRecords(offset, identityKeyPair.getPrivateKey());
+        final var keyPairs = takePreGeneratedKyberKeyPairs(serviceIdType, identityKeyPair.getPrivateKey());
+        var records = KeyUtils.generateKyberPreKeyRecords(offset, keyPairs);
         account.addKyberPreKeys(serviceIdType, records);
 
         return records;
     }
 
+    /**
+     * Returns the kyber key pairs generated in the background after the last refresh, or generates new ones.
+     * Afterwards a new batch is generated in the background, so the next refresh doesn't have to wait for it.
+     */
+    private List<KeyUtils.SignedKyberKeyPair> takePreGeneratedKyberKeyPairs(
+            final ServiceIdType serviceIdType, final ECPrivateKey privateKey
+    ) {
+        List<KeyUtils.SignedKyberKeyPair> keyPairs = null;
+        final var preGenerated = kyberKeyPairPool.remove(serviceIdType);
+        if (preGenerated != null && Arrays.equals(preGenerated.privateKey().serialize(), privateKey.serialize())) {
+            try {
+                keyPairs = preGenerated.keyPairs().join();
+            } catch (CompletionException e) {
+                logger.debug("Failed to pre-generate kyber pre keys, generating new ones", e);
+            }
+        }
+        if (keyPairs == null) {
+            keyPairs = KeyUtils.generateSignedKyberKeyPairs(ServiceConfig.PREKEY_BATCH_SIZE, privateKey);
+        }
+
+        final var nextKeyPairs = CompletableFuture.supplyAsync(() -> KeyUtils.generateSignedKyberKeyPairs(
+                ServiceConfig.PREKEY_BATCH_SIZE,
+                privateKey));
+        kyberKeyPairPool.put(serviceIdType, new PreGeneratedKyberKeyPairs(privateKey, nextKeyPairs));
+        return keyPairs;
+    }
+
     private KyberPreKeyRecord generateLastResortKyberPreKey(
             ServiceIdType serviceIdType, IdentityKeyPair identityKeyPair
     ) {
@@ -158,4 +193,8 @@ public class PreKeyHelper {
 
         return record;
     }
+
+    private record PreGeneratedKyberKeyPairs(
+            ECPrivateKey privateKey, CompletableFuture<List<KeyUtils.SignedKyberKeyPair>> keyPairs
+    ) {}
 }
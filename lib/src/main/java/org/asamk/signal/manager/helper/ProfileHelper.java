@@ -31,32 +31,50 @@ import org.whispersystems.signalservice.api.services.ProfileService;
 import org.whispersystems.signalservice.api.util.ExpiringProfileCredentialUtil;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.util.Base64;
 import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
-import io.reactivex.rxjava3.core.Flowable;
-import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Single;
 
 public final class ProfileHelper {
 
     private final static Logger logger = LoggerFactory.getLogger(ProfileHelper.class);
 
+    // Profiles are cached for 6h before retrieving them again, unless forced
+    private final static long PROFILE_MAX_AGE = TimeUnit.HOURS.toMillis(6);
+    // Profiles of active recipients are refreshed in the background before they expire
+    private final static long BACKGROUND_REFRESH_AGE = TimeUnit.HOURS.toMillis(5);
+    private final static long ACTIVE_RECIPIENT_DURATION = TimeUnit.DAYS.toMillis(1);
+    private final static long BACKGROUND_REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    private final static int MAX_BACKGROUND_REFRESHES = 100;
+
     private final SignalAccount account;
     private final SignalDependencies dependencies;
     private final Context context;
+    private final ProfileRefresher profileRefresher;
+    private final Map<RecipientId, Long> activeRecipients = new ConcurrentHashMap<>();
+    private volatile long lastBackgroundRefresh = 0;
 
     public ProfileHelper(final Context context) {
         this.account = context.getAccount();
         this.dependencies = context.getDependencies();
         this.context = context;
+        this.profileRefresher = new ProfileRefresher(dependencies.getExecutor(),
+                account.getSettings().profileFetchParallelism(),
+                (recipientId, requestType) -> blockingGetProfile(retrieveProfile(recipientId, requestType)));
     }
 
     public void rotateProfileKey() throws IOException {
@@ -106,13 +124,49 @@ public final class ProfileHelper {
         getRecipientProfiles(recipientIds, true);
     }
 
+    /**
+     * Record that the recipient was active recently, so its profile is kept up to date in the background.
+     */
+    public void markRecipientActive(RecipientId recipientId) {
+        activeRecipients.put(recipientId, System.currentTimeMillis());
+    }
+
+    /**
+     * Refresh the profiles of recently active recipients in the background, before they need to be refreshed on use.
+     */
+    void refreshActiveProfilesIfNecessary() {
+        final var now = System.currentTimeMillis();
+        if (now - lastBackgroundRefresh < BACKGROUND_REFRESH_INTERVAL) {
+            return;
+        }
+        lastBackgroundRefresh = now;
+
+        activeRecipients.values().removeIf(lastActive -> now - lastActive > ACTIVE_RECIPIENT_DURATION);
+        final var profileStore = account.getProfileStore();
+        final var recipientIds = activeRecipients.keySet()
+                .stream()
+                .filter(recipientId -> isProfileOlderThan(profileStore.getProfile(recipientId),
+                        BACKGROUND_REFRESH_AGE))
+                .limit(MAX_BACKGROUND_REFRESHES)
+                .toList();
+        if (recipientIds.isEmpty()) {
+            return;
+        }
+        logger.debug("Refreshing {} profiles in the background", recipientIds.size());
+        for (final var recipientId : recipientIds) {
+            profileRefresher.fetch(recipientId, SignalServiceProfile.RequestType.PROFILE, true);
+        }
+    }
+
     public List<ExpiringProfileKeyCredential> getExpiringProfileKeyCredential(List<RecipientId> recipientIds) {
-        final var profileFetches = Flowable.fromIterable(recipientIds)
+        final var profileFetches = recipientIds.stream()
                 .filter(recipientId -> !ExpiringProfileCredentialUtil.isValid(account.getProfileStore()
                         .getExpiringProfileKeyCredential(recipientId)))
-                .map(recipientId -> retrieveProfile(recipientId,
-                        SignalServiceProfile.RequestType.PROFILE_AND_CREDENTIAL).onErrorComplete());
-        Maybe.merge(profileFetches, 10).blockingSubscribe();
+                .map(recipientId -> profileRefresher.fetch(recipientId,
+                        SignalServiceProfile.RequestType.PROFILE_AND_CREDENTIAL,
+                        false))
+                .toList();
+        awaitFetches(profileFetches);
 
         return recipientIds.stream().map(r -> account.getProfileStore().getExpiringProfileKeyCredential(r)).toList();
     }
@@ -124,7 +178,9 @@ public final class ProfileHelper {
         }
 
         try {
-            blockingGetProfile(retrieveProfile(recipientId, SignalServiceProfile.RequestType.PROFILE_AND_CREDENTIAL));
+            awaitFetch(profileRefresher.fetch(recipientId,
+                    SignalServiceProfile.RequestType.PROFILE_AND_CREDENTIAL,
+                    false));
         } catch (IOException e) {
             logger.warn("Failed to retrieve profile key credential, ignoring: {}", e.getMessage());
             return null;
@@ -229,24 +285,29 @@ public final class ProfileHelper {
 
     private List<Profile> getRecipientProfiles(Collection<RecipientId> recipientIds, boolean force) {
         final var profileStore = account.getProfileStore();
-        final var profileFetches = Flowable.fromIterable(recipientIds)
-                .filter(recipientId -> force || isProfileRefreshRequired(profileStore.getProfile(recipientId)))
-                .map(recipientId -> retrieveProfile(recipientId,
-                        SignalServiceProfile.RequestType.PROFILE).onErrorComplete());
-        Maybe.merge(profileFetches, 10).blockingSubscribe();
+        recipientIds.forEach(this::markRecipientActive);
+        final var profileFetches = recipientIds.stream()
+                .filter(recipientId -> force || isProfileOlderThan(profileStore.getProfile(recipientId),
+                        PROFILE_MAX_AGE))
+                .map(recipientId -> profileRefresher.fetch(recipientId,
+                        SignalServiceProfile.RequestType.PROFILE,
+                        false))
+                .toList();
+        awaitFetches(profileFetches);
 
         return recipientIds.stream().map(profileStore::getProfile).toList();
     }
 
     private Profile getRecipientProfile(RecipientId recipientId, boolean force) {
+        markRecipientActive(recipientId);
         var profile = account.getProfileStore().getProfile(recipientId);
 
-        if (!force && !isProfileRefreshRequired(profile)) {
+        if (!force && !isProfileOlderThan(profile, PROFILE_MAX_AGE)) {
             return profile;
         }
 
         try {
-            blockingGetProfile(retrieveProfile(recipientId, SignalServiceProfile.RequestType.PROFILE));
+            awaitFetch(profileRefresher.fetch(recipientId, SignalServiceProfile.RequestType.PROFILE, false));
         } catch (IOException e) {
             logger.warn("Failed to retrieve profile, ignoring: {}", e.getMessage());
         }
@@ -254,13 +315,34 @@ public final class ProfileHelper {
         return account.getProfileStore().getProfile(recipientId);
     }
 
-    private boolean isProfileRefreshRequired(final Profile profile) {
+    private boolean isProfileOlderThan(final Profile profile, final long maxAge) {
         if (profile == null) {
             return true;
         }
-        // Profiles are cached for 6h before retrieving them again, unless forced
         final var now = System.currentTimeMillis();
-        return now - profile.getLastUpdateTimestamp() >= 6 * 60 * 60 * 1000;
+        return now - profile.getLastUpdateTimestamp() >= maxAge;
+    }
+
+    private void awaitFetches(final List<CompletableFuture<Void>> fetches) {
+        if (fetches.isEmpty()) {
+            return;
+        }
+        // Failed fetches are already logged and stored by retrieveProfile
+        CompletableFuture.allOf(fetches.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+    }
+
+    private void awaitFetch(final CompletableFuture<Void> fetch) throws IOException {
+        try {
+            fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while retrieving profile");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
     }
 
     private Profile decryptProfileAndDownloadAvatar(
@@ -354,6 +436,10 @@ public final class ProfileHelper {
             logger.trace("Done handling retrieved profile");
         }).doOnError(e -> {
             logger.warn("Failed to retrieve profile, ignoring: {}", e.getMessage());
+            if (ProfileRefresher.isRateLimited(e)) {
+                // Keep the previous profile, so it's retrieved again after the rate limit
+                return;
+            }
             final var profile = account.getProfileStore().getProfile(recipientId);
             final var newProfile = (
                     profile == null ? Profile.newBuilder() : Profile.newBuilder(profile)
@@ -0,0 +1,184 @@
+package org.asamk.signal.manager.helper;
+
+import org.asamk.signal.manager.storage.recipients.RecipientId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.signalservice.api.profiles.SignalServiceProfile;
+import org.whispersystems.signalservice.api.push.exceptions.NonSuccessfulResponseCodeException;
+import org.whispersystems.signalservice.api.push.exceptions.RateLimitException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs profile fetches with a limited, adaptive concurrency.
+ * <p>
+ * Concurrent requests for the same profile share a single fetch. The number of parallel fetches starts at the
+ * configured maximum, is halved whenever the server responds with a rate limit and grows again slowly with every
+ * successful fetch (AIMD). After a rate limit no new background fetches are started until the retry-after time has
+ * passed, foreground fetches, which e.g. a send is waiting for, are still started with the reduced concurrency.
+ * Background fetches are only started when no foreground fetch is waiting.
+ */
+final class ProfileRefresher {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProfileRefresher.class);
+
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofMinutes(1);
+
+    private final Executor executor;
+    private final ProfileFetcher fetcher;
+    private final int maxConcurrency;
+
+    private final Map<Key, Fetch> fetches = new HashMap<>();
+    private final ArrayDeque<Fetch> pendingForeground = new ArrayDeque<>();
+    private final ArrayDeque<Fetch> pendingBackground = new ArrayDeque<>();
+    private double concurrency;
+    private int running = 0;
+    private long pausedUntil = 0;
+    private boolean resumeScheduled = false;
+
+    ProfileRefresher(final Executor executor, final int maxConcurrency, final ProfileFetcher fetcher) {
+        this.executor = executor;
+        this.fetcher = fetcher;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.concurrency = this.maxConcurrency;
+    }
+
+    /**
+     * Fetch the profile of the given recipient, or join an already running fetch for it.
+     *
+     * @param background if true, the fetch only runs when no foreground fetches are waiting
+     * @return a future that completes when the fetched profile is stored
+     */
+    CompletableFuture<Void> fetch(
+            final RecipientId recipientId,
+            final SignalServiceProfile.RequestType requestType,
+            final boolean background
+    ) {
+        final CompletableFuture<Void> future;
+        synchronized (this) {
+            var fetch = fetches.get(new Key(recipientId, SignalServiceProfile.RequestType.PROFILE_AND_CREDENTIAL));
+            if (fetch == null) {
+                fetch = fetches.get(new Key(recipientId, requestType));
+            }
+            if (fetch != null) {
+                if (background || !pendingBackground.remove(fetch)) {
+                    return fetch.future();
+                }
+                pendingForeground.add(fetch);
+            } else {
+                fetch = new Fetch(new Key(recipientId, requestType), new CompletableFuture<>());
+                fetches.put(fetch.key(), fetch);
+                (background ? pendingBackground : pendingForeground).add(fetch);
+            }
+            future = fetch.future();
+        }
+        dispatch();
+        return future;
+    }
+
+    private void dispatch() {
+        while (true) {
+            final Fetch fetch;
+            synchronized (this) {
+                if (running >= (int) concurrency) {
+                    return;
+                }
+                if (!pendingForeground.isEmpty()) {
+                    fetch = pendingForeground.poll();
+                } else {
+                    final var now = System.currentTimeMillis();
+                    if (pausedUntil > now && !pendingBackground.isEmpty()) {
+                        scheduleResume(pausedUntil - now);
+                        return;
+                    }
+                    fetch = pendingBackground.poll();
+                    if (fetch == null) {
+                        return;
+                    }
+                }
+                running++;
+            }
+            executor.execute(() -> run(fetch));
+        }
+    }
+
+    private void run(final Fetch fetch) {
+        Throwable error = null;
+        try {
+            fetcher.fetch(fetch.key().recipientId(), fetch.key().requestType());
+        } catch (Throwable e) {
+            error = e;
+        }
+
+        final var rateLimitException = error == null ? null : getRateLimitException(error);
+        synchronized (this) {
+            running--;
+            fetches.remove(fetch.key());
+            if (rateLimitException != null) {
+                onRateLimited(rateLimitException);
+            } else if (error == null) {
+                concurrency = Math.min(maxConcurrency, concurrency + 1.0 / concurrency);
+            }
+        }
+        if (error == null) {
+            fetch.future().complete(null);
+        } else {
+            fetch.future().completeExceptionally(error);
+        }
+        dispatch();
+    }
+
+    private void onRateLimited(final NonSuccessfulResponseCodeException e) {
+        final var retryAfter = e instanceof RateLimitException r
+                ? r.getRetryAfterMilliseconds().map(Duration::ofMillis).orElse(DEFAULT_RETRY_AFTER)
+                : DEFAULT_RETRY_AFTER;
+        concurrency = Math.max(1, concurrency / 2);
+        pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + retryAfter.toMillis());
+        logger.info("Rate limited while retrieving profiles, reducing concurrency to {} and pausing background for {}s",
+                (int) concurrency,
+                retryAfter.toSeconds());
+    }
+
+    private void scheduleResume(final long delayMillis) {
+        if (resumeScheduled) {
+            return;
+        }
+        resumeScheduled = true;
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, executor).execute(() -> {
+            synchronized (this) {
+                resumeScheduled = false;
+            }
+            dispatch();
+        });
+    }
+
+    private static NonSuccessfulResponseCodeException getRateLimitException(Throwable e) {
+        while (e != null) {
+            if (e instanceof NonSuccessfulResponseCodeException n && (n.getCode() == 413 || n.getCode() == 429)) {
+                return n;
+            }
+            e = e.getCause();
+        }
+        return null;
+    }
+
+    static boolean isRateLimited(Throwable e) {
+        return getRateLimitException(e) != null;
+    }
+
+    interface ProfileFetcher {
+
+        void fetch(RecipientId recipientId, SignalServiceProfile.RequestType requestType) throws IOException;
+    }
+
+    private record Key(RecipientId recipientId, SignalServiceProfile.RequestType requestType) {}
+
+    private record Fetch(Key key, CompletableFuture<Void> future) {}
+}
@@ -77,7 +77,7 @@ public class ReceiveHelper {
     public void receiveMessagesContinuously(Manager.ReceiveMessageHandler handler) {
         while (!shouldStop) {
             try {
-                receiveMessages(Duration.ofMinutes(1), false, null, handler);
+                receiveMessages(Duration.ofMinutes(1), false, null, handler, true);
                 break;
             } catch (IOException e) {
                 logger.warn("Receiving messages failed, retrying", e);
@@ -87,6 +87,16 @@ public class ReceiveHelper {
 
     public void receiveMessages(
             Duration timeout, boolean returnOnTimeout, Integer maxMessages, Manager.ReceiveMessageHandler handler
+    ) throws IOException {
+        receiveMessages(timeout, returnOnTimeout, maxMessages, handler, false);
+    }
+
+    private void receiveMessages(
+            Duration timeout,
+            boolean returnOnTimeout,
+            Integer maxMessages,
+            Manager.ReceiveMessageHandler handler,
+            boolean isContinuous
     ) throws IOException {
         needsToRetryFailedMessages = true;
         hasCaughtUpWithOldMessages = false;
@@ -104,7 +114,13 @@ public class ReceiveHelper {
         signalWebSocket.connect();
 
         try {
-            receiveMessagesInternal(signalWebSocket, timeout, returnOnTimeout, maxMessages, handler, queuedActions);
+            receiveMessagesInternal(signalWebSocket,
+                    timeout,
+                    returnOnTimeout,
+                    maxMessages,
+                    handler,
+                    queuedActions,
+                    isContinuous);
         } finally {
             hasCaughtUpWithOldMessages = false;
             handleQueuedActions(queuedActions.keySet());
@@ -121,7 +137,8 @@ public class ReceiveHelper {
             boolean returnOnTimeout,
             Integer maxMessages,
             Manager.ReceiveMessageHandler handler,
-            final Map<HandleAction, HandleAction> queuedActions
+            final Map<HandleAction, HandleAction> queuedActions,
+            final boolean isContinuous
     ) throws IOException {
         int remainingMessages = maxMessages == null ? -1 : maxMessages;
         var backOffCounter = 0;
@@ -175,6 +192,11 @@ public class ReceiveHelper {
 
                     hasCaughtUpWithOldMessages = true;
                     caughtUpWithOldMessagesListener.call();
+                    if (isContinuous) {
+                        account.getAccountDatabase().requestMaintenance();
+                    }
+                    context.getGroupV2Helper().refreshAuthCredentialsIfNecessary();
+                    context.getProfileHelper().refreshActiveProfilesIfNecessary();
 
                     // Continue to wait another timeout for new messages
                     continue;
@@ -203,6 +225,11 @@ public class ReceiveHelper {
                 throw e;
             } catch (TimeoutException e) {
                 backOffCounter = 0;
+                if (isContinuous) {
+                    account.getAccountDatabase().requestMaintenance();
+                }
+                context.getGroupV2Helper().refreshAuthCredentialsIfNecessary();
+                context.getProfileHelper().refreshActiveProfilesIfNecessary();
                 if (returnOnTimeout) return;
                 continue;
             }
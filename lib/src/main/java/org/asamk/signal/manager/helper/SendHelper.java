@@ -50,6 +50,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -57,9 +58,12 @@ public class SendHelper {
 
     private final static Logger logger = LoggerFactory.getLogger(SendHelper.class);
 
+    private final static long SENDER_KEY_TARGETS_MAX_AGE = TimeUnit.HOURS.toMillis(1);
+
     private final SignalAccount account;
     private final SignalDependencies dependencies;
     private final Context context;
+    private final Map<DistributionId, SenderKeyTargets> senderKeyTargetsCache = new ConcurrentHashMap<>();
 
     public SendHelper(final Context context) {
         this.account = context.getAccount();
@@ -84,14 +88,18 @@ public class SendHelper {
         }
 
         final var expirationTime = contact.getMessageExpirationTime();
-        messageBuilder.withExpiration(expirationTime);
+        final SignalServiceDataMessage message;
+        // The builder may be shared by concurrent sends to multiple recipients
+        synchronized (messageBuilder) {
+            messageBuilder.withExpiration(expirationTime);
+
+            if (!contact.isBlocked()) {
+                final var profileKey = account.getProfileKey().serialize();
+                messageBuilder.withProfileKey(profileKey);
+            }
 
-        if (!contact.isBlocked()) {
-            final var profileKey = account.getProfileKey().serialize();
-            messageBuilder.withProfileKey(profileKey);
+            message = messageBuilder.build();
         }
-
-        final var message = messageBuilder.build();
         return sendMessage(message, recipientId, editTargetTimestamp);
     }
 
@@ -118,6 +126,25 @@ public class SendHelper {
         return sendGroupMessage(message, recipientIds, distributionId, ContentHint.IMPLICIT, Optional.empty());
     }
 
+    /**
+     * Drop all cached sender key targets, e.g. after the sender certificate changed.
+     */
+    public void invalidateSenderKeyTargets() {
+        senderKeyTargetsCache.clear();
+    }
+
+    /**
+     * Drop the cached sender key targets of all groups containing the given recipient.
+     * Changes of our own profile invalidate all cached targets.
+     */
+    public void invalidateSenderKeyTargets(RecipientId recipientId) {
+        if (recipientId.equals(account.getSelfRecipientId())) {
+            invalidateSenderKeyTargets();
+            return;
+        }
+        senderKeyTargetsCache.values().removeIf(targets -> targets.recipientIds().contains(recipientId));
+    }
+
     public SendMessageResult sendReceiptMessage(
             final SignalServiceReceiptMessage receiptMessage, final RecipientId recipientId
     ) {
@@ -326,7 +353,6 @@ public class SendHelper {
             final Optional<Long> editTargetTimestamp
     ) throws IOException {
         final var messageSender = dependencies.getMessageSender();
-        final var messageSendLogStore = account.getMessageSendLogStore();
         final AtomicLong entryId = new AtomicLong(-1);
 
         final var urgent = true;
@@ -339,17 +365,7 @@ public class SendHelper {
                 SignalServiceMessageSender.LegacyGroupEvents.EMPTY,
                 sendResult -> {
                     logger.trace("Partial message send result: {}", sendResult.isSuccess());
-                    synchronized (entryId) {
-                        if (entryId.get() == -1) {
-                            final var newId = messageSendLogStore.insertIfPossible(message.getTimestamp(),
-                                    sendResult,
-                                    contentHint,
-                                    urgent);
-                            entryId.set(newId);
-                        } else {
-                            messageSendLogStore.addRecipientToExistingEntryIfPossible(entryId.get(), sendResult);
-                        }
-                    }
+                    logPartialSendResults(entryId, message.getTimestamp(), List.of(sendResult), contentHint, urgent);
                 },
                 () -> false,
                 urgent);
@@ -366,30 +382,36 @@ public class SendHelper {
                 editTargetTimestamp.map(timestamp -> new SignalServiceEditMessage(timestamp, message)).orElse(null),
                 sendResult -> {
                     logger.trace("Partial message send results: {}", sendResult.size());
-                    synchronized (entryId) {
-                        if (entryId.get() == -1) {
-                            final var newId = messageSendLogStore.insertIfPossible(message.getTimestamp(),
-                                    sendResult,
-                                    contentHint,
-                                    urgent);
-                            entryId.set(newId);
-                        } else {
-                            messageSendLogStore.addRecipientToExistingEntryIfPossible(entryId.get(), sendResult);
-                        }
-                    }
-                    synchronized (entryId) {
-                        if (entryId.get() == -1) {
-                            final var newId = messageSendLogStore.insertIfPossible(message.getTimestamp(),
-                                    sendResult,
-                                    contentHint,
-                                    urgent);
-                            entryId.set(newId);
-                        } else {
-                            messageSendLogStore.addRecipientToExistingEntryIfPossible(entryId.get(), sendResult);
-                        }
-                    }
+                    logPartialSendResults(entryId, message.getTimestamp(), sendResult, contentHint, urgent);
                 });
-        final var results = sendGroupMessageInternal(legacySender, senderKeySender, recipientIds, distributionId);
+        final var sendThrottler = context.getSendThrottler();
+        final List<SendMessageResult> results;
+        try {
+            results = sendGroupMessageInternal((recipients, unidentifiedAccess, isRecipientUpdate) -> {
+                // Acquire permits for the messages as they're sent, instead of waiting for all of them up front.
+                // The sync message of later chunks is sent as update of the already sent recipients.
+                final var legacyResults = new ArrayList<SendMessageResult>(recipients.size());
+                var offset = 0;
+                while (offset < recipients.size()) {
+                    final var end = offset + sendThrottler.acquireUpTo(recipients.size() - offset);
+                    legacyResults.addAll(legacySender.send(recipients.subList(offset, end),
+                            unidentifiedAccess.subList(offset, end),
+                            isRecipientUpdate || offset > 0));
+                    offset = end;
+                }
+                return legacyResults;
+            }, (distId, recipients, unidentifiedAccess, isRecipientUpdate) -> {
+                sendThrottler.acquire(1);
+                return senderKeySender.send(distId, recipients, unidentifiedAccess, isRecipientUpdate);
+            }, recipientIds, distributionId);
+        } catch (RateLimitException e) {
+            sendThrottler.onRateLimited(e);
+            throw e;
+        } catch (ProofRequiredException e) {
+            sendThrottler.onRateLimited(e);
+            throw e;
+        }
+        sendThrottler.handleSendResults(results);
 
         for (var r : results) {
             handleSendMessageResult(r);
@@ -398,6 +420,29 @@ public class SendHelper {
         return results;
     }
 
+    /**
+     * Add partial results of a group send to the message send log.
+     * The first successful result creates the log entry, later results are appended to it.
+     * The store only enqueues the writes, so this doesn't block the send on the database.
+     */
+    private void logPartialSendResults(
+            final AtomicLong entryId,
+            final long timestamp,
+            final List<SendMessageResult> sendResults,
+            final ContentHint contentHint,
+            final boolean urgent
+    ) {
+        final var messageSendLogStore = account.getMessageSendLogStore();
+        synchronized (entryId) {
+            if (entryId.get() == -1) {
+                final var newId = messageSendLogStore.insertIfPossible(timestamp, sendResults, contentHint, urgent);
+                entryId.set(newId);
+            } else {
+                messageSendLogStore.addRecipientToExistingEntryIfPossible(entryId.get(), sendResults);
+            }
+        }
+    }
+
     private List<SendMessageResult> sendGroupTypingMessage(
             final SignalServiceTypingMessage message,
             final Set<RecipientId> recipientIds,
@@ -443,18 +488,18 @@ public class SendHelper {
         long startTime = System.currentTimeMillis();
         // isRecipientUpdate is true if we've already sent this message to some recipients in the past, otherwise false.
         final var isRecipientUpdate = false;
-        Set<RecipientId> senderKeyTargets = distributionId == null
-                ? Set.of()
-                : getSenderKeyCapableRecipientIds(recipientIds);
+        final var targets = distributionId == null ? null : getSenderKeyTargets(recipientIds, distributionId);
+        Set<RecipientId> senderKeyTargets = targets == null ? Set.of() : targets.targets();
         final var allResults = new ArrayList<SendMessageResult>(recipientIds.size());
 
         if (senderKeyTargets.size() > 0) {
             final var results = sendGroupMessageInternalWithSenderKey(senderKeySender,
-                    senderKeyTargets,
+                    targets,
                     distributionId,
                     isRecipientUpdate);
 
             if (results == null) {
+                senderKeyTargetsCache.remove(distributionId);
                 senderKeyTargets = Set.of();
             } else {
                 results.stream().filter(SendMessageResult::isSuccess).forEach(allResults::add);
@@ -463,6 +508,7 @@ public class SendHelper {
                         .map(r -> context.getRecipientHelper().resolveRecipient(r.getAddress()))
                         .toList();
                 if (failedTargets.size() > 0) {
+                    senderKeyTargetsCache.remove(distributionId);
                     senderKeyTargets = new HashSet<>(senderKeyTargets);
                     failedTargets.forEach(senderKeyTargets::remove);
                 }
@@ -490,6 +536,44 @@ public class SendHelper {
         return allResults;
     }
 
+    /**
+     * Get the sender key capable recipients of a group and their addresses and unidentified access.
+     * The result is cached per distribution id until the group members change or it's invalidated by a change of
+     * a member's profile or identity or of the sender certificate.
+     */
+    private SenderKeyTargets getSenderKeyTargets(
+            final Set<RecipientId> recipientIds, final DistributionId distributionId
+    ) {
+        final var cached = senderKeyTargetsCache.get(distributionId);
+        final var now = System.currentTimeMillis();
+        if (cached != null
+                && cached.recipientIds().equals(recipientIds)
+                && now - cached.createdTimestamp() < SENDER_KEY_TARGETS_MAX_AGE) {
+            logger.trace("Using cached sender key targets for {}", distributionId);
+            return cached;
+        }
+
+        final var senderKeyTargets = getSenderKeyCapableRecipientIds(recipientIds);
+        final var targetList = new ArrayList<>(senderKeyTargets);
+        final var addresses = targetList.stream()
+                .map(context.getRecipientHelper()::resolveSignalServiceAddress)
+                .toList();
+        final var unidentifiedAccesses = context.getUnidentifiedAccessHelper()
+                .getAccessFor(targetList)
+                .stream()
+                .map(Optional::get)
+                .map(UnidentifiedAccessPair::getTargetUnidentifiedAccess)
+                .map(Optional::get)
+                .toList();
+        final var targets = new SenderKeyTargets(Set.copyOf(recipientIds),
+                senderKeyTargets,
+                addresses,
+                unidentifiedAccesses,
+                now);
+        senderKeyTargetsCache.put(distributionId, targets);
+        return targets;
+    }
+
     private Set<RecipientId> getSenderKeyCapableRecipientIds(final Set<RecipientId> recipientIds) {
         final var selfProfile = context.getProfileHelper().getSelfProfile();
         if (selfProfile == null || !selfProfile.getCapabilities().contains(Profile.Capability.senderKey)) {
@@ -556,12 +640,10 @@ public class SendHelper {
 
     private List<SendMessageResult> sendGroupMessageInternalWithSenderKey(
             final SenderKeySenderHandler sender,
-            final Set<RecipientId> recipientIds,
+            final SenderKeyTargets targets,
             final DistributionId distributionId,
             final boolean isRecipientUpdate
     ) throws IOException {
-        final var recipientIdList = new ArrayList<>(recipientIds);
-
         long keyCreateTime = account.getSenderKeyStore()
                 .getCreateTimeForOurKey(account.getAci(), account.getDeviceId(), distributionId);
         long keyAge = System.currentTimeMillis() - keyCreateTime;
@@ -575,21 +657,11 @@ public class SendHelper {
             account.getSenderKeyStore().deleteOurKey(account.getAci(), distributionId);
         }
 
-        List<SignalServiceAddress> addresses = recipientIdList.stream()
-                .map(context.getRecipientHelper()::resolveSignalServiceAddress)
-                .toList();
-        List<UnidentifiedAccess> unidentifiedAccesses = context.getUnidentifiedAccessHelper()
-                .getAccessFor(recipientIdList)
-                .stream()
-                .map(Optional::get)
-                .map(UnidentifiedAccessPair::getTargetUnidentifiedAccess)
-                .map(Optional::get)
-                .toList();
-
+        final var addresses = targets.addresses();
         try {
             List<SendMessageResult> results = sender.send(distributionId,
                     addresses,
-                    unidentifiedAccesses,
+                    targets.unidentifiedAccesses(),
                     isRecipientUpdate);
 
             final var successCount = results.stream().filter(SendMessageResult::isSuccess).count();
@@ -631,24 +703,29 @@ public class SendHelper {
             SignalServiceDataMessage message, RecipientId recipientId, Optional<Long> editTargetTimestamp
     ) {
         final var messageSendLogStore = account.getMessageSendLogStore();
+        final var sendThrottler = context.getSendThrottler();
         final var urgent = true;
         final var includePniSignature = false;
-        final var result = handleSendMessage(recipientId,
-                editTargetTimestamp.isEmpty()
-                        ? (messageSender, address, unidentifiedAccess) -> messageSender.sendDataMessage(address,
+        final SenderHandler sender = editTargetTimestamp.isEmpty()
+                ? (messageSender, address, unidentifiedAccess) -> messageSender.sendDataMessage(address,
+                unidentifiedAccess,
+                ContentHint.RESENDABLE,
+                message,
+                SignalServiceMessageSender.IndividualSendEvents.EMPTY,
+                urgent,
+                includePniSignature)
+                : (messageSender, address, unidentifiedAccess) -> messageSender.sendEditMessage(address,
                         unidentifiedAccess,
                         ContentHint.RESENDABLE,
                         message,
                         SignalServiceMessageSender.IndividualSendEvents.EMPTY,
                         urgent,
-                        includePniSignature)
-                        : (messageSender, address, unidentifiedAccess) -> messageSender.sendEditMessage(address,
-                                unidentifiedAccess,
-                                ContentHint.RESENDABLE,
-                                message,
-                                SignalServiceMessageSender.IndividualSendEvents.EMPTY,
-                                urgent,
-                                editTargetTimestamp.get()));
+                        editTargetTimestamp.get());
+        final var result = handleSendMessage(recipientId, (messageSender, address, unidentifiedAccess) -> {
+            sendThrottler.acquire(1);
+            return sender.send(messageSender, address, unidentifiedAccess);
+        });
+        sendThrottler.handleSendResult(result);
         messageSendLogStore.insertIfPossible(message.getTimestamp(), result, ContentHint.RESENDABLE, urgent);
         handleSendMessageResult(result);
         return result;
@@ -741,6 +818,14 @@ public class SendHelper {
         }
     }
 
+    private record SenderKeyTargets(
+            Set<RecipientId> recipientIds,
+            Set<RecipientId> targets,
+            List<SignalServiceAddress> addresses,
+            List<UnidentifiedAccess> unidentifiedAccesses,
+            long createdTimestamp
+    ) {}
+
     interface SenderHandler {
 
         SendMessageResult send(
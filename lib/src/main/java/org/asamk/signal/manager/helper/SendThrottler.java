@@ -0,0 +1,209 @@
+package org.asamk.signal.manager.helper;
+
+import org.asamk.signal.manager.api.SendThrottleStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.signalservice.api.messages.SendMessageResult;
+import org.whispersystems.signalservice.api.push.exceptions.ProofRequiredException;
+import org.whispersystems.signalservice.api.push.exceptions.RateLimitException;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces outgoing messages of an account with a token bucket, one permit per message sent.
+ * <p>
+ * Without a configured rate limit, messages aren't paced until the server responds with a rate limit or proof
+ * required failure. Then sending is paused until the retry-after time given by the server and continues at half the
+ * rate observed before. The permitted rate grows slowly with every successful send (AIMD), once it reaches the
+ * maximum rate, pacing is lifted again.
+ * With a configured rate limit, messages are always paced, at most with the configured rate.
+ */
+public class SendThrottler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SendThrottler.class);
+
+    private static final double MIN_RATE = 0.1;
+    private static final double MAX_RATE = 100.0;
+    private static final double MAX_BURST = 10.0;
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofMinutes(1);
+    private static final long OBSERVATION_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Double configuredRate;
+    private final double maxRate;
+
+    private boolean isPacing;
+    private double rate;
+    private double storedPermits = 0;
+    private long nextFreeNanos = System.nanoTime();
+    private int queued = 0;
+
+    private long windowStartNanos = System.nanoTime();
+    private int windowPermits = 0;
+    private double observedRate = 0;
+
+    /**
+     * @param configuredRate the maximum number of messages per second, or null to only pace after the server reported
+     *                       rate limiting
+     */
+    public SendThrottler(final Double configuredRate) {
+        this.configuredRate = configuredRate;
+        this.maxRate = configuredRate == null ? MAX_RATE : Math.max(MIN_RATE, configuredRate);
+        this.isPacing = configuredRate != null;
+        this.rate = maxRate;
+    }
+
+    /**
+     * Block until the given number of messages may be sent.
+     */
+    public void acquire(int permits) throws InterruptedIOException {
+        final long waitNanos;
+        synchronized (this) {
+            if (!isPacing) {
+                observe(permits);
+                return;
+            }
+            waitNanos = reserve(permits);
+            if (waitNanos > 0) {
+                queued++;
+            }
+        }
+        if (waitNanos <= 0) {
+            return;
+        }
+
+        logger.debug("Throttling send of {} messages for {}ms", permits, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+        try {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for send throttle");
+        } finally {
+            synchronized (this) {
+                queued--;
+            }
+        }
+    }
+
+    /**
+     * Block until at least one message may be sent and acquire as many of the requested permits as are available
+     * without waiting longer.
+     *
+     * @return the number of acquired permits, between 1 and the requested number
+     */
+    public int acquireUpTo(int permits) throws InterruptedIOException {
+        final int acquired;
+        synchronized (this) {
+            acquired = isPacing ? (int) Math.max(1, Math.min(permits, Math.floor(getAvailablePermits()))) : permits;
+        }
+        acquire(acquired);
+        return acquired;
+    }
+
+    public void handleSendResults(Collection<SendMessageResult> results) {
+        for (final var result : results) {
+            handleSendResult(result);
+        }
+    }
+
+    public void handleSendResult(SendMessageResult result) {
+        if (result.isSuccess()) {
+            onSuccess();
+        } else if (result.getRateLimitFailure() != null) {
+            onRateLimited(result.getRateLimitFailure());
+        } else if (result.getProofRequiredFailure() != null) {
+            onRateLimited(result.getProofRequiredFailure());
+        }
+    }
+
+    public void onRateLimited(RateLimitException e) {
+        onRateLimited(e.getRetryAfterMilliseconds().map(Duration::ofMillis).orElse(DEFAULT_RETRY_AFTER));
+    }
+
+    public void onRateLimited(ProofRequiredException e) {
+        onRateLimited(Duration.ofSeconds(e.getRetryAfterSeconds()));
+    }
+
+    /**
+     * The rate of the status is null while messages aren't paced.
+     */
+    public synchronized SendThrottleStatus getStatus() {
+        if (!isPacing) {
+            return new SendThrottleStatus(null, 0, Duration.ZERO);
+        }
+        final var now = System.nanoTime();
+        final var untilNextSend = storedPermits >= 1 ? 0 : Math.max(0, nextFreeNanos - now);
+        return new SendThrottleStatus(rate, queued, Duration.ofNanos(untilNextSend));
+    }
+
+    synchronized void onSuccess() {
+        if (!isPacing) {
+            return;
+        }
+        // Additive increase, grows the rate by about one message per second for each second at full rate
+        rate = Math.min(maxRate, rate + 1.0 / rate);
+        if (configuredRate == null && rate >= maxRate) {
+            isPacing = false;
+            windowStartNanos = System.nanoTime();
+            windowPermits = 0;
+            observedRate = 0;
+            logger.debug("Send rate recovered, no longer pacing sends");
+        }
+    }
+
+    synchronized void onRateLimited(Duration retryAfter) {
+        if (isPacing) {
+            rate = Math.max(MIN_RATE, rate / 2);
+        } else {
+            final var recentRate = Math.max(observedRate, getWindowRate(System.nanoTime()));
+            rate = Math.max(MIN_RATE, Math.min(maxRate, recentRate / 2));
+            isPacing = true;
+        }
+        storedPermits = 0;
+        nextFreeNanos = Math.max(nextFreeNanos, System.nanoTime() + retryAfter.toNanos());
+        logger.info("Rate limited by server, reducing send rate to {}/s and pausing sends for {}s",
+                String.format("%.2f", rate),
+                retryAfter.toSeconds());
+    }
+
+    private void observe(int permits) {
+        final var now = System.nanoTime();
+        if (now - windowStartNanos >= OBSERVATION_WINDOW_NANOS) {
+            observedRate = getWindowRate(now);
+            windowStartNanos = now;
+            windowPermits = 0;
+        }
+        windowPermits += permits;
+    }
+
+    private double getWindowRate(final long now) {
+        final var elapsedNanos = Math.max(OBSERVATION_WINDOW_NANOS, now - windowStartNanos);
+        return windowPermits * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    private double getAvailablePermits() {
+        final var now = System.nanoTime();
+        if (now < nextFreeNanos) {
+            return 0;
+        }
+        final var intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        final var maxPermits = Math.min(MAX_BURST, Math.max(1.0, rate));
+        return Math.min(maxPermits, storedPermits + (double) (now - nextFreeNanos) / intervalNanos);
+    }
+
+    private long reserve(int permits) {
+        final var now = System.nanoTime();
+        final var intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        if (now > nextFreeNanos) {
+            storedPermits = getAvailablePermits();
+            nextFreeNanos = now;
+        }
+        final var waitNanos = nextFreeNanos - now;
+        final var fromStored = Math.min(permits, storedPermits);
+        storedPermits -= fromStored;
+        nextFreeNanos += (long) ((permits - fromStored) * intervalNanos);
+        return waitNanos;
+    }
+}
@@ -22,14 +22,23 @@ public class UnidentifiedAccessHelper {
 
     private final static Logger logger = LoggerFactory.getLogger(UnidentifiedAccessHelper.class);
     private final static long CERTIFICATE_EXPIRATION_BUFFER = TimeUnit.DAYS.toMillis(1);
+    private final static long CERTIFICATE_REFRESH_BUFFER = 2 * CERTIFICATE_EXPIRATION_BUFFER;
+    private final static long MIN_REFRESH_DELAY = TimeUnit.MINUTES.toMillis(1);
+    private final static long MAX_REFRESH_RETRY_DELAY = TimeUnit.HOURS.toMillis(1);
     private static final byte[] UNRESTRICTED_KEY = new byte[16];
 
     private final SignalAccount account;
     private final SignalDependencies dependencies;
     private final Context context;
 
-    private SenderCertificate privacySenderCertificate;
-    private SenderCertificate senderCertificate;
+    private final Object senderCertificateLock = new Object();
+    private final Object privacySenderCertificateLock = new Object();
+    private volatile CachedCertificate privacySenderCertificate;
+    private volatile CachedCertificate senderCertificate;
+
+    private Thread refreshThread;
+    private boolean refreshRequested = false;
+    private boolean stopped = false;
 
     public UnidentifiedAccessHelper(final Context context) {
         this.account = context.getAccount();
@@ -40,6 +49,30 @@ public class UnidentifiedAccessHelper {
     public void rotateSenderCertificates() {
         privacySenderCertificate = null;
         senderCertificate = null;
+        context.getSendHelper().invalidateSenderKeyTargets();
+        synchronized (this) {
+            refreshRequested = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Stop the background refresh of the sender certificates, it can't be started again afterwards.
+     */
+    public void stop() {
+        final Thread thread;
+        synchronized (this) {
+            stopped = true;
+            thread = refreshThread;
+            refreshThread = null;
+        }
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException ignored) {
+            }
+        }
     }
 
     public List<Optional<UnidentifiedAccessPair>> getAccessFor(List<RecipientId> recipients) {
@@ -111,35 +144,107 @@ public class UnidentifiedAccessHelper {
     }
 
     private byte[] getSenderCertificateForPhoneNumberPrivacy() {
-        if (privacySenderCertificate != null && System.currentTimeMillis() < (
-                privacySenderCertificate.getExpiration() - CERTIFICATE_EXPIRATION_BUFFER
-        )) {
-            return privacySenderCertificate.getSerialized();
+        final var certificate = getCertificate(true);
+        return certificate == null ? null : certificate.getSerialized();
+    }
+
+    private byte[] getSenderCertificate() {
+        final var certificate = getCertificate(false);
+        return certificate == null ? null : certificate.getSerialized();
+    }
+
+    private SenderCertificate getCertificate(boolean phoneNumberPrivacy) {
+        final var cached = phoneNumberPrivacy ? privacySenderCertificate : senderCertificate;
+        if (cached != null && cached.isUsable()) {
+            return cached.certificate();
         }
-        try {
-            final var certificate = dependencies.getAccountManager().getSenderCertificateForPhoneNumberPrivacy();
-            privacySenderCertificate = new SenderCertificate(certificate);
-            return certificate;
-        } catch (IOException | InvalidCertificateException e) {
-            logger.warn("Failed to get sender certificate, ignoring: {}", e.getMessage());
-            return null;
+        // Only happens before the first fetch, if the background refresh failed repeatedly or isn't running
+        final var refreshed = refreshCertificate(phoneNumberPrivacy, false);
+        return refreshed == null ? null : refreshed.certificate();
+    }
+
+    /**
+     * Fetch a new sender certificate if the current one is no longer usable or, if background is true, if its
+     * refresh time has come.
+     * Concurrent callers wait for a single fetch.
+     */
+    private CachedCertificate refreshCertificate(boolean phoneNumberPrivacy, boolean background) {
+        synchronized (phoneNumberPrivacy ? privacySenderCertificateLock : senderCertificateLock) {
+            final var current = phoneNumberPrivacy ? privacySenderCertificate : senderCertificate;
+            if (current != null && current.isUsable() && (!background || !current.isRefreshDue())) {
+                return current;
+            }
+            try {
+                final var accountManager = dependencies.getAccountManager();
+                final var certificate = new SenderCertificate(phoneNumberPrivacy
+                        ? accountManager.getSenderCertificateForPhoneNumberPrivacy()
+                        : accountManager.getSenderCertificate());
+                final var cached = CachedCertificate.from(certificate);
+                if (phoneNumberPrivacy) {
+                    privacySenderCertificate = cached;
+                } else {
+                    senderCertificate = cached;
+                }
+                context.getSendHelper().invalidateSenderKeyTargets();
+                return cached;
+            } catch (IOException | InvalidCertificateException e) {
+                logger.warn("Failed to get sender certificate, ignoring: {}", e.getMessage());
+                return null;
+            }
         }
     }
 
-    private byte[] getSenderCertificate() {
-        if (senderCertificate != null && System.currentTimeMillis() < (
-                senderCertificate.getExpiration() - CERTIFICATE_EXPIRATION_BUFFER
-        )) {
-            return senderCertificate.getSerialized();
+    /**
+     * Start renewing the sender certificates in the background, so sends don't have to wait for a fetch.
+     * Only used by long-running receive loops, one-off commands fetch the certificates when sending.
+     */
+    public synchronized void startCertificateRefresh() {
+        if (refreshThread != null || stopped) {
+            return;
         }
+        refreshThread = new Thread(this::runRefresher);
+        refreshThread.setName("sender-certificate-refresh");
+        refreshThread.setDaemon(true);
+        refreshThread.start();
+    }
+
+    private void runRefresher() {
+        logger.debug("Starting sender certificate refresh");
+        var retryDelay = MIN_REFRESH_DELAY;
         try {
-            final var certificate = dependencies.getAccountManager().getSenderCertificate();
-            this.senderCertificate = new SenderCertificate(certificate);
-            return certificate;
-        } catch (IOException | InvalidCertificateException e) {
-            logger.warn("Failed to get sender certificate, ignoring: {}", e.getMessage());
-            return null;
+            while (!Thread.currentThread().isInterrupted()) {
+                final var certificate = refreshCertificate(false, true);
+                final var privacyCertificate = refreshCertificate(true, true);
+
+                final long delay;
+                if (certificate == null || privacyCertificate == null) {
+                    delay = retryDelay;
+                    retryDelay = Math.min(2 * retryDelay, MAX_REFRESH_RETRY_DELAY);
+                } else {
+                    retryDelay = MIN_REFRESH_DELAY;
+                    final var nextRefresh = Math.min(certificate.refreshTimestamp(),
+                            privacyCertificate.refreshTimestamp());
+                    delay = Math.max(MIN_REFRESH_DELAY, nextRefresh - System.currentTimeMillis());
+                }
+                synchronized (this) {
+                    if (!refreshRequested) {
+                        wait(delay);
+                    }
+                    refreshRequested = false;
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } catch (RuntimeException e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                logger.warn("Sender certificate refresh failed: {}", e.getMessage(), e);
+            }
         }
+        synchronized (this) {
+            if (refreshThread == Thread.currentThread()) {
+                refreshThread = null;
+            }
+        }
+        logger.debug("Stopped sender certificate refresh");
     }
 
     private byte[] getSelfUnidentifiedAccessKey(boolean noRefresh) {
@@ -175,6 +280,26 @@ public class UnidentifiedAccessHelper {
         };
     }
 
+    private record CachedCertificate(SenderCertificate certificate, long refreshTimestamp) {
+
+        static CachedCertificate from(SenderCertificate certificate) {
+            final var now = System.currentTimeMillis();
+            final var expiration = certificate.getExpiration();
+            // Refresh well before the certificate becomes unusable, but not earlier than halfway through its lifetime
+            final var refreshTimestamp = Math.min(expiration - CERTIFICATE_EXPIRATION_BUFFER,
+                    Math.max(expiration - CERTIFICATE_REFRESH_BUFFER, now + (expiration - now) / 2));
+            return new CachedCertificate(certificate, refreshTimestamp);
+        }
+
+        boolean isUsable() {
+            return System.currentTimeMillis() < certificate.getExpiration() - CERTIFICATE_EXPIRATION_BUFFER;
+        }
+
+        boolean isRefreshDue() {
+            return System.currentTimeMillis() >= refreshTimestamp;
+        }
+    }
+
     private static byte[] createUnrestrictedUnidentifiedAccess() {
         return UNRESTRICTED_KEY;
     }
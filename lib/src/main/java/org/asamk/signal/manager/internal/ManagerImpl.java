@@ -20,6 +20,7 @@ import org.asamk.signal.manager.Manager;
 import org.asamk.signal.manager.api.AlreadyReceivingException;
 import org.asamk.signal.manager.api.AttachmentInvalidException;
 import org.asamk.signal.manager.api.Configuration;
+import org.asamk.signal.manager.api.DatabaseStatistics;
 import org.asamk.signal.manager.api.Device;
 import org.asamk.signal.manager.api.DeviceLinkUrl;
 import org.asamk.signal.manager.api.Group;
@@ -38,6 +39,7 @@ import org.asamk.signal.manager.api.Message;
 import org.asamk.signal.manager.api.MessageEnvelope;
 import org.asamk.signal.manager.api.NotAGroupMemberException;
 import org.asamk.signal.manager.api.NotPrimaryDeviceException;
+import org.asamk.signal.manager.api.OutboxResult;
 import org.asamk.signal.manager.api.Pair;
 import org.asamk.signal.manager.api.PendingAdminApprovalException;
 import org.asamk.signal.manager.api.Profile;
@@ -47,6 +49,7 @@ import org.asamk.signal.manager.api.RecipientIdentifier;
 import org.asamk.signal.manager.api.SendGroupMessageResults;
 import org.asamk.signal.manager.api.SendMessageResult;
 import org.asamk.signal.manager.api.SendMessageResults;
+import org.asamk.signal.manager.api.SendThrottleStatus;
 import org.asamk.signal.manager.api.StickerPackId;
 import org.asamk.signal.manager.api.StickerPackInvalidException;
 import org.asamk.signal.manager.api.StickerPackUrl;
@@ -64,6 +67,7 @@ import org.asamk.signal.manager.storage.AvatarStore;
 import org.asamk.signal.manager.storage.SignalAccount;
 import org.asamk.signal.manager.storage.groups.GroupInfo;
 import org.asamk.signal.manager.storage.identities.IdentityInfo;
+import org.asamk.signal.manager.storage.outbox.OutboxMessage;
 import org.asamk.signal.manager.storage.recipients.RecipientId;
 import org.asamk.signal.manager.storage.stickerPacks.JsonStickerPack;
 import org.asamk.signal.manager.storage.stickerPacks.StickerPackStore;
@@ -94,6 +98,7 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
@@ -105,8 +110,12 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
@@ -177,17 +186,26 @@ public class ManagerImpl implements Manager {
         }, dependencies, avatarStore, attachmentStore, stickerPackStore);
         this.context.getAccountHelper().setUnregisteredListener(this::close);
         this.context.getReceiveHelper().setAuthenticationFailureListener(this::close);
+        this.context.getOutboxHelper().setMessageSender(this::sendOutboxMessage);
         this.context.getReceiveHelper().setCaughtUpWithOldMessagesListener(() -> {
             synchronized (this) {
                 this.notifyAll();
             }
         });
+        disposable.add(account.getProfileStore()
+                .getProfileChanges()
+                .subscribe(recipientId -> context.getSendHelper().invalidateSenderKeyTargets(recipientId)));
+        disposable.add(account.getIdentityKeyStore()
+                .getTrustLevelChanges()
+                .subscribe(serviceId -> context.getSendHelper()
+                        .invalidateSenderKeyTargets(account.getRecipientResolver().resolveRecipient(serviceId))));
         disposable.add(account.getIdentityKeyStore().getIdentityChanges().subscribe(serviceId -> {
             logger.trace("Archiving old sessions for {}", serviceId);
             account.getAccountData(ServiceIdType.ACI).getSessionStore().archiveSessions(serviceId);
             account.getAccountData(ServiceIdType.PNI).getSessionStore().archiveSessions(serviceId);
             account.getSenderKeyStore().deleteSharedWith(serviceId);
             final var recipientId = account.getRecipientResolver().resolveRecipient(serviceId);
+            context.getSendHelper().invalidateSenderKeyTargets(recipientId);
             final var profile = account.getProfileStore().getProfile(recipientId);
             if (profile != null) {
                 account.getProfileStore()
@@ -478,18 +496,14 @@ public class ManagerImpl implements Manager {
         var results = new HashMap<RecipientIdentifier, List<SendMessageResult>>();
         long timestamp = System.currentTimeMillis();
         messageBuilder.withTimestamp(timestamp);
+        final var singleRecipients = recipients.stream()
+                .filter(r -> r instanceof RecipientIdentifier.Single)
+                .map(RecipientIdentifier.Single.class::cast)
+                .toList();
+        results.putAll(sendToSingleRecipients(singleRecipients,
+                recipientId -> context.getSendHelper().sendMessage(messageBuilder, recipientId, editTargetTimestamp)));
         for (final var recipient : recipients) {
-            if (recipient instanceof RecipientIdentifier.Single single) {
-                try {
-                    final var recipientId = context.getRecipientHelper().resolveRecipient(single);
-                    final var result = context.getSendHelper()
-                            .sendMessage(messageBuilder, recipientId, editTargetTimestamp);
-                    results.put(recipient, List.of(toSendMessageResult(result)));
-                } catch (UnregisteredRecipientException e) {
-                    results.put(recipient,
-                            List.of(SendMessageResult.unregisteredFailure(single.toPartialRecipientAddress())));
-                }
-            } else if (recipient instanceof RecipientIdentifier.NoteToSelf) {
+            if (recipient instanceof RecipientIdentifier.NoteToSelf) {
                 final var result = context.getSendHelper().sendSelfMessage(messageBuilder, editTargetTimestamp);
                 results.put(recipient, List.of(toSendMessageResult(result)));
             } else if (recipient instanceof RecipientIdentifier.Group group) {
@@ -501,6 +515,64 @@ public class ManagerImpl implements Manager {
         return new SendMessageResults(timestamp, results);
     }
 
+    /**
+     * Send to individual recipients concurrently, with at most the configured number of sends in flight.
+     * Sends to the same recipient, e.g. given once by number and once by uuid, are not run concurrently.
+     */
+    private Map<RecipientIdentifier, List<SendMessageResult>> sendToSingleRecipients(
+            final List<RecipientIdentifier.Single> recipients,
+            final Function<RecipientId, org.whispersystems.signalservice.api.messages.SendMessageResult> sender
+    ) throws IOException {
+        final var results = new ConcurrentHashMap<RecipientIdentifier, List<SendMessageResult>>();
+        final var pendingRecipients = new ConcurrentLinkedQueue<>(recipients);
+        final var recipientLocks = new ConcurrentHashMap<RecipientId, Object>();
+        final Runnable worker = () -> {
+            RecipientIdentifier.Single single;
+            while ((single = pendingRecipients.poll()) != null) {
+                try {
+                    final var recipientId = context.getRecipientHelper().resolveRecipient(single);
+                    final org.whispersystems.signalservice.api.messages.SendMessageResult result;
+                    synchronized (recipientLocks.computeIfAbsent(recipientId, r -> new Object())) {
+                        result = sender.apply(recipientId);
+                    }
+                    results.put(single, List.of(toSendMessageResult(result)));
+                } catch (UnregisteredRecipientException e) {
+                    results.put(single,
+                            List.of(SendMessageResult.unregisteredFailure(single.toPartialRecipientAddress())));
+                }
+            }
+        };
+
+        final var workerCount = Math.min(account.getSettings().sendParallelism(), recipients.size());
+        if (workerCount <= 1) {
+            worker.run();
+            return results;
+        }
+
+        final var workers = new ArrayList<Future<?>>(workerCount);
+        for (var i = 0; i < workerCount; i++) {
+            workers.add(executor.submit(worker));
+        }
+        RuntimeException error = null;
+        for (final var future : workers) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (error == null) {
+                    error = e.getCause() instanceof RuntimeException r ? r : new RuntimeException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                pendingRecipients.clear();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while sending messages");
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+        return results;
+    }
+
     private SendMessageResult toSendMessageResult(final org.whispersystems.signalservice.api.messages.SendMessageResult result) {
         return SendMessageResult.from(result, account.getRecipientResolver(), account.getRecipientAddressResolver());
     }
@@ -691,6 +763,30 @@ public class ManagerImpl implements Manager {
         return mentions;
     }
 
+    @Override
+    public long queueMessage(
+            Message message, Set<RecipientIdentifier.Single> recipients
+    ) throws UnregisteredRecipientException {
+        final var recipientIds = context.getRecipientHelper().resolveRecipients(recipients);
+        final var timestamp = System.currentTimeMillis();
+        context.getOutboxHelper().addMessage(OutboxMessage.from(message), recipientIds, timestamp);
+        return timestamp;
+    }
+
+    @Override
+    public List<OutboxResult> getOutboxResults(final long timestamp) {
+        return context.getOutboxHelper().getResults(timestamp);
+    }
+
+    private org.whispersystems.signalservice.api.messages.SendMessageResult sendOutboxMessage(
+            OutboxMessage outboxMessage, RecipientId recipientId, long timestamp
+    ) throws IOException, AttachmentInvalidException, UnregisteredRecipientException, InvalidStickerException, org.asamk.signal.manager.api.InvalidNumberException {
+        final var messageBuilder = SignalServiceDataMessage.newBuilder();
+        applyMessage(messageBuilder, outboxMessage.toMessage(account.getNumber()));
+        messageBuilder.withTimestamp(timestamp);
+        return context.getSendHelper().sendMessage(messageBuilder, recipientId, Optional.empty());
+    }
+
     @Override
     public SendMessageResults sendRemoteDeleteMessage(
             long targetSentTimestamp, Set<RecipientIdentifier> recipients
@@ -940,6 +1036,17 @@ public class ManagerImpl implements Manager {
         }
     }
 
+    @Override
+    public void addOutboxListener(final OutboxListener listener) {
+        context.getOutboxHelper().addListener(listener);
+        context.getOutboxHelper().start();
+    }
+
+    @Override
+    public void removeOutboxListener(final OutboxListener listener) {
+        context.getOutboxHelper().removeListener(listener);
+    }
+
     private static final AtomicInteger threadNumber = new AtomicInteger(0);
 
     private void startReceiveThreadIfRequired() {
@@ -963,6 +1070,8 @@ public class ManagerImpl implements Manager {
         receiveThread.setName("receive-" + threadNumber.getAndIncrement());
 
         receiveThread.start();
+        context.getOutboxHelper().start();
+        context.getUnidentifiedAccessHelper().startCertificateRefresh();
     }
 
     private void passReceivedMessageToHandlers(MessageEnvelope envelope, Throwable e) {
@@ -1031,6 +1140,7 @@ public class ManagerImpl implements Manager {
             isReceivingSynchronous = true;
             receiveThread = Thread.currentThread();
         }
+        context.getOutboxHelper().start();
         try {
             context.getReceiveHelper().receiveMessages(timeout, returnOnTimeout, maxMessages, (envelope, e) -> {
                 passReceivedMessageToHandlers(envelope, e);
@@ -1189,6 +1299,16 @@ public class ManagerImpl implements Manager {
         return trustIdentity(recipient, r -> context.getIdentityHelper().trustIdentityAllKeys(r));
     }
 
+    @Override
+    public DatabaseStatistics getDatabaseStatistics() {
+        return account.getAccountDatabase().getStatistics();
+    }
+
+    @Override
+    public SendThrottleStatus getSendThrottleStatus() {
+        return context.getSendThrottler().getStatus();
+    }
+
     private boolean trustIdentity(
             RecipientIdentifier.Single recipient, Function<RecipientId, Boolean> trustMethod
     ) throws UnregisteredRecipientException {
@@ -1214,6 +1334,13 @@ public class ManagerImpl implements Manager {
         }
     }
 
+    @Override
+    public void removeClosedListener(final Runnable listener) {
+        synchronized (closedListeners) {
+            closedListeners.remove(listener);
+        }
+    }
+
     @Override
     public InputStream retrieveAttachment(final String id) throws IOException {
         return context.getAttachmentHelper().retrieveAttachment(id).getStream();
@@ -1231,6 +1358,8 @@ public class ManagerImpl implements Manager {
         if (thread != null) {
             stopReceiveThread(thread);
         }
+        context.getOutboxHelper().stop();
+        context.getUnidentifiedAccessHelper().stop();
         executor.shutdown();
 
         dependencies.getSignalWebSocket().disconnect();
@@ -1240,10 +1369,13 @@ public class ManagerImpl implements Manager {
             account.close();
         }
 
+        final List<Runnable> listeners;
         synchronized (closedListeners) {
-            closedListeners.forEach(Runnable::run);
+            listeners = new ArrayList<>(closedListeners);
             closedListeners.clear();
         }
+        // Not run while holding the lock, a listener may remove itself
+        listeners.forEach(Runnable::run);
 
         account = null;
     }
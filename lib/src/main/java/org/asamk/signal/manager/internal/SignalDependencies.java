@@ -90,6 +90,10 @@ public class SignalDependencies {
         return sessionLock;
     }
 
+    public ExecutorService getExecutor() {
+        return executor;
+    }
+
     public SignalServiceAccountManager getAccountManager() {
         return getOrCreate(() -> accountManager,
                 () -> accountManager = new SignalServiceAccountManager(serviceEnvironmentConfig.getSignalServiceConfiguration(),
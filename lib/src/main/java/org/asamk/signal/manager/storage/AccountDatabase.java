@@ -2,8 +2,11 @@ package org.asamk.signal.manager.storage;
 
 import com.zaxxer.hikari.HikariDataSource;
 
+import org.asamk.signal.manager.storage.attachmentUploads.AttachmentUploadStore;
+import org.asamk.signal.manager.storage.groups.GroupAuthCredentialStore;
 import org.asamk.signal.manager.storage.groups.GroupStore;
 import org.asamk.signal.manager.storage.identities.IdentityKeyStore;
+import org.asamk.signal.manager.storage.outbox.OutboxStore;
 import org.asamk.signal.manager.storage.prekeys.KyberPreKeyStore;
 import org.asamk.signal.manager.storage.prekeys.PreKeyStore;
 import org.asamk.signal.manager.storage.prekeys.SignedPreKeyStore;
@@ -20,18 +23,19 @@ import org.whispersystems.signalservice.api.push.ServiceId;
 import java.io.File;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.time.Duration;
 
 public class AccountDatabase extends Database {
 
     private final static Logger logger = LoggerFactory.getLogger(AccountDatabase.class);
-    private static final long DATABASE_VERSION = 14;
+    private static final long DATABASE_VERSION = 19;
 
-    private AccountDatabase(final HikariDataSource dataSource) {
-        super(logger, DATABASE_VERSION, dataSource);
+    private AccountDatabase(final HikariDataSource dataSource, final Duration slowQueryThreshold) {
+        super(logger, DATABASE_VERSION, dataSource, slowQueryThreshold);
     }
 
-    public static AccountDatabase init(File databaseFile) throws SQLException {
-        return initDatabase(databaseFile, AccountDatabase::new);
+    public static AccountDatabase init(File databaseFile, Duration slowQueryThreshold) throws SQLException {
+        return initDatabase(databaseFile, dataSource -> new AccountDatabase(dataSource, slowQueryThreshold));
     }
 
     @Override
@@ -47,6 +51,10 @@ public class AccountDatabase extends Database {
         IdentityKeyStore.createSql(connection);
         SenderKeyRecordStore.createSql(connection);
         SenderKeySharedStore.createSql(connection);
+        OutboxStore.createSql(connection);
+        AttachmentUploadStore.createSql(connection);
+        GroupAuthCredentialStore.createSql(connection);
+        createMaintenanceSql(connection);
     }
 
     @Override
@@ -348,5 +356,83 @@ public class AccountDatabase extends Database {
             }
 
         }
+        if (oldVersion < 15) {
+            logger.debug("Updating database: Creating outbox table");
+            try (final var statement = connection.createStatement()) {
+                statement.executeUpdate("""
+                                        CREATE TABLE outbox (
+                                          _id INTEGER PRIMARY KEY,
+                                          recipient_id INTEGER NOT NULL REFERENCES recipient (_id) ON DELETE CASCADE,
+                                          timestamp INTEGER NOT NULL,
+                                          message TEXT NOT NULL,
+                                          attempts INTEGER NOT NULL DEFAULT 0,
+                                          next_attempt INTEGER NOT NULL
+                                        ) STRICT;
+                                        CREATE INDEX outbox_recipient_id ON outbox (recipient_id, _id);
+                                        """);
+            }
+        }
+        if (oldVersion < 16) {
+            logger.debug("Updating database: Creating attachment upload table");
+            try (final var statement = connection.createStatement()) {
+                statement.executeUpdate("""
+                                        CREATE TABLE attachment_upload (
+                                          _id INTEGER PRIMARY KEY,
+                                          content_hash BLOB NOT NULL,
+                                          content_type TEXT NOT NULL,
+                                          file_name TEXT NOT NULL,
+                                          size INTEGER NOT NULL,
+                                          pointer BLOB NOT NULL,
+                                          expiration_timestamp INTEGER NOT NULL,
+                                          UNIQUE(content_hash, content_type, file_name, size)
+                                        ) STRICT;
+                                        """);
+            }
+        }
+        if (oldVersion < 17) {
+            logger.debug("Updating database: Creating group auth credential table");
+            try (final var statement = connection.createStatement()) {
+                statement.executeUpdate("""
+                                        CREATE TABLE group_auth_credential (
+                                          redemption_time INTEGER PRIMARY KEY,
+                                          credential BLOB NOT NULL
+                                        ) STRICT;
+                                        """);
+            }
+        }
+        if (oldVersion < 18) {
+            logger.debug("Updating database: Creating maintenance table");
+            createMaintenanceSql(connection);
+        }
+        if (oldVersion < 19) {
+            logger.debug("Updating database: Creating outbox result table");
+            try (final var statement = connection.createStatement()) {
+                statement.executeUpdate("""
+                                        CREATE TABLE outbox_result (
+                                          _id INTEGER PRIMARY KEY,
+                                          recipient_id INTEGER NOT NULL REFERENCES recipient (_id) ON DELETE CASCADE,
+                                          timestamp INTEGER NOT NULL,
+                                          attempts INTEGER NOT NULL,
+                                          type TEXT,
+                                          error TEXT,
+                                          finished INTEGER NOT NULL
+                                        ) STRICT;
+                                        CREATE INDEX outbox_result_timestamp ON outbox_result (timestamp);
+                                        """);
+            }
+        }
+    }
+
+    @Override
+    protected void upgradeDatabaseWithoutTransaction(
+            final Connection connection, final long oldVersion
+    ) throws SQLException {
+        if (oldVersion < 18) {
+            logger.debug("Updating database: Enabling incremental auto vacuum");
+            try (final var statement = connection.createStatement()) {
+                statement.executeUpdate("PRAGMA auto_vacuum = INCREMENTAL");
+                statement.executeUpdate("VACUUM");
+            }
+        }
     }
 }
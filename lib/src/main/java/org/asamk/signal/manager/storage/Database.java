@@ -3,12 +3,17 @@ package org.asamk.signal.manager.storage;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
+import org.asamk.signal.manager.api.DatabaseStatistics;
 import org.slf4j.Logger;
 import org.sqlite.SQLiteConfig;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
 import java.util.function.Function;
 
 public abstract class Database implements AutoCloseable {
@@ -16,11 +21,27 @@ public abstract class Database implements AutoCloseable {
     private final Logger logger;
     private final long databaseVersion;
     private final HikariDataSource dataSource;
+    private final DatabaseMetrics metrics;
 
-    protected Database(final Logger logger, final long databaseVersion, final HikariDataSource dataSource) {
+    private static final Duration MAINTENANCE_INTERVAL = Duration.ofHours(24);
+    private static final long AUTO_VACUUM_INCREMENTAL = 2;
+    private static final String TABLE_MAINTENANCE = "maintenance";
+
+    private volatile long lastMaintenanceTimestamp;
+    private volatile boolean closed;
+    private Thread maintenanceThread;
+    private Statement maintenanceStatement;
+
+    protected Database(
+            final Logger logger,
+            final long databaseVersion,
+            final HikariDataSource dataSource,
+            final Duration slowQueryThreshold
+    ) {
         this.logger = logger;
         this.databaseVersion = databaseVersion;
         this.dataSource = dataSource;
+        this.metrics = new DatabaseMetrics(logger, slowQueryThreshold);
     }
 
     public static <T extends Database> T initDatabase(
@@ -43,11 +64,105 @@ public abstract class Database implements AutoCloseable {
     }
 
     public final Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        final var start = System.nanoTime();
+        final var connection = dataSource.getConnection();
+        metrics.recordConnectionWait(System.nanoTime() - start);
+        return metrics.instrument(connection);
+    }
+
+    /**
+     * Run the database maintenance in the background, if the last run is longer ago than the maintenance interval.
+     * Should only be called by long-running processes when the account is idle, e.g. after the server message queue
+     * has been emptied, so short-lived commands don't pay for the maintenance.
+     */
+    public void requestMaintenance() {
+        synchronized (this) {
+            if (closed || (maintenanceThread != null && maintenanceThread.isAlive())) {
+                return;
+            }
+            if (System.currentTimeMillis() - lastMaintenanceTimestamp < MAINTENANCE_INTERVAL.toMillis()) {
+                return;
+            }
+            maintenanceThread = new Thread(this::runMaintenance);
+            maintenanceThread.setName("db-maintenance");
+            maintenanceThread.setDaemon(true);
+            maintenanceThread.start();
+        }
+    }
+
+    /**
+     * Reclaim free pages and update the query planner statistics.
+     * The maintenance is aborted when the database is closed.
+     */
+    public void runMaintenance() {
+        final var start = System.currentTimeMillis();
+        try (final var connection = dataSource.getConnection()) {
+            try (final var statement = connection.createStatement()) {
+                final var sqls = getPragma(statement, "auto_vacuum") == AUTO_VACUUM_INCREMENTAL
+                        ? List.of("PRAGMA incremental_vacuum", "ANALYZE", "PRAGMA optimize")
+                        : List.of("ANALYZE", "PRAGMA optimize");
+                for (final var sql : sqls) {
+                    synchronized (this) {
+                        if (closed) {
+                            return;
+                        }
+                        maintenanceStatement = statement;
+                    }
+                    try {
+                        statement.execute(sql);
+                    } finally {
+                        synchronized (this) {
+                            maintenanceStatement = null;
+                        }
+                    }
+                }
+            }
+            final var timestamp = System.currentTimeMillis();
+            setLastMaintenanceTimestamp(connection, timestamp);
+            lastMaintenanceTimestamp = timestamp;
+            logger.debug("Database maintenance finished in {}ms", timestamp - start);
+        } catch (SQLException e) {
+            if (closed) {
+                logger.debug("Database maintenance aborted on close");
+            } else {
+                logger.warn("Database maintenance failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    public DatabaseStatistics getStatistics() {
+        try (final var connection = dataSource.getConnection()) {
+            try (final var statement = connection.createStatement()) {
+                final var pageSize = getPragma(statement, "page_size");
+                final var pageCount = getPragma(statement, "page_count");
+                final var freePageCount = getPragma(statement, "freelist_count");
+                final var lastMaintenance = lastMaintenanceTimestamp;
+                return new DatabaseStatistics(pageSize * pageCount,
+                        pageCount,
+                        freePageCount,
+                        lastMaintenance == 0 ? Optional.empty() : Optional.of(lastMaintenance),
+                        metrics.getConnectionWaitStatistics(),
+                        metrics.getQueryStatistics());
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to read database statistics", e);
+        }
     }
 
     @Override
     public void close() throws SQLException {
+        synchronized (this) {
+            closed = true;
+            if (maintenanceStatement != null) {
+                // Interrupts the running statement, closing shouldn't wait for a long maintenance run
+                try {
+                    maintenanceStatement.cancel();
+                } catch (SQLException e) {
+                    logger.debug("Failed to cancel database maintenance: {}", e.getMessage());
+                }
+            }
+        }
+        metrics.logSummary();
         dataSource.close();
     }
 
@@ -68,6 +183,12 @@ public abstract class Database implements AutoCloseable {
                 setUserVersion(connection, databaseVersion);
             }
             connection.commit();
+
+            if (userVersion < databaseVersion) {
+                connection.setAutoCommit(true);
+                upgradeDatabaseWithoutTransaction(connection, userVersion);
+            }
+            lastMaintenanceTimestamp = getLastMaintenanceTimestamp(connection);
         }
     }
 
@@ -75,6 +196,45 @@ public abstract class Database implements AutoCloseable {
 
     protected abstract void upgradeDatabase(final Connection connection, long oldVersion) throws SQLException;
 
+    /**
+     * Run the upgrade steps that can't be executed inside a transaction, like VACUUM.
+     * Called after the upgrade transaction has been committed, also for newly created databases with old version 0.
+     */
+    protected void upgradeDatabaseWithoutTransaction(
+            final Connection connection, long oldVersion
+    ) throws SQLException {
+    }
+
+    protected static void createMaintenanceSql(Connection connection) throws SQLException {
+        try (final var statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                                    CREATE TABLE maintenance (
+                                      _id INTEGER PRIMARY KEY,
+                                      timestamp INTEGER NOT NULL
+                                    ) STRICT;
+                                    """);
+        }
+    }
+
+    private static long getLastMaintenanceTimestamp(final Connection connection) throws SQLException {
+        final var sql = "SELECT m.timestamp FROM %s m WHERE m._id = 0".formatted(TABLE_MAINTENANCE);
+        try (final var statement = connection.prepareStatement(sql)) {
+            try (final var resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getLong("timestamp") : 0;
+            }
+        }
+    }
+
+    private static void setLastMaintenanceTimestamp(
+            final Connection connection, final long timestamp
+    ) throws SQLException {
+        final var sql = "INSERT OR REPLACE INTO %s (_id, timestamp) VALUES (0, ?)".formatted(TABLE_MAINTENANCE);
+        try (final var statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, timestamp);
+            statement.executeUpdate();
+        }
+    }
+
     private static long getUserVersion(final Connection connection) throws SQLException {
         try (final var statement = connection.createStatement()) {
             final var resultSet = statement.executeQuery("PRAGMA user_version");
@@ -82,6 +242,12 @@ public abstract class Database implements AutoCloseable {
         }
     }
 
+    private static long getPragma(final Statement statement, final String pragma) throws SQLException {
+        try (final var resultSet = statement.executeQuery("PRAGMA " + pragma)) {
+            return resultSet.getLong(1);
+        }
+    }
+
     private static void setUserVersion(final Connection connection, long userVersion) throws SQLException {
         try (final var statement = connection.createStatement()) {
             statement.executeUpdate("PRAGMA user_version = " + userVersion);
@@ -0,0 +1,112 @@
+package org.asamk.signal.manager.storage;
+
+import org.asamk.signal.manager.api.LatencyStatistics;
+import org.slf4j.Logger;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Records latencies of all statements executed on connections handed out by a {@link Database}.
+ * Statements are grouped by their table and operation, e.g. "session.select", so the names neither grow with
+ * statements that contain literal values nor expose those values.
+ */
+class DatabaseMetrics {
+
+    private static final int MAX_CACHED_QUERY_NAMES = 1000;
+    private static final int SUMMARY_QUERY_COUNT = 10;
+    private static final Pattern OPERATION_PATTERN = Pattern.compile("^\\s*(\\w+)");
+    private static final Pattern TABLE_PATTERN = Pattern.compile(
+            "\\b(?:FROM|INTO|UPDATE|TABLE|JOIN)\\s+(?:IF\\s+(?:NOT\\s+)?EXISTS\\s+)?[\"`]?(\\w+)",
+            Pattern.CASE_INSENSITIVE);
+    private static final Pattern LITERAL_PATTERN = Pattern.compile("[xX]?'(?:[^']|'')*'|\\b\\d+\\b");
+
+    private final Logger logger;
+    private final long slowQueryThresholdNanos;
+    private final LatencyHistogram connectionWait = new LatencyHistogram("connection.wait");
+    private final Map<String, LatencyHistogram> queries = new ConcurrentHashMap<>();
+    private final Map<String, String> queryNames = new ConcurrentHashMap<>();
+
+    DatabaseMetrics(final Logger logger, final Duration slowQueryThreshold) {
+        this.logger = logger;
+        this.slowQueryThresholdNanos = slowQueryThreshold.toNanos();
+    }
+
+    void recordConnectionWait(final long nanos) {
+        connectionWait.record(nanos);
+        if (nanos > slowQueryThresholdNanos) {
+            logger.info("Waited {}ms for a database connection", nanos / 1_000_000);
+        }
+    }
+
+    void recordQuery(final String sql, final long nanos) {
+        final var name = getQueryName(sql);
+        queries.computeIfAbsent(name, LatencyHistogram::new).record(nanos);
+        if (nanos > slowQueryThresholdNanos) {
+            logger.info("Slow query {} took {}ms: {}", name, nanos / 1_000_000, withoutLiterals(sql));
+        }
+    }
+
+    LatencyStatistics getConnectionWaitStatistics() {
+        return connectionWait.getStatistics();
+    }
+
+    List<LatencyStatistics> getQueryStatistics() {
+        return queries.values()
+                .stream()
+                .map(LatencyHistogram::getStatistics)
+                .sorted(Comparator.comparing(LatencyStatistics::totalMicros).reversed())
+                .toList();
+    }
+
+    void logSummary() {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+        final var connectionWaitStatistics = connectionWait.getStatistics();
+        logger.debug("Database connections: {} acquired, {}ms total wait",
+                connectionWaitStatistics.count(),
+                connectionWaitStatistics.totalMicros() / 1000);
+        getQueryStatistics().stream()
+                .limit(SUMMARY_QUERY_COUNT)
+                .forEach(s -> logger.debug("Query {}: {} executions, {}ms total, {}ms max",
+                        s.name(),
+                        s.count(),
+                        s.totalMicros() / 1000,
+                        s.maxMicros() / 1000));
+    }
+
+    Connection instrument(final Connection connection) {
+        return new InstrumentedConnection(connection, this);
+    }
+
+    private String getQueryName(final String sql) {
+        final var name = queryNames.get(sql);
+        if (name != null) {
+            return name;
+        }
+        final var newName = deriveQueryName(sql);
+        // Statements with inlined values have a different SQL text each time, their names aren't cached
+        if (queryNames.size() < MAX_CACHED_QUERY_NAMES) {
+            queryNames.put(sql, newName);
+        }
+        return newName;
+    }
+
+    private static String deriveQueryName(final String sql) {
+        final var operationMatcher = OPERATION_PATTERN.matcher(sql);
+        final var operation = operationMatcher.find() ? operationMatcher.group(1).toLowerCase(Locale.ROOT) : "other";
+        final var tableMatcher = TABLE_PATTERN.matcher(sql);
+        return tableMatcher.find() ? tableMatcher.group(1).toLowerCase(Locale.ROOT) + "." + operation : operation;
+    }
+
+    private static String withoutLiterals(final String sql) {
+        return LITERAL_PATTERN.matcher(sql.strip().replaceAll("\\s+", " ")).replaceAll("?");
+    }
+}
@@ -0,0 +1,392 @@
+package org.asamk.signal.manager.storage;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * Statement that records the execution time of the SQL it executes in {@link DatabaseMetrics}.
+ */
+class InstrumentedStatement implements Statement {
+
+    private final Connection connection;
+    private final Statement statement;
+    protected final DatabaseMetrics metrics;
+    // Batches are recorded with the first SQL added to them
+    private String batchSql;
+
+    InstrumentedStatement(final Connection connection, final Statement statement, final DatabaseMetrics metrics) {
+        this.connection = connection;
+        this.statement = statement;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ResultSet executeQuery(final String sql) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.executeQuery(sql);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int executeUpdate(final String sql) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.executeUpdate(sql);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        statement.close();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return statement.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(final int max) throws SQLException {
+        statement.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return statement.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(final int max) throws SQLException {
+        statement.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(final boolean enable) throws SQLException {
+        statement.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return statement.getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(final int seconds) throws SQLException {
+        statement.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        statement.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return statement.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        statement.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(final String name) throws SQLException {
+        statement.setCursorName(name);
+    }
+
+    @Override
+    public boolean execute(final String sql) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.execute(sql);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return statement.getResultSet();
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return statement.getUpdateCount();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return statement.getMoreResults();
+    }
+
+    @Override
+    public void setFetchDirection(final int direction) throws SQLException {
+        statement.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return statement.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(final int rows) throws SQLException {
+        statement.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return statement.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return statement.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return statement.getResultSetType();
+    }
+
+    @Override
+    public void addBatch(final String sql) throws SQLException {
+        statement.addBatch(sql);
+        if (batchSql == null) {
+            batchSql = sql;
+        }
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        statement.clearBatch();
+        batchSql = null;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        final var sql = batchSql;
+        batchSql = null;
+        final var start = System.nanoTime();
+        try {
+            return statement.executeBatch();
+        } finally {
+            if (sql != null) {
+                metrics.recordQuery(sql, System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connection;
+    }
+
+    @Override
+    public boolean getMoreResults(final int current) throws SQLException {
+        return statement.getMoreResults(current);
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return statement.getGeneratedKeys();
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.executeUpdate(sql, autoGeneratedKeys);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.executeUpdate(sql, columnIndexes);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.executeUpdate(sql, columnNames);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.execute(sql, autoGeneratedKeys);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.execute(sql, columnIndexes);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean execute(final String sql, final String[] columnNames) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.execute(sql, columnNames);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return statement.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return statement.isClosed();
+    }
+
+    @Override
+    public void setPoolable(final boolean poolable) throws SQLException {
+        statement.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return statement.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        statement.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return statement.isCloseOnCompletion();
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        return statement.getLargeUpdateCount();
+    }
+
+    @Override
+    public void setLargeMaxRows(final long max) throws SQLException {
+        statement.setLargeMaxRows(max);
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        return statement.getLargeMaxRows();
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        final var sql = batchSql;
+        batchSql = null;
+        final var start = System.nanoTime();
+        try {
+            return statement.executeLargeBatch();
+        } finally {
+            if (sql != null) {
+                metrics.recordQuery(sql, System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public long executeLargeUpdate(final String sql) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.executeLargeUpdate(sql);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long executeLargeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.executeLargeUpdate(sql, autoGeneratedKeys);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long executeLargeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.executeLargeUpdate(sql, columnIndexes);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public long executeLargeUpdate(final String sql, final String[] columnNames) throws SQLException {
+        final var start = System.nanoTime();
+        try {
+            return statement.executeLargeUpdate(sql, columnNames);
+        } finally {
+            metrics.recordQuery(sql, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public String enquoteLiteral(final String val) throws SQLException {
+        return statement.enquoteLiteral(val);
+    }
+
+    @Override
+    public String enquoteIdentifier(final String identifier, final boolean alwaysQuote) throws SQLException {
+        return statement.enquoteIdentifier(identifier, alwaysQuote);
+    }
+
+    @Override
+    public boolean isSimpleIdentifier(final String identifier) throws SQLException {
+        return statement.isSimpleIdentifier(identifier);
+    }
+
+    @Override
+    public String enquoteNCharLiteral(final String val) throws SQLException {
+        return statement.enquoteNCharLiteral(val);
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        return iface.isInstance(statement) ? iface.cast(statement) : statement.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return iface.isInstance(statement) || statement.isWrapperFor(iface);
+    }
+}
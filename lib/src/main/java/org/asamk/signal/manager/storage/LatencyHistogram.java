@@ -0,0 +1,51 @@
+package org.asamk.signal.manager.storage;
+
+import org.asamk.signal.manager.api.LatencyStatistics;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+class LatencyHistogram {
+
+    private static final long[] BUCKET_UPPER_BOUNDS_MICROS = {
+            100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000
+    };
+
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_UPPER_BOUNDS_MICROS.length + 1);
+
+    LatencyHistogram(final String name) {
+        this.name = name;
+    }
+
+    void record(final long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+
+        final var micros = nanos / 1000;
+        var bucket = 0;
+        while (bucket < BUCKET_UPPER_BOUNDS_MICROS.length && micros > BUCKET_UPPER_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+    }
+
+    LatencyStatistics getStatistics() {
+        final var bucketStatistics = new ArrayList<LatencyStatistics.Bucket>(buckets.length());
+        for (var i = 0; i < buckets.length(); i++) {
+            final var upperBound = i < BUCKET_UPPER_BOUNDS_MICROS.length ? BUCKET_UPPER_BOUNDS_MICROS[i] : null;
+            bucketStatistics.add(new LatencyStatistics.Bucket(upperBound, buckets.get(i)));
+        }
+        return new LatencyStatistics(name,
+                count.sum(),
+                totalNanos.sum() / 1000,
+                maxNanos.get() / 1000,
+                bucketStatistics);
+    }
+}
@@ -11,9 +11,11 @@ import org.asamk.signal.manager.api.Profile;
 import org.asamk.signal.manager.api.ServiceEnvironment;
 import org.asamk.signal.manager.api.TrustLevel;
 import org.asamk.signal.manager.helper.RecipientAddressResolver;
+import org.asamk.signal.manager.storage.attachmentUploads.AttachmentUploadStore;
 import org.asamk.signal.manager.storage.configuration.ConfigurationStore;
 import org.asamk.signal.manager.storage.contacts.ContactsStore;
 import org.asamk.signal.manager.storage.contacts.LegacyJsonContactsStore;
+import org.asamk.signal.manager.storage.groups.GroupAuthCredentialStore;
 import org.asamk.signal.manager.storage.groups.GroupInfoV1;
 import org.asamk.signal.manager.storage.groups.GroupStore;
 import org.asamk.signal.manager.storage.groups.LegacyGroupStore;
@@ -21,6 +23,7 @@ import org.asamk.signal.manager.storage.identities.IdentityKeyStore;
 import org.asamk.signal.manager.storage.identities.LegacyIdentityKeyStore;
 import org.asamk.signal.manager.storage.identities.SignalIdentityKeyStore;
 import org.asamk.signal.manager.storage.messageCache.MessageCache;
+import org.asamk.signal.manager.storage.outbox.OutboxStore;
 import org.asamk.signal.manager.storage.prekeys.KyberPreKeyStore;
 import org.asamk.signal.manager.storage.prekeys.LegacyPreKeyStore;
 import org.asamk.signal.manager.storage.prekeys.LegacySignedPreKeyStore;
@@ -148,6 +151,9 @@ public class SignalAccount implements Closeable {
     private GroupStore groupStore;
     private RecipientStore recipientStore;
     private StickerStore stickerStore;
+    private OutboxStore outboxStore;
+    private AttachmentUploadStore attachmentUploadStore;
+    private GroupAuthCredentialStore groupAuthCredentialStore;
     private ConfigurationStore configurationStore;
     private ConfigurationStore.Storage configurationStoreStorage;
 
@@ -425,6 +431,7 @@ public class SignalAccount implements Closeable {
     ) throws SQLException {
         getMessageCache().mergeRecipients(recipientId, toBeMergedRecipientId);
         getGroupStore().mergeRecipients(connection, recipientId, toBeMergedRecipientId);
+        getOutboxStore().mergeRecipients(connection, recipientId, toBeMergedRecipientId);
     }
 
     public void removeRecipient(final RecipientId recipientId) {
@@ -1078,14 +1085,16 @@ public class SignalAccount implements Closeable {
                 records.size(),
                 serviceIdType,
                 preKeyMetadata.preKeyIdOffset);
+        var nextPreKeyId = preKeyMetadata.preKeyIdOffset;
         for (var record : records) {
-            if (preKeyMetadata.preKeyIdOffset != record.getId()) {
-                logger.error("Invalid pre key id {}, expected {}", record.getId(), preKeyMetadata.preKeyIdOffset);
+            if (nextPreKeyId != record.getId()) {
+                logger.error("Invalid pre key id {}, expected {}", record.getId(), nextPreKeyId);
                 throw new AssertionError("Invalid pre key id");
             }
-            accountData.getPreKeyStore().storePreKey(record.getId(), record);
-            preKeyMetadata.preKeyIdOffset = (preKeyMetadata.preKeyIdOffset + 1) % PREKEY_MAXIMUM_ID;
+            nextPreKeyId = (nextPreKeyId + 1) % PREKEY_MAXIMUM_ID;
         }
+        accountData.getPreKeyStore().storePreKeys(records);
+        preKeyMetadata.preKeyIdOffset = nextPreKeyId;
         save();
     }
 
@@ -1118,16 +1127,16 @@ public class SignalAccount implements Closeable {
                 records.size(),
                 serviceIdType,
                 preKeyMetadata.kyberPreKeyIdOffset);
+        var nextKyberPreKeyId = preKeyMetadata.kyberPreKeyIdOffset;
         for (var record : records) {
-            if (preKeyMetadata.kyberPreKeyIdOffset != record.getId()) {
-                logger.error("Invalid kyber pre key id {}, expected {}",
-                        record.getId(),
-                        preKeyMetadata.kyberPreKeyIdOffset);
+            if (nextKyberPreKeyId != record.getId()) {
+                logger.error("Invalid kyber pre key id {}, expected {}", record.getId(), nextKyberPreKeyId);
                 throw new AssertionError("Invalid kyber pre key id");
             }
-            accountData.getKyberPreKeyStore().storeKyberPreKey(record.getId(), record);
-            preKeyMetadata.kyberPreKeyIdOffset = (preKeyMetadata.kyberPreKeyIdOffset + 1) % PREKEY_MAXIMUM_ID;
+            nextKyberPreKeyId = (nextKyberPreKeyId + 1) % PREKEY_MAXIMUM_ID;
         }
+        accountData.getKyberPreKeyStore().storeKyberPreKeys(records);
+        preKeyMetadata.kyberPreKeyIdOffset = nextKyberPreKeyId;
         save();
     }
 
@@ -1243,6 +1252,21 @@ public class SignalAccount implements Closeable {
         return getRecipientStore();
     }
 
+    public OutboxStore getOutboxStore() {
+        return getOrCreate(() -> outboxStore,
+                () -> outboxStore = new OutboxStore(getAccountDatabase(), getRecipientIdCreator()));
+    }
+
+    public AttachmentUploadStore getAttachmentUploadStore() {
+        return getOrCreate(() -> attachmentUploadStore,
+                () -> attachmentUploadStore = new AttachmentUploadStore(getAccountDatabase()));
+    }
+
+    public GroupAuthCredentialStore getGroupAuthCredentialStore() {
+        return getOrCreate(() -> groupAuthCredentialStore,
+                () -> groupAuthCredentialStore = new GroupAuthCredentialStore(getAccountDatabase()));
+    }
+
     public StickerStore getStickerStore() {
         return getOrCreate(() -> stickerStore, () -> stickerStore = new StickerStore(getAccountDatabase()));
     }
@@ -1251,6 +1275,10 @@ public class SignalAccount implements Closeable {
         return getOrCreate(() -> senderKeyStore, () -> senderKeyStore = new SenderKeyStore(getAccountDatabase()));
     }
 
+    public Settings getSettings() {
+        return settings;
+    }
+
     public ConfigurationStore getConfigurationStore() {
         return configurationStore;
     }
@@ -1263,7 +1291,8 @@ public class SignalAccount implements Closeable {
     public AccountDatabase getAccountDatabase() {
         return getOrCreate(() -> accountDatabase, () -> {
             try {
-                accountDatabase = AccountDatabase.init(getDatabaseFile(dataPath, accountPath));
+                accountDatabase = AccountDatabase.init(getDatabaseFile(dataPath, accountPath),
+                        settings.slowQueryThreshold());
             } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
@@ -1698,6 +1727,9 @@ public class SignalAccount implements Closeable {
     @Override
     public void close() {
         synchronized (fileChannel) {
+            if (messageSendLogStore != null) {
+                messageSendLogStore.close();
+            }
             if (accountDatabase != null) {
                 try {
                     accountDatabase.close();
@@ -1705,9 +1737,6 @@ public class SignalAccount implements Closeable {
                     logger.warn("Failed to close account database: {}", e.getMessage(), e);
                 }
             }
-            if (messageSendLogStore != null) {
-                messageSendLogStore.close();
-            }
             try {
                 try {
                     lock.close();
@@ -17,9 +17,12 @@ import org.whispersystems.signalservice.api.push.ServiceIdType;
 import org.whispersystems.signalservice.api.util.UuidUtil;
 
 import java.io.InvalidObjectException;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.Spliterator;
 import java.util.Spliterators;
@@ -74,47 +77,120 @@ public class Utils {
     public static <T> T executeQuerySingleRow(
             PreparedStatement statement, ResultSetMapper<T> mapper
     ) throws SQLException {
-        final var resultSet = statement.executeQuery();
-        if (!resultSet.next()) {
-            throw new RuntimeException("Expected a row in result set, but none found.");
+        try (final var resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                throw new RuntimeException("Expected a row in result set, but none found.");
+            }
+            return mapper.apply(resultSet);
         }
-        return mapper.apply(resultSet);
     }
 
     public static <T> Optional<T> executeQueryForOptional(
             PreparedStatement statement, ResultSetMapper<T> mapper
     ) throws SQLException {
-        final var resultSet = statement.executeQuery();
-        if (!resultSet.next()) {
-            return Optional.empty();
+        try (final var resultSet = statement.executeQuery()) {
+            if (!resultSet.next()) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(mapper.apply(resultSet));
         }
-        return Optional.ofNullable(mapper.apply(resultSet));
     }
 
+    /**
+     * Execute the query and map the rows lazily.
+     * The result set is closed when the stream is exhausted or closed, so the stream should be used in a
+     * try-with-resources block, in case it isn't consumed completely.
+     */
     public static <T> Stream<T> executeQueryForStream(
             PreparedStatement statement, ResultSetMapper<T> mapper
     ) throws SQLException {
         final var resultSet = statement.executeQuery();
 
-        return StreamSupport.stream(new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED) {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            private boolean exhausted = false;
+
             @Override
             public boolean tryAdvance(final Consumer<? super T> consumer) {
+                if (exhausted) {
+                    return false;
+                }
                 try {
                     if (!resultSet.next()) {
+                        exhausted = true;
+                        closeResultSet(resultSet);
                         return false;
                     }
                     consumer.accept(mapper.apply(resultSet));
                     return true;
                 } catch (SQLException e) {
                     logger.warn("Failed to read from database result", e);
+                    exhausted = true;
+                    closeResultSet(resultSet);
                     throw new RuntimeException(e);
                 }
             }
-        }, false);
+        }, false).onClose(() -> closeResultSet(resultSet));
+    }
+
+    /**
+     * Read all rows of a query in pages, using keyset pagination on the _id column.
+     * No cursor is held open while a page is handled, so the handler may modify the table with the same connection.
+     * The query must select the _id column and end with "_id > ? ORDER BY _id LIMIT ?", the parameters for
+     * these last two placeholders are set by this method.
+     */
+    public static <T> void executeQueryInPages(
+            Connection connection,
+            String sql,
+            int pageSize,
+            StatementBinder binder,
+            ResultSetMapper<T> mapper,
+            PageHandler<T> handler
+    ) throws SQLException {
+        var lastId = Long.MIN_VALUE;
+        while (true) {
+            final var page = new ArrayList<T>(pageSize);
+            try (final var statement = connection.prepareStatement(sql)) {
+                binder.bind(statement);
+                final var parameterCount = statement.getParameterMetaData().getParameterCount();
+                statement.setLong(parameterCount - 1, lastId);
+                statement.setInt(parameterCount, pageSize);
+                statement.setFetchSize(pageSize);
+                try (final var resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        lastId = resultSet.getLong("_id");
+                        page.add(mapper.apply(resultSet));
+                    }
+                }
+            }
+            if (!page.isEmpty()) {
+                handler.handle(page);
+            }
+            if (page.size() < pageSize) {
+                return;
+            }
+        }
+    }
+
+    private static void closeResultSet(final ResultSet resultSet) {
+        try {
+            resultSet.close();
+        } catch (SQLException e) {
+            logger.debug("Failed to close database result", e);
+        }
     }
 
     public interface ResultSetMapper<T> {
 
         T apply(ResultSet resultSet) throws SQLException;
     }
+
+    public interface StatementBinder {
+
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    public interface PageHandler<T> {
+
+        void handle(List<T> page) throws SQLException;
+    }
 }
@@ -0,0 +1,126 @@
+package org.asamk.signal.manager.storage.attachmentUploads;
+
+import org.asamk.signal.manager.storage.Database;
+import org.asamk.signal.manager.storage.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.whispersystems.signalservice.api.InvalidMessageStructureException;
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachmentPointer;
+import org.whispersystems.signalservice.api.util.AttachmentPointerUtil;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Optional;
+
+/**
+ * Remembers the attachment pointers of uploaded attachments, so sending the same file again can reuse the upload.
+ */
+public class AttachmentUploadStore {
+
+    private final static Logger logger = LoggerFactory.getLogger(AttachmentUploadStore.class);
+    private static final String TABLE_ATTACHMENT_UPLOAD = "attachment_upload";
+
+    private final Database database;
+
+    public static void createSql(Connection connection) throws SQLException {
+        // When modifying the CREATE statement here, also add a migration in AccountDatabase.java
+        try (final var statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                                    CREATE TABLE attachment_upload (
+                                      _id INTEGER PRIMARY KEY,
+                                      content_hash BLOB NOT NULL,
+                                      content_type TEXT NOT NULL,
+                                      file_name TEXT NOT NULL,
+                                      size INTEGER NOT NULL,
+                                      pointer BLOB NOT NULL,
+                                      expiration_timestamp INTEGER NOT NULL,
+                                      UNIQUE(content_hash, content_type, file_name, size)
+                                    ) STRICT;
+                                    """);
+        }
+    }
+
+    public AttachmentUploadStore(final Database database) {
+        this.database = database;
+    }
+
+    public Optional<SignalServiceAttachmentPointer> getPointer(final Key key) {
+        final var sql = (
+                """
+                SELECT a.pointer
+                FROM %s a
+                WHERE a.content_hash = ? AND a.content_type = ? AND a.file_name = ? AND a.size = ?
+                  AND a.expiration_timestamp > ?
+                """
+        ).formatted(TABLE_ATTACHMENT_UPLOAD);
+        try (final var connection = database.getConnection()) {
+            try (final var statement = connection.prepareStatement(sql)) {
+                statement.setBytes(1, key.contentHash());
+                statement.setString(2, key.contentType());
+                statement.setString(3, key.fileName().orElse(""));
+                statement.setLong(4, key.size());
+                statement.setLong(5, System.currentTimeMillis());
+                return Utils.executeQueryForOptional(statement, resultSet -> {
+                    final var pointer = resultSet.getBytes("pointer");
+                    try {
+                        return AttachmentPointerUtil.createSignalAttachmentPointer(pointer);
+                    } catch (InvalidMessageStructureException | IOException e) {
+                        logger.debug("Ignoring invalid stored attachment pointer: {}", e.getMessage());
+                        return null;
+                    }
+                });
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed read from attachment upload store", e);
+        }
+    }
+
+    public void storePointer(
+            final Key key, final SignalServiceAttachmentPointer pointer, final long expirationTimestamp
+    ) {
+        final var sql = (
+                """
+                INSERT OR REPLACE INTO %s (content_hash, content_type, file_name, size, pointer, expiration_timestamp)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """
+        ).formatted(TABLE_ATTACHMENT_UPLOAD);
+        try (final var connection = database.getConnection()) {
+            connection.setAutoCommit(false);
+            deleteExpired(connection);
+            try (final var statement = connection.prepareStatement(sql)) {
+                statement.setBytes(1, key.contentHash());
+                statement.setString(2, key.contentType());
+                statement.setString(3, key.fileName().orElse(""));
+                statement.setLong(4, key.size());
+                statement.setBytes(5, AttachmentPointerUtil.createAttachmentPointer(pointer).toByteArray());
+                statement.setLong(6, expirationTimestamp);
+                statement.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed update attachment upload store", e);
+        }
+    }
+
+    private void deleteExpired(final Connection connection) throws SQLException {
+        final var sql = (
+                """
+                DELETE FROM %s
+                WHERE expiration_timestamp <= ?
+                """
+        ).formatted(TABLE_ATTACHMENT_UPLOAD);
+        try (final var statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, System.currentTimeMillis());
+            final var deletedRows = statement.executeUpdate();
+            if (deletedRows > 0) {
+                logger.trace("Deleted {} expired attachment uploads", deletedRows);
+            }
+        }
+    }
+
+    /**
+     * Identifies an attachment by the SHA-256 hash of its content and the metadata stored in the pointer.
+     */
+    public record Key(byte[] contentHash, String contentType, Optional<String> fileName, long size) {}
+}
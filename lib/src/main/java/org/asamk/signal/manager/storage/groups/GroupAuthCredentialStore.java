@@ -0,0 +1,125 @@
+package org.asamk.signal.manager.storage.groups;
+
+import org.asamk.signal.manager.storage.Database;
+import org.asamk.signal.manager.storage.Utils;
+import org.signal.libsignal.zkgroup.InvalidInputException;
+import org.signal.libsignal.zkgroup.auth.AuthCredentialWithPniResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Stores the group api auth credentials, which the server issues for the next seven days.
+ */
+public class GroupAuthCredentialStore {
+
+    private final static Logger logger = LoggerFactory.getLogger(GroupAuthCredentialStore.class);
+    private static final String TABLE_GROUP_AUTH_CREDENTIAL = "group_auth_credential";
+
+    private final Database database;
+
+    public static void createSql(Connection connection) throws SQLException {
+        // When modifying the CREATE statement here, also add a migration in AccountDatabase.java
+        try (final var statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                                    CREATE TABLE group_auth_credential (
+                                      redemption_time INTEGER PRIMARY KEY,
+                                      credential BLOB NOT NULL
+                                    ) STRICT;
+                                    """);
+        }
+    }
+
+    public GroupAuthCredentialStore(final Database database) {
+        this.database = database;
+    }
+
+    /**
+     * Get the stored credentials, that can still be redeemed at or after the given time.
+     *
+     * @param redemptionTime day in seconds since epoch
+     */
+    public Map<Long, AuthCredentialWithPniResponse> getCredentials(final long redemptionTime) {
+        final var sql = (
+                """
+                SELECT g.redemption_time, g.credential
+                FROM %s g
+                WHERE g.redemption_time >= ?
+                """
+        ).formatted(TABLE_GROUP_AUTH_CREDENTIAL);
+        try (final var connection = database.getConnection()) {
+            try (final var statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, redemptionTime);
+                try (var result = Utils.executeQueryForStream(statement, this::getCredentialFromResultSet)) {
+                    return result.filter(Objects::nonNull)
+                            .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, Map.Entry::getValue));
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed read from group auth credential store", e);
+        }
+    }
+
+    /**
+     * Replace all stored credentials with the given ones.
+     */
+    public void storeCredentials(final Map<Long, AuthCredentialWithPniResponse> credentials) {
+        final var sql = (
+                """
+                INSERT INTO %s (redemption_time, credential)
+                VALUES (?, ?)
+                """
+        ).formatted(TABLE_GROUP_AUTH_CREDENTIAL);
+        try (final var connection = database.getConnection()) {
+            connection.setAutoCommit(false);
+            deleteCredentials(connection);
+            try (final var statement = connection.prepareStatement(sql)) {
+                for (final var entry : credentials.entrySet()) {
+                    statement.setLong(1, entry.getKey());
+                    statement.setBytes(2, entry.getValue().serialize());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed update group auth credential store", e);
+        }
+    }
+
+    public void deleteCredentials() {
+        try (final var connection = database.getConnection()) {
+            deleteCredentials(connection);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed update group auth credential store", e);
+        }
+    }
+
+    private void deleteCredentials(final Connection connection) throws SQLException {
+        final var sql = (
+                """
+                DELETE FROM %s
+                """
+        ).formatted(TABLE_GROUP_AUTH_CREDENTIAL);
+        try (final var statement = connection.prepareStatement(sql)) {
+            statement.executeUpdate();
+        }
+    }
+
+    private Map.Entry<Long, AuthCredentialWithPniResponse> getCredentialFromResultSet(ResultSet resultSet) throws SQLException {
+        final var redemptionTime = resultSet.getLong("redemption_time");
+        final var serialized = resultSet.getBytes("credential");
+        try {
+            return Map.entry(redemptionTime, new AuthCredentialWithPniResponse(serialized));
+        } catch (InvalidInputException e) {
+            logger.debug("Ignoring invalid stored group auth credential: {}", e.getMessage());
+            return null;
+        }
+    }
+}
@@ -316,9 +316,9 @@ public class GroupStore {
         ).formatted(TABLE_GROUP_V2);
         try (final var connection = database.getConnection()) {
             try (final var statement = connection.prepareStatement(sql)) {
-                return Utils.executeQueryForStream(statement, this::getGroupInfoV2FromResultSet)
-                        .filter(Objects::nonNull)
-                        .toList();
+                try (var result = Utils.executeQueryForStream(statement, this::getGroupInfoV2FromResultSet)) {
+                    return result.filter(Objects::nonNull).toList();
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from group store", e);
@@ -368,9 +368,9 @@ public class GroupStore {
         ).formatted(TABLE_GROUP_V1_MEMBER, TABLE_GROUP_V1);
         try (final var connection = database.getConnection()) {
             try (final var statement = connection.prepareStatement(sql)) {
-                return Utils.executeQueryForStream(statement, this::getGroupInfoV1FromResultSet)
-                        .filter(Objects::nonNull)
-                        .toList();
+                try (var result = Utils.executeQueryForStream(statement, this::getGroupInfoV1FromResultSet)) {
+                    return result.filter(Objects::nonNull).toList();
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from group store", e);
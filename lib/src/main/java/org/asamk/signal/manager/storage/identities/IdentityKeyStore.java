@@ -20,6 +20,7 @@ import java.util.Objects;
 
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.Subject;
 
 public class IdentityKeyStore {
 
@@ -28,6 +29,7 @@ public class IdentityKeyStore {
     private final Database database;
     private final TrustNewIdentity trustNewIdentity;
     private final PublishSubject<ServiceId> identityChanges = PublishSubject.create();
+    private final Subject<ServiceId> trustLevelChanges = PublishSubject.<ServiceId>create().toSerialized();
 
     private boolean isRetryingDecryption = false;
 
@@ -55,6 +57,13 @@ public class IdentityKeyStore {
         return identityChanges;
     }
 
+    /**
+     * Emits the service id of identities whose trust level changed or that were deleted.
+     */
+    public Observable<ServiceId> getTrustLevelChanges() {
+        return trustLevelChanges;
+    }
+
     public boolean saveIdentity(final ServiceId serviceId, final IdentityKey identityKey) {
         if (isRetryingDecryption) {
             return false;
@@ -100,6 +109,7 @@ public class IdentityKeyStore {
                     trustLevel,
                     identityInfo.getDateAddedTimestamp());
             storeIdentity(connection, newIdentityInfo);
+            trustLevelChanges.onNext(serviceId);
             return true;
         } catch (SQLException e) {
             throw new RuntimeException("Failed update identity store", e);
@@ -155,9 +165,9 @@ public class IdentityKeyStore {
                     """
             ).formatted(TABLE_IDENTITY);
             try (final var statement = connection.prepareStatement(sql)) {
-                return Utils.executeQueryForStream(statement, this::getIdentityInfoFromResultSet)
-                        .filter(Objects::nonNull)
-                        .toList();
+                try (var result = Utils.executeQueryForStream(statement, this::getIdentityInfoFromResultSet)) {
+                    return result.filter(Objects::nonNull).toList();
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from identity store", e);
@@ -167,6 +177,7 @@ public class IdentityKeyStore {
     public void deleteIdentity(final ServiceId serviceId) {
         try (final var connection = database.getConnection()) {
             deleteIdentity(connection, serviceId);
+            trustLevelChanges.onNext(serviceId);
         } catch (SQLException e) {
             throw new RuntimeException("Failed update identity store", e);
         }
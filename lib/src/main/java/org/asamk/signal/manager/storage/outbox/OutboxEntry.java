@@ -0,0 +1,5 @@
+package org.asamk.signal.manager.storage.outbox;
+
+import org.asamk.signal.manager.storage.recipients.RecipientId;
+
+public record OutboxEntry(long id, RecipientId recipientId, long timestamp, OutboxMessage message, int attempts) {}
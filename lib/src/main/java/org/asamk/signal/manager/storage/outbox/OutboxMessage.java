@@ -0,0 +1,108 @@
+package org.asamk.signal.manager.storage.outbox;
+
+import org.asamk.signal.manager.api.InvalidNumberException;
+import org.asamk.signal.manager.api.Message;
+import org.asamk.signal.manager.api.RecipientIdentifier;
+import org.asamk.signal.manager.api.TextStyle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Storage representation of a {@link Message} waiting in the outbox.
+ */
+public record OutboxMessage(
+        String messageText,
+        List<String> attachments,
+        List<Mention> mentions,
+        Quote quote,
+        Sticker sticker,
+        List<Preview> previews,
+        StoryReply storyReply,
+        List<Style> textStyles
+) {
+
+    public static OutboxMessage from(Message message) {
+        return new OutboxMessage(message.messageText(),
+                message.attachments(),
+                message.mentions().stream().map(Mention::from).toList(),
+                message.quote()
+                        .map(q -> new Quote(q.timestamp(),
+                                q.author().getIdentifier(),
+                                q.message(),
+                                q.mentions().stream().map(Mention::from).toList(),
+                                q.textStyles().stream().map(Style::from).toList()))
+                        .orElse(null),
+                message.sticker().map(s -> new Sticker(s.packId(), s.stickerId())).orElse(null),
+                message.previews()
+                        .stream()
+                        .map(p -> new Preview(p.url(), p.title(), p.description(), p.image().orElse(null)))
+                        .toList(),
+                message.storyReply().map(r -> new StoryReply(r.timestamp(), r.author().getIdentifier())).orElse(null),
+                message.textStyles().stream().map(Style::from).toList());
+    }
+
+    public Message toMessage(String localNumber) throws InvalidNumberException {
+        return new Message(messageText,
+                attachments,
+                toMentions(mentions, localNumber),
+                quote == null
+                        ? Optional.empty()
+                        : Optional.of(new Message.Quote(quote.timestamp(),
+                                RecipientIdentifier.Single.fromString(quote.author(), localNumber),
+                                quote.message(),
+                                toMentions(quote.mentions(), localNumber),
+                                quote.textStyles().stream().map(Style::toTextStyle).toList())),
+                Optional.ofNullable(sticker).map(s -> new Message.Sticker(s.packId(), s.stickerId())),
+                previews.stream()
+                        .map(p -> new Message.Preview(p.url(),
+                                p.title(),
+                                p.description(),
+                                Optional.ofNullable(p.image())))
+                        .toList(),
+                storyReply == null
+                        ? Optional.empty()
+                        : Optional.of(new Message.StoryReply(storyReply.timestamp(),
+                                RecipientIdentifier.Single.fromString(storyReply.author(), localNumber))),
+                textStyles.stream().map(Style::toTextStyle).toList());
+    }
+
+    private static List<Message.Mention> toMentions(
+            List<Mention> mentions, String localNumber
+    ) throws InvalidNumberException {
+        final var result = new ArrayList<Message.Mention>(mentions.size());
+        for (final var mention : mentions) {
+            result.add(new Message.Mention(RecipientIdentifier.Single.fromString(mention.recipient(), localNumber),
+                    mention.start(),
+                    mention.length()));
+        }
+        return result;
+    }
+
+    public record Mention(String recipient, int start, int length) {
+
+        static Mention from(Message.Mention mention) {
+            return new Mention(mention.recipient().getIdentifier(), mention.start(), mention.length());
+        }
+    }
+
+    public record Quote(long timestamp, String author, String message, List<Mention> mentions, List<Style> textStyles) {}
+
+    public record Sticker(byte[] packId, int stickerId) {}
+
+    public record Preview(String url, String title, String description, String image) {}
+
+    public record StoryReply(long timestamp, String author) {}
+
+    public record Style(String style, int start, int length) {
+
+        static Style from(TextStyle textStyle) {
+            return new Style(textStyle.style().name(), textStyle.start(), textStyle.length());
+        }
+
+        TextStyle toTextStyle() {
+            return new TextStyle(TextStyle.Style.from(style), start, length);
+        }
+    }
+}
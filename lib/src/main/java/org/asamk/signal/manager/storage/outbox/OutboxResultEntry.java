@@ -0,0 +1,24 @@
+package org.asamk.signal.manager.storage.outbox;
+
+import org.asamk.signal.manager.storage.recipients.RecipientId;
+
+/**
+ * Final result of an outbox entry, kept so it can be queried after the entry has been removed from the outbox.
+ *
+ * @param type the result of the last send attempt, null if the message couldn't be prepared for sending
+ */
+public record OutboxResultEntry(RecipientId recipientId, long timestamp, int attempts, Type type, String error) {
+
+    public boolean isSuccess() {
+        return type == Type.SUCCESS;
+    }
+
+    public enum Type {
+        SUCCESS,
+        NETWORK_FAILURE,
+        UNREGISTERED_FAILURE,
+        IDENTITY_FAILURE,
+        RATE_LIMIT_FAILURE,
+        INVALID_PRE_KEY_FAILURE,
+    }
+}
@@ -0,0 +1,311 @@
+package org.asamk.signal.manager.storage.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.asamk.signal.manager.storage.Database;
+import org.asamk.signal.manager.storage.Utils;
+import org.asamk.signal.manager.storage.recipients.RecipientId;
+import org.asamk.signal.manager.storage.recipients.RecipientIdCreator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Durable queue of messages to individual recipients that still need to be sent.
+ * Entries for the same recipient are sent in insertion order, only the oldest entry of each recipient is due.
+ */
+public class OutboxStore {
+
+    private final static Logger logger = LoggerFactory.getLogger(OutboxStore.class);
+    private static final String TABLE_OUTBOX = "outbox";
+    private static final String TABLE_OUTBOX_RESULT = "outbox_result";
+
+    private final ObjectMapper objectMapper = Utils.createStorageObjectMapper();
+    private final Database database;
+    private final RecipientIdCreator recipientIdCreator;
+
+    public static void createSql(Connection connection) throws SQLException {
+        // When modifying the CREATE statement here, also add a migration in AccountDatabase.java
+        try (final var statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                                    CREATE TABLE outbox (
+                                      _id INTEGER PRIMARY KEY,
+                                      recipient_id INTEGER NOT NULL REFERENCES recipient (_id) ON DELETE CASCADE,
+                                      timestamp INTEGER NOT NULL,
+                                      message TEXT NOT NULL,
+                                      attempts INTEGER NOT NULL DEFAULT 0,
+                                      next_attempt INTEGER NOT NULL
+                                    ) STRICT;
+                                    CREATE INDEX outbox_recipient_id ON outbox (recipient_id, _id);
+                                    CREATE TABLE outbox_result (
+                                      _id INTEGER PRIMARY KEY,
+                                      recipient_id INTEGER NOT NULL REFERENCES recipient (_id) ON DELETE CASCADE,
+                                      timestamp INTEGER NOT NULL,
+                                      attempts INTEGER NOT NULL,
+                                      type TEXT,
+                                      error TEXT,
+                                      finished INTEGER NOT NULL
+                                    ) STRICT;
+                                    CREATE INDEX outbox_result_timestamp ON outbox_result (timestamp);
+                                    """);
+        }
+    }
+
+    public OutboxStore(final Database database, final RecipientIdCreator recipientIdCreator) {
+        this.database = database;
+        this.recipientIdCreator = recipientIdCreator;
+    }
+
+    public void addMessage(final Collection<RecipientId> recipientIds, final long timestamp, OutboxMessage message) {
+        final var sql = (
+                """
+                INSERT INTO %s (recipient_id, timestamp, message, next_attempt)
+                VALUES (?, ?, ?, ?)
+                """
+        ).formatted(TABLE_OUTBOX);
+        final String serializedMessage;
+        try {
+            serializedMessage = objectMapper.writeValueAsString(message);
+        } catch (JsonProcessingException e) {
+            throw new AssertionError(e);
+        }
+        try (final var connection = database.getConnection()) {
+            connection.setAutoCommit(false);
+            try (final var statement = connection.prepareStatement(sql)) {
+                final var now = System.currentTimeMillis();
+                for (final var recipientId : recipientIds) {
+                    statement.setLong(1, recipientId.id());
+                    statement.setLong(2, timestamp);
+                    statement.setString(3, serializedMessage);
+                    statement.setLong(4, now);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed update outbox store", e);
+        }
+    }
+
+    /**
+     * Get the oldest entry of each recipient, if it is due at the given time.
+     */
+    public List<OutboxEntry> getDueEntries(final long now, final int limit) {
+        final var sql = (
+                """
+                SELECT o._id, o.recipient_id, o.timestamp, o.message, o.attempts
+                FROM %s o
+                WHERE o._id = (SELECT MIN(o2._id) FROM %s o2 WHERE o2.recipient_id = o.recipient_id)
+                  AND o.next_attempt <= ?
+                ORDER BY o.next_attempt, o._id
+                LIMIT ?
+                """
+        ).formatted(TABLE_OUTBOX, TABLE_OUTBOX);
+        try (final var connection = database.getConnection()) {
+            try (final var statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, now);
+                statement.setInt(2, limit);
+                final List<OutboxEntry> entries;
+                try (var result = Utils.executeQueryForStream(statement, this::getOutboxEntryFromResultSet)) {
+                    entries = result.toList();
+                }
+                for (final var entry : entries) {
+                    if (entry.message() == null) {
+                        deleteEntry(entry.id());
+                    }
+                }
+                return entries.stream().filter(e -> e.message() != null).toList();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed read from outbox store", e);
+        }
+    }
+
+    /**
+     * Get the time at which the next entry becomes due.
+     */
+    public Optional<Long> getNextAttemptTimestamp() {
+        final var sql = (
+                """
+                SELECT MIN(o.next_attempt)
+                FROM %s o
+                WHERE o._id = (SELECT MIN(o2._id) FROM %s o2 WHERE o2.recipient_id = o.recipient_id)
+                """
+        ).formatted(TABLE_OUTBOX, TABLE_OUTBOX);
+        try (final var connection = database.getConnection()) {
+            try (final var statement = connection.prepareStatement(sql)) {
+                return Utils.executeQueryForOptional(statement, resultSet -> {
+                    final var nextAttempt = resultSet.getLong(1);
+                    return resultSet.wasNull() ? null : nextAttempt;
+                });
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed read from outbox store", e);
+        }
+    }
+
+    public void rescheduleEntry(final long id, final int attempts, final long nextAttempt) {
+        final var sql = (
+                """
+                UPDATE %s
+                SET attempts = ?, next_attempt = ?
+                WHERE _id = ?
+                """
+        ).formatted(TABLE_OUTBOX);
+        try (final var connection = database.getConnection()) {
+            try (final var statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, attempts);
+                statement.setLong(2, nextAttempt);
+                statement.setLong(3, id);
+                statement.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed update outbox store", e);
+        }
+    }
+
+    /**
+     * Remove the entry from the outbox and store its final result.
+     * Results that finished before the given expiration time are deleted.
+     */
+    public void finishEntry(final long id, final OutboxResultEntry result, final long expirationTimestamp) {
+        final var sql = (
+                """
+                INSERT INTO %s (recipient_id, timestamp, attempts, type, error, finished)
+                VALUES (?, ?, ?, ?, ?, ?)
+                """
+        ).formatted(TABLE_OUTBOX_RESULT);
+        final var deleteSql = (
+                """
+                DELETE FROM %s
+                WHERE finished < ?
+                """
+        ).formatted(TABLE_OUTBOX_RESULT);
+        try (final var connection = database.getConnection()) {
+            connection.setAutoCommit(false);
+            deleteEntry(connection, id);
+            try (final var statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, result.recipientId().id());
+                statement.setLong(2, result.timestamp());
+                statement.setInt(3, result.attempts());
+                statement.setString(4, result.type() == null ? null : result.type().name());
+                statement.setString(5, result.error());
+                statement.setLong(6, System.currentTimeMillis());
+                statement.executeUpdate();
+            }
+            try (final var statement = connection.prepareStatement(deleteSql)) {
+                statement.setLong(1, expirationTimestamp);
+                statement.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed update outbox store", e);
+        }
+    }
+
+    /**
+     * Get the final results of the message with the given timestamp, for the recipients it has been finished for.
+     */
+    public List<OutboxResultEntry> getResults(final long timestamp) {
+        final var sql = (
+                """
+                SELECT r.recipient_id, r.timestamp, r.attempts, r.type, r.error
+                FROM %s r
+                WHERE r.timestamp = ?
+                ORDER BY r._id
+                """
+        ).formatted(TABLE_OUTBOX_RESULT);
+        try (final var connection = database.getConnection()) {
+            try (final var statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, timestamp);
+                try (var result = Utils.executeQueryForStream(statement, this::getOutboxResultEntryFromResultSet)) {
+                    return result.toList();
+                }
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed read from outbox store", e);
+        }
+    }
+
+    public void deleteEntry(final long id) {
+        try (final var connection = database.getConnection()) {
+            deleteEntry(connection, id);
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed update outbox store", e);
+        }
+    }
+
+    private void deleteEntry(final Connection connection, final long id) throws SQLException {
+        final var sql = (
+                """
+                DELETE FROM %s
+                WHERE _id = ?
+                """
+        ).formatted(TABLE_OUTBOX);
+        try (final var statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, id);
+            statement.executeUpdate();
+        }
+    }
+
+    public void mergeRecipients(
+            final Connection connection, final RecipientId recipientId, final RecipientId toBeMergedRecipientId
+    ) throws SQLException {
+        for (final var table : List.of(TABLE_OUTBOX, TABLE_OUTBOX_RESULT)) {
+            final var sql = (
+                    """
+                    UPDATE %s
+                    SET recipient_id = ?
+                    WHERE recipient_id = ?
+                    """
+            ).formatted(table);
+            try (final var statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, recipientId.id());
+                statement.setLong(2, toBeMergedRecipientId.id());
+                final var updatedRows = statement.executeUpdate();
+                if (updatedRows > 0) {
+                    logger.info("Updated {} {} entries when merging recipients", updatedRows, table);
+                }
+            }
+        }
+    }
+
+    private OutboxEntry getOutboxEntryFromResultSet(ResultSet resultSet) throws SQLException {
+        final var id = resultSet.getLong("_id");
+        OutboxMessage message;
+        try {
+            message = objectMapper.readValue(resultSet.getString("message"), OutboxMessage.class);
+        } catch (JsonProcessingException e) {
+            logger.warn("Failed to parse outbox entry {}, dropping it: {}", id, e.getMessage());
+            message = null;
+        }
+        return new OutboxEntry(id,
+                recipientIdCreator.create(resultSet.getLong("recipient_id")),
+                resultSet.getLong("timestamp"),
+                message,
+                resultSet.getInt("attempts"));
+    }
+
+    private OutboxResultEntry getOutboxResultEntryFromResultSet(ResultSet resultSet) throws SQLException {
+        final var typeName = resultSet.getString("type");
+        OutboxResultEntry.Type type;
+        try {
+            type = typeName == null ? null : OutboxResultEntry.Type.valueOf(typeName);
+        } catch (IllegalArgumentException e) {
+            type = null;
+        }
+        return new OutboxResultEntry(recipientIdCreator.create(resultSet.getLong("recipient_id")),
+                resultSet.getLong("timestamp"),
+                resultSet.getInt("attempts"),
+                type,
+                resultSet.getString("error"));
+    }
+}
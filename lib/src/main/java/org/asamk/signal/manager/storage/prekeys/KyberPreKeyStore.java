@@ -13,6 +13,7 @@ import org.whispersystems.signalservice.api.push.ServiceIdType;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.List;
 
 public class KyberPreKeyStore implements SignalServiceKyberPreKeyStore {
@@ -65,7 +66,9 @@ public class KyberPreKeyStore implements SignalServiceKyberPreKeyStore {
         try (final var connection = database.getConnection()) {
             try (final var statement = connection.prepareStatement(sql)) {
                 statement.setInt(1, accountIdType);
-                return Utils.executeQueryForStream(statement, this::getKyberPreKeyRecordFromResultSet).toList();
+                try (var result = Utils.executeQueryForStream(statement, this::getKyberPreKeyRecordFromResultSet)) {
+                    return result.toList();
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from kyber_pre_key store", e);
@@ -84,7 +87,9 @@ public class KyberPreKeyStore implements SignalServiceKyberPreKeyStore {
         try (final var connection = database.getConnection()) {
             try (final var statement = connection.prepareStatement(sql)) {
                 statement.setInt(1, accountIdType);
-                return Utils.executeQueryForStream(statement, this::getKyberPreKeyRecordFromResultSet).toList();
+                try (var result = Utils.executeQueryForStream(statement, this::getKyberPreKeyRecordFromResultSet)) {
+                    return result.toList();
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from kyber_pre_key store", e);
@@ -121,6 +126,30 @@ public class KyberPreKeyStore implements SignalServiceKyberPreKeyStore {
         }
     }
 
+    public void storeKyberPreKeys(final Collection<KyberPreKeyRecord> records) {
+        final var sql = (
+                """
+                INSERT INTO %s (account_id_type, key_id, serialized, is_last_resort)
+                VALUES (?, ?, ?, FALSE)
+                """
+        ).formatted(TABLE_KYBER_PRE_KEY);
+        try (final var connection = database.getConnection()) {
+            connection.setAutoCommit(false);
+            try (final var statement = connection.prepareStatement(sql)) {
+                for (final var record : records) {
+                    statement.setInt(1, accountIdType);
+                    statement.setInt(2, record.getId());
+                    statement.setBytes(3, record.serialize());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed update kyber_pre_key store", e);
+        }
+    }
+
     @Override
     public boolean containsKyberPreKey(final int keyId) {
         return getPreKey(keyId) != null;
@@ -77,6 +77,38 @@ public class PreKeyStore implements org.signal.libsignal.protocol.state.PreKeySt
         }
     }
 
+    public void storePreKeys(final Collection<PreKeyRecord> records) {
+        final var sql = (
+                """
+                INSERT INTO %s (account_id_type, key_id, public_key, private_key)
+                VALUES (?, ?, ?, ?)
+                """
+        ).formatted(TABLE_PRE_KEY);
+        try (final var connection = database.getConnection()) {
+            connection.setAutoCommit(false);
+            try (final var statement = connection.prepareStatement(sql)) {
+                for (final var record : records) {
+                    final ECKeyPair keyPair;
+                    try {
+                        keyPair = record.getKeyPair();
+                    } catch (InvalidKeyException e) {
+                        logger.warn("Failed to store invalid pre key {}, ignoring: {}", record.getId(), e.getMessage());
+                        continue;
+                    }
+                    statement.setInt(1, accountIdType);
+                    statement.setInt(2, record.getId());
+                    statement.setBytes(3, keyPair.getPublicKey().serialize());
+                    statement.setBytes(4, keyPair.getPrivateKey().serialize());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed update pre_key store", e);
+        }
+    }
+
     @Override
     public boolean containsPreKey(int preKeyId) {
         return getPreKey(preKeyId) != null;
@@ -70,9 +70,9 @@ public class SignedPreKeyStore implements org.signal.libsignal.protocol.state.Si
         try (final var connection = database.getConnection()) {
             try (final var statement = connection.prepareStatement(sql)) {
                 statement.setInt(1, accountIdType);
-                return Utils.executeQueryForStream(statement, this::getSignedPreKeyRecordFromResultSet)
-                        .filter(Objects::nonNull)
-                        .toList();
+                try (var result = Utils.executeQueryForStream(statement, this::getSignedPreKeyRecordFromResultSet)) {
+                    return result.filter(Objects::nonNull).toList();
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from signed_pre_key store", e);
@@ -5,8 +5,15 @@ import org.asamk.signal.manager.storage.recipients.RecipientId;
 import org.signal.libsignal.zkgroup.profiles.ExpiringProfileKeyCredential;
 import org.signal.libsignal.zkgroup.profiles.ProfileKey;
 
+import io.reactivex.rxjava3.core.Observable;
+
 public interface ProfileStore {
 
+    /**
+     * Emits the recipient id whenever a profile or profile key is stored.
+     */
+    Observable<RecipientId> getProfileChanges();
+
     Profile getProfile(RecipientId recipientId);
 
     ProfileKey getProfileKey(RecipientId recipientId);
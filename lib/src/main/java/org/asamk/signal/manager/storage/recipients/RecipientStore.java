@@ -34,6 +34,10 @@ import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.subjects.PublishSubject;
+import io.reactivex.rxjava3.subjects.Subject;
+
 public class RecipientStore implements RecipientIdCreator, RecipientResolver, RecipientTrustedResolver, ContactsStore, ProfileStore {
 
     private final static Logger logger = LoggerFactory.getLogger(RecipientStore.class);
@@ -46,6 +50,7 @@ public class RecipientStore implements RecipientIdCreator, RecipientResolver, Re
 
     private final Object recipientsLock = new Object();
     private final Map<Long, Long> recipientsMerged = new HashMap<>();
+    private final Subject<RecipientId> profileChanges = PublishSubject.<RecipientId>create().toSerialized();
 
     public static void createSql(Connection connection) throws SQLException {
         // When modifying the CREATE statement here, also add a migration in AccountDatabase.java
@@ -392,11 +397,13 @@ public class RecipientStore implements RecipientIdCreator, RecipientResolver, Re
         ).formatted(TABLE_RECIPIENT);
         try (final var connection = database.getConnection()) {
             try (final var statement = connection.prepareStatement(sql)) {
-                return Utils.executeQueryForStream(statement, resultSet -> {
+                try (var result = Utils.executeQueryForStream(statement, resultSet -> {
                     final var serviceId = ServiceId.parseOrThrow(resultSet.getBytes("uuid"));
                     final var profileKey = getProfileKeyFromResultSet(resultSet);
                     return new Pair<>(serviceId, profileKey);
-                }).filter(Objects::nonNull).collect(Collectors.toMap(Pair::first, Pair::second));
+                })) {
+                    return result.filter(Objects::nonNull).collect(Collectors.toMap(Pair::first, Pair::second));
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from recipient store", e);
@@ -450,10 +457,19 @@ public class RecipientStore implements RecipientIdCreator, RecipientResolver, Re
         }
     }
 
+    @Override
+    public Observable<RecipientId> getProfileChanges() {
+        return profileChanges;
+    }
+
     @Override
     public void storeProfile(RecipientId recipientId, final Profile profile) {
         try (final var connection = database.getConnection()) {
+            final var previousProfile = getProfile(connection, recipientId);
             storeProfile(connection, recipientId, profile);
+            if (isProfileChanged(previousProfile, profile)) {
+                profileChanges.onNext(recipientId);
+            }
         } catch (SQLException e) {
             throw new RuntimeException("Failed update recipient store", e);
         }
@@ -462,7 +478,9 @@ public class RecipientStore implements RecipientIdCreator, RecipientResolver, Re
     @Override
     public void storeSelfProfileKey(final RecipientId recipientId, final ProfileKey profileKey) {
         try (final var connection = database.getConnection()) {
-            storeProfileKey(connection, recipientId, profileKey, false);
+            if (storeProfileKey(connection, recipientId, profileKey, false)) {
+                profileChanges.onNext(recipientId);
+            }
         } catch (SQLException e) {
             throw new RuntimeException("Failed update recipient store", e);
         }
@@ -471,7 +489,9 @@ public class RecipientStore implements RecipientIdCreator, RecipientResolver, Re
     @Override
     public void storeProfileKey(RecipientId recipientId, final ProfileKey profileKey) {
         try (final var connection = database.getConnection()) {
-            storeProfileKey(connection, recipientId, profileKey, true);
+            if (storeProfileKey(connection, recipientId, profileKey, true)) {
+                profileChanges.onNext(recipientId);
+            }
         } catch (SQLException e) {
             throw new RuntimeException("Failed update recipient store", e);
         }
@@ -619,11 +639,14 @@ public class RecipientStore implements RecipientIdCreator, RecipientResolver, Re
         }
     }
 
-    private void storeProfileKey(
+    /**
+     * @return true if the stored profile key has changed
+     */
+    private boolean storeProfileKey(
             Connection connection, RecipientId recipientId, final ProfileKey profileKey, boolean resetProfile
     ) throws SQLException {
+        final var recipientProfileKey = getProfileKey(recipientId);
         if (profileKey != null) {
-            final var recipientProfileKey = getProfileKey(recipientId);
             if (profileKey.equals(recipientProfileKey)) {
                 final var recipientProfile = getProfile(recipientId);
                 if (recipientProfile == null || (
@@ -631,7 +654,7 @@ public class RecipientStore implements RecipientIdCreator, RecipientResolver, Re
                                 && recipientProfile.getUnidentifiedAccessMode()
                                 != Profile.UnidentifiedAccessMode.DISABLED
                 )) {
-                    return;
+                    return false;
                 }
             }
         }
@@ -648,6 +671,24 @@ public class RecipientStore implements RecipientIdCreator, RecipientResolver, Re
             statement.setLong(2, recipientId.id());
             statement.executeUpdate();
         }
+        return !Objects.equals(profileKey, recipientProfileKey);
+    }
+
+    /**
+     * Compares the profile values, ignoring the time they were retrieved at.
+     */
+    private static boolean isProfileChanged(final Profile previousProfile, final Profile profile) {
+        if (previousProfile == null || profile == null) {
+            return previousProfile != profile;
+        }
+        return !Objects.equals(previousProfile.getGivenName(), profile.getGivenName())
+                || !Objects.equals(previousProfile.getFamilyName(), profile.getFamilyName())
+                || !Objects.equals(previousProfile.getAbout(), profile.getAbout())
+                || !Objects.equals(previousProfile.getAboutEmoji(), profile.getAboutEmoji())
+                || !Objects.equals(previousProfile.getAvatarUrlPath(), profile.getAvatarUrlPath())
+                || !Arrays.equals(previousProfile.getMobileCoinAddress(), profile.getMobileCoinAddress())
+                || previousProfile.getUnidentifiedAccessMode() != profile.getUnidentifiedAccessMode()
+                || !Objects.equals(previousProfile.getCapabilities(), profile.getCapabilities());
     }
 
     private RecipientId resolveRecipientTrusted(RecipientAddress address, boolean isSelf) {
@@ -907,8 +948,9 @@ public class RecipientStore implements RecipientIdCreator, RecipientResolver, Re
             statement.setBytes(2, address.pni().map(ServiceId::uuid).map(UuidUtil::toByteArray).orElse(null));
             statement.setString(3, address.number().orElse(null));
             statement.setString(4, address.username().orElse(null));
-            return Utils.executeQueryForStream(statement, this::getRecipientWithAddressFromResultSet)
-                    .collect(Collectors.toSet());
+            try (var result = Utils.executeQueryForStream(statement, this::getRecipientWithAddressFromResultSet)) {
+                return result.collect(Collectors.toSet());
+            }
         }
     }
 
@@ -21,6 +21,7 @@ import java.time.Duration;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class MessageSendLogStore implements AutoCloseable {
 
@@ -33,11 +34,17 @@ public class MessageSendLogStore implements AutoCloseable {
 
     private final Database database;
     private final Thread cleanupThread;
+    private final MessageSendLogWriter writer;
+    private final AtomicLong lastContentId;
     private final boolean sendLogDisabled;
 
     public MessageSendLogStore(final Database database, final boolean disableMessageSendLog) {
         this.database = database;
         this.sendLogDisabled = disableMessageSendLog;
+        this.lastContentId = new AtomicLong(sendLogDisabled ? 0 : getMaxContentId());
+        this.writer = sendLogDisabled
+                ? null
+                : new MessageSendLogWriter(database, TABLE_MESSAGE_SEND_LOG_CONTENT, TABLE_MESSAGE_SEND_LOG);
         this.cleanupThread = new Thread(() -> {
             try {
                 final var interval = Duration.ofHours(1).toMillis();
@@ -94,6 +101,7 @@ public class MessageSendLogStore implements AutoCloseable {
                              INNER JOIN %s lc ON l.content_id = lc._id
                         WHERE l.uuid = ? AND l.device_id = ? AND lc.timestamp = ?
                         """.formatted(TABLE_MESSAGE_SEND_LOG, TABLE_MESSAGE_SEND_LOG_CONTENT);
+        flushPendingWrites();
         try (final var connection = database.getConnection()) {
             deleteOutdatedEntries(connection);
 
@@ -188,6 +196,7 @@ public class MessageSendLogStore implements AutoCloseable {
                         DELETE FROM %s AS lc
                         WHERE lc.timestamp = ? AND lc.group_id = ?
                         """.formatted(TABLE_MESSAGE_SEND_LOG_CONTENT);
+        flushPendingWrites();
         try (final var connection = database.getConnection()) {
             try (final var statement = connection.prepareStatement(sql)) {
                 statement.setLong(1, sentTimestamp);
@@ -204,6 +213,7 @@ public class MessageSendLogStore implements AutoCloseable {
                         DELETE FROM %s AS lc
                         WHERE lc.timestamp = ? AND lc.group_id IS NULL AND lc._id IN (SELECT content_id FROM %s l WHERE l.uuid = ?)
                         """.formatted(TABLE_MESSAGE_SEND_LOG_CONTENT, TABLE_MESSAGE_SEND_LOG);
+        flushPendingWrites();
         try (final var connection = database.getConnection()) {
             connection.setAutoCommit(false);
             try (final var statement = connection.prepareStatement(sql)) {
@@ -228,6 +238,7 @@ public class MessageSendLogStore implements AutoCloseable {
                         DELETE FROM %s AS l
                         WHERE l.content_id IN (SELECT _id FROM %s lc WHERE lc.timestamp = ?) AND l.uuid = ? AND l.device_id = ?
                         """.formatted(TABLE_MESSAGE_SEND_LOG, TABLE_MESSAGE_SEND_LOG_CONTENT);
+        flushPendingWrites();
         try (final var connection = database.getConnection()) {
             connection.setAutoCommit(false);
             try (final var statement = connection.prepareStatement(sql)) {
@@ -253,6 +264,28 @@ public class MessageSendLogStore implements AutoCloseable {
             cleanupThread.join();
         } catch (InterruptedException ignored) {
         }
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    private void flushPendingWrites() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    private long getMaxContentId() {
+        final var sql = """
+                        SELECT MAX(_id) FROM %s
+                        """.formatted(TABLE_MESSAGE_SEND_LOG_CONTENT);
+        try (final var connection = database.getConnection()) {
+            try (final var statement = connection.prepareStatement(sql)) {
+                return Utils.executeQuerySingleRow(statement, resultSet -> resultSet.getLong(1));
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed read from message send log", e);
+        }
     }
 
     private RecipientDevices getRecipientDevices(final SendMessageResult sendMessageResult) {
@@ -273,39 +306,16 @@ public class MessageSendLogStore implements AutoCloseable {
     ) {
         byte[] groupId = getGroupId(content);
 
-        final var sql = """
-                        INSERT INTO %s (timestamp, group_id, content, content_hint, urgent)
-                        VALUES (?,?,?,?,?)
-                        """.formatted(TABLE_MESSAGE_SEND_LOG_CONTENT);
-        try (final var connection = database.getConnection()) {
-            connection.setAutoCommit(false);
-            final long contentId;
-            try (final var statement = connection.prepareStatement(sql)) {
-                statement.setLong(1, sentTimestamp);
-                statement.setBytes(2, groupId);
-                statement.setBytes(3, content.toByteArray());
-                statement.setInt(4, contentHint.getType());
-                statement.setBoolean(5, urgent);
-                statement.executeUpdate();
-                final var generatedKeys = statement.getGeneratedKeys();
-                if (generatedKeys.next()) {
-                    contentId = generatedKeys.getLong(1);
-                } else {
-                    contentId = -1;
-                }
-            }
-            if (contentId == -1) {
-                logger.warn("Failed to insert message send log content");
-                return -1;
-            }
-            insertRecipientsForExistingContent(contentId, recipientDevices, connection);
-
-            connection.commit();
-            return contentId;
-        } catch (SQLException e) {
-            logger.warn("Failed to insert into message send log", e);
-            return -1;
-        }
+        // Content ids are allocated up front, so the entry can be referenced before the writer has stored it
+        final var contentId = lastContentId.incrementAndGet();
+        writer.insertContent(contentId,
+                sentTimestamp,
+                groupId,
+                content.toByteArray(),
+                contentHint.getType(),
+                urgent);
+        writer.insertRecipients(contentId, recipientDevices);
+        return contentId;
     }
 
     private byte[] getGroupId(final SignalServiceProtos.Content content) {
@@ -329,32 +339,7 @@ public class MessageSendLogStore implements AutoCloseable {
     private void insertRecipientsForExistingContent(
             final long contentId, final List<RecipientDevices> recipientDevices
     ) {
-        try (final var connection = database.getConnection()) {
-            connection.setAutoCommit(false);
-            insertRecipientsForExistingContent(contentId, recipientDevices, connection);
-            connection.commit();
-        } catch (SQLException e) {
-            logger.warn("Failed to append recipients to message send log", e);
-        }
-    }
-
-    private void insertRecipientsForExistingContent(
-            final long contentId, final List<RecipientDevices> recipientDevices, final Connection connection
-    ) throws SQLException {
-        final var sql = """
-                        INSERT INTO %s (uuid, device_id, content_id)
-                        VALUES (?,?,?)
-                        """.formatted(TABLE_MESSAGE_SEND_LOG);
-        try (final var statement = connection.prepareStatement(sql)) {
-            for (final var recipientDevice : recipientDevices) {
-                for (final var deviceId : recipientDevice.deviceIds()) {
-                    statement.setBytes(1, recipientDevice.serviceId().toByteArray());
-                    statement.setInt(2, deviceId);
-                    statement.setLong(3, contentId);
-                    statement.executeUpdate();
-                }
-            }
-        }
+        writer.insertRecipients(contentId, recipientDevices);
     }
 
     private void deleteOutdatedEntries(final Connection connection) throws SQLException {
@@ -397,5 +382,5 @@ public class MessageSendLogStore implements AutoCloseable {
         return new MessageSendLogEntry(groupId, content, contentHint, urgent);
     }
 
-    private record RecipientDevices(ServiceId serviceId, List<Integer> deviceIds) {}
+    record RecipientDevices(ServiceId serviceId, List<Integer> deviceIds) {}
 }
@@ -0,0 +1,194 @@
+package org.asamk.signal.manager.storage.sendLog;
+
+import org.asamk.signal.manager.storage.Database;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buffers message send log writes and stores them in batched transactions on a background thread.
+ * Operations are written in the order they were enqueued, so recipients appended to an entry are always
+ * stored after the entry's content.
+ */
+class MessageSendLogWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSendLogWriter.class);
+
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private final Database database;
+    private final String insertContentSql;
+    private final String insertRecipientSql;
+    private final ArrayDeque<Operation> queue = new ArrayDeque<>();
+    private final Object writeLock = new Object();
+    private final Thread writerThread;
+
+    MessageSendLogWriter(
+            final Database database, final String contentTable, final String recipientTable
+    ) {
+        this.database = database;
+        this.insertContentSql = """
+                                INSERT INTO %s (_id, timestamp, group_id, content, content_hint, urgent)
+                                VALUES (?,?,?,?,?,?)
+                                """.formatted(contentTable);
+        this.insertRecipientSql = """
+                                  INSERT INTO %s (uuid, device_id, content_id)
+                                  VALUES (?,?,?)
+                                  """.formatted(recipientTable);
+        this.writerThread = new Thread(() -> {
+            try {
+                while (!Thread.interrupted()) {
+                    synchronized (queue) {
+                        while (queue.isEmpty()) {
+                            queue.wait();
+                        }
+                    }
+                    flush();
+                }
+            } catch (InterruptedException e) {
+                logger.debug("Stopping msl writer thread");
+            }
+        });
+        writerThread.setName("msl-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    void insertContent(
+            final long contentId,
+            final long sentTimestamp,
+            final byte[] groupId,
+            final byte[] content,
+            final int contentHint,
+            final boolean urgent
+    ) {
+        enqueue(new InsertContent(contentId, sentTimestamp, groupId, content, contentHint, urgent));
+    }
+
+    void insertRecipients(
+            final long contentId, final List<MessageSendLogStore.RecipientDevices> recipientDevices
+    ) {
+        enqueue(new InsertRecipients(contentId, recipientDevices));
+    }
+
+    /**
+     * Write all pending operations to the database, blocking until they are stored.
+     */
+    void flush() {
+        synchronized (writeLock) {
+            while (true) {
+                final List<Operation> operations;
+                synchronized (queue) {
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                    operations = new ArrayList<>(Math.min(queue.size(), MAX_BATCH_SIZE));
+                    while (!queue.isEmpty() && operations.size() < MAX_BATCH_SIZE) {
+                        operations.add(queue.poll());
+                    }
+                }
+                write(operations);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        writerThread.interrupt();
+        try {
+            writerThread.join();
+        } catch (InterruptedException ignored) {
+        }
+        flush();
+    }
+
+    private void enqueue(final Operation operation) {
+        synchronized (queue) {
+            queue.add(operation);
+            queue.notifyAll();
+        }
+    }
+
+    private void write(final List<Operation> operations) {
+        try (final var connection = database.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                writeBatch(connection, operations);
+                connection.commit();
+                logger.trace("Stored {} message send log operations", operations.size());
+                return;
+            } catch (SQLException e) {
+                connection.rollback();
+                logger.debug("Batched message send log write failed, retrying individually", e);
+            }
+
+            // Retry one by one, so a single bad entry doesn't drop the whole batch
+            for (final var operation : operations) {
+                try {
+                    writeBatch(connection, List.of(operation));
+                    connection.commit();
+                } catch (SQLException e) {
+                    connection.rollback();
+                    logger.warn("Failed to insert into message send log", e);
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Failed to insert into message send log", e);
+        }
+    }
+
+    private void writeBatch(final Connection connection, final List<Operation> operations) throws SQLException {
+        try (final var contentStatement = connection.prepareStatement(insertContentSql)) {
+            var count = 0;
+            for (final var operation : operations) {
+                if (operation instanceof InsertContent c) {
+                    contentStatement.setLong(1, c.contentId());
+                    contentStatement.setLong(2, c.sentTimestamp());
+                    contentStatement.setBytes(3, c.groupId());
+                    contentStatement.setBytes(4, c.content());
+                    contentStatement.setInt(5, c.contentHint());
+                    contentStatement.setBoolean(6, c.urgent());
+                    contentStatement.addBatch();
+                    count++;
+                }
+            }
+            if (count > 0) {
+                contentStatement.executeBatch();
+            }
+        }
+        try (final var recipientStatement = connection.prepareStatement(insertRecipientSql)) {
+            var count = 0;
+            for (final var operation : operations) {
+                if (operation instanceof InsertRecipients r) {
+                    for (final var recipientDevice : r.recipientDevices()) {
+                        for (final var deviceId : recipientDevice.deviceIds()) {
+                            recipientStatement.setBytes(1, recipientDevice.serviceId().toByteArray());
+                            recipientStatement.setInt(2, deviceId);
+                            recipientStatement.setLong(3, r.contentId());
+                            recipientStatement.addBatch();
+                            count++;
+                        }
+                    }
+                }
+            }
+            if (count > 0) {
+                recipientStatement.executeBatch();
+            }
+        }
+    }
+
+    private sealed interface Operation {}
+
+    private record InsertContent(
+            long contentId, long sentTimestamp, byte[] groupId, byte[] content, int contentHint, boolean urgent
+    ) implements Operation {}
+
+    private record InsertRecipients(
+            long contentId, List<MessageSendLogStore.RecipientDevices> recipientDevices
+    ) implements Operation {}
+}
@@ -55,9 +55,10 @@ public class SenderKeySharedStore {
             ).formatted(TABLE_SENDER_KEY_SHARED);
             try (final var statement = connection.prepareStatement(sql)) {
                 statement.setBytes(1, UuidUtil.toByteArray(distributionId.asUuid()));
-                return Utils.executeQueryForStream(statement, this::getSenderKeySharedEntryFromResultSet)
-                        .map(k -> k.serviceId.toProtocolAddress(k.deviceId()))
-                        .collect(Collectors.toSet());
+                try (var result = Utils.executeQueryForStream(statement, this::getSenderKeySharedEntryFromResultSet)) {
+                    return result.map(k -> k.serviceId.toProtocolAddress(k.deviceId()))
+                            .collect(Collectors.toSet());
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from shared sender key store", e);
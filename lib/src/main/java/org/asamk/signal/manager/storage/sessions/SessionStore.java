@@ -31,6 +31,7 @@ import java.util.stream.Collectors;
 public class SessionStore implements SignalServiceSessionStore {
 
     private static final String TABLE_SESSION = "session";
+    private static final int ARCHIVE_PAGE_SIZE = 500;
     private final static Logger logger = LoggerFactory.getLogger(SessionStore.class);
 
     private final Map<Key, SessionRecord> cachedSessions = new HashMap<>();
@@ -114,7 +115,9 @@ public class SessionStore implements SignalServiceSessionStore {
             try (final var statement = connection.prepareStatement(sql)) {
                 statement.setInt(1, accountIdType);
                 statement.setBytes(2, serviceId.toByteArray());
-                return Utils.executeQueryForStream(statement, res -> res.getInt("device_id")).toList();
+                try (var result = Utils.executeQueryForStream(statement, res -> res.getInt("device_id"))) {
+                    return result.toList();
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from session store", e);
@@ -221,12 +224,13 @@ public class SessionStore implements SignalServiceSessionStore {
         try (final var connection = database.getConnection()) {
             try (final var statement = connection.prepareStatement(sql)) {
                 statement.setInt(1, accountIdType);
-                return Utils.executeQueryForStream(statement,
-                                res -> new Pair<>(getKeyFromResultSet(res), getSessionRecordFromResultSet(res)))
-                        .filter(pair -> isActive(pair.second()))
-                        .map(Pair::first)
-                        .map(key -> key.serviceId().toProtocolAddress(key.deviceId()))
-                        .collect(Collectors.toSet());
+                try (var result = Utils.executeQueryForStream(statement,
+                        res -> new Pair<>(getKeyFromResultSet(res), getSessionRecordFromResultSet(res)))) {
+                    return result.filter(pair -> isActive(pair.second()))
+                            .map(Pair::first)
+                            .map(key -> key.serviceId().toProtocolAddress(key.deviceId()))
+                            .collect(Collectors.toSet());
+                }
             }
         } catch (SQLException e) {
             throw new RuntimeException("Failed read from session store", e);
@@ -236,25 +240,29 @@ public class SessionStore implements SignalServiceSessionStore {
     public void archiveAllSessions() {
         final var sql = (
                 """
-                SELECT s.uuid, s.device_id, s.record
+                SELECT s._id, s.uuid, s.device_id, s.record
                 FROM %s AS s
-                WHERE s.account_id_type = ?
+                WHERE s.account_id_type = ? AND s._id > ?
+                ORDER BY s._id
+                LIMIT ?
                 """
         ).formatted(TABLE_SESSION);
         try (final var connection = database.getConnection()) {
             connection.setAutoCommit(false);
-            final List<Pair<Key, SessionRecord>> records;
-            try (final var statement = connection.prepareStatement(sql)) {
-                statement.setInt(1, accountIdType);
-                records = Utils.executeQueryForStream(statement,
-                                res -> new Pair<>(getKeyFromResultSet(res), getSessionRecordFromResultSet(res)))
-                        .filter(Objects::nonNull)
-                        .toList();
-            }
-            for (final var record : records) {
-                record.second().archiveCurrentState();
-                storeSession(connection, record.first(), record.second());
-            }
+            Utils.executeQueryInPages(connection,
+                    sql,
+                    ARCHIVE_PAGE_SIZE,
+                    statement -> statement.setInt(1, accountIdType),
+                    res -> new Pair<>(getKeyFromResultSet(res), getSessionRecordFromResultSet(res)),
+                    records -> {
+                        for (final var record : records) {
+                            if (record.second() == null) {
+                                continue;
+                            }
+                            record.second().archiveCurrentState();
+                            storeSession(connection, record.first(), record.second());
+                        }
+                    });
             connection.commit();
         } catch (SQLException e) {
             throw new RuntimeException("Failed update session store", e);
@@ -275,10 +283,10 @@ public class SessionStore implements SignalServiceSessionStore {
             try (final var statement = connection.prepareStatement(sql)) {
                 statement.setInt(1, accountIdType);
                 statement.setBytes(2, serviceId.toByteArray());
-                records = Utils.executeQueryForStream(statement,
-                                res -> new Pair<>(getKeyFromResultSet(res), getSessionRecordFromResultSet(res)))
-                        .filter(Objects::nonNull)
-                        .toList();
+                try (var result = Utils.executeQueryForStream(statement,
+                        res -> new Pair<>(getKeyFromResultSet(res), getSessionRecordFromResultSet(res)))) {
+                    records = result.filter(Objects::nonNull).toList();
+                }
             }
             for (final var record : records) {
                 record.second().archiveCurrentState();
@@ -356,8 +364,9 @@ public class SessionStore implements SignalServiceSessionStore {
         }
 
         final var sql = """
-                        INSERT OR REPLACE INTO %s (account_id_type, uuid, device_id, record)
+                        INSERT INTO %s (account_id_type, uuid, device_id, record)
                         VALUES (?, ?, ?, ?)
+                        ON CONFLICT (account_id_type, uuid, device_id) DO UPDATE SET record=excluded.record
                         """.formatted(TABLE_SESSION);
         try (final var statement = connection.prepareStatement(sql)) {
             statement.setInt(1, accountIdType);
@@ -1,8 +1,10 @@
 package org.asamk.signal.manager.util;
 
 import org.asamk.signal.manager.api.AttachmentInvalidException;
+import org.whispersystems.signalservice.api.messages.SignalServiceAttachment;
 import org.whispersystems.signalservice.api.messages.SignalServiceAttachmentStream;
 import org.whispersystems.signalservice.api.util.StreamDetails;
+import org.whispersystems.signalservice.internal.push.http.CancelationSignal;
 import org.whispersystems.signalservice.internal.push.http.ResumableUploadSpec;
 
 import java.io.IOException;
@@ -24,10 +26,21 @@ public class AttachmentUtils {
     }
 
     public static SignalServiceAttachmentStream createAttachmentStream(String attachment) throws AttachmentInvalidException {
+        return createAttachmentStream(attachment, null, null);
+    }
+
+    public static SignalServiceAttachmentStream createAttachmentStream(
+            String attachment,
+            SignalServiceAttachment.ProgressListener progressListener,
+            CancelationSignal cancelationSignal
+    ) throws AttachmentInvalidException {
         try {
             final var streamDetails = Utils.createStreamDetails(attachment);
 
-            return createAttachmentStream(streamDetails.first(), streamDetails.second());
+            return createAttachmentStream(streamDetails.first(),
+                    streamDetails.second(),
+                    progressListener,
+                    cancelationSignal);
         } catch (IOException e) {
             throw new AttachmentInvalidException(attachment, e);
         }
@@ -35,6 +48,15 @@ public class AttachmentUtils {
 
     public static SignalServiceAttachmentStream createAttachmentStream(
             StreamDetails streamDetails, Optional<String> name
+    ) {
+        return createAttachmentStream(streamDetails, name, null, null);
+    }
+
+    private static SignalServiceAttachmentStream createAttachmentStream(
+            StreamDetails streamDetails,
+            Optional<String> name,
+            SignalServiceAttachment.ProgressListener progressListener,
+            CancelationSignal cancelationSignal
     ) {
         // TODO maybe add a parameter to set the voiceNote, borderless, preview, width, height and caption option
         final var uploadTimestamp = System.currentTimeMillis();
@@ -55,8 +77,8 @@ public class AttachmentUtils {
                 uploadTimestamp,
                 caption,
                 blurHash,
-                null,
-                null,
+                progressListener,
+                cancelationSignal,
                 resumableUploadSpec);
     }
 }
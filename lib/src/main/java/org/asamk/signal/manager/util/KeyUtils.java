@@ -15,9 +15,9 @@ import org.signal.libsignal.zkgroup.profiles.ProfileKey;
 import org.whispersystems.signalservice.api.kbs.MasterKey;
 
 import java.security.SecureRandom;
-import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.asamk.signal.manager.config.ServiceConfig.PREKEY_BATCH_SIZE;
 import static org.asamk.signal.manager.config.ServiceConfig.PREKEY_MAXIMUM_ID;
@@ -49,15 +49,10 @@ public class KeyUtils {
     }
 
     public static List<PreKeyRecord> generatePreKeyRecords(final int offset) {
-        var records = new ArrayList<PreKeyRecord>(PREKEY_BATCH_SIZE);
-        for (var i = 0; i < PREKEY_BATCH_SIZE; i++) {
-            var preKeyId = (offset + i) % PREKEY_MAXIMUM_ID;
-            var keyPair = Curve.generateKeyPair();
-            var record = new PreKeyRecord(preKeyId, keyPair);
-
-            records.add(record);
-        }
-        return records;
+        return IntStream.range(0, PREKEY_BATCH_SIZE)
+                .parallel()
+                .mapToObj(i -> new PreKeyRecord((offset + i) % PREKEY_MAXIMUM_ID, Curve.generateKeyPair()))
+                .toList();
     }
 
     public static SignedPreKeyRecord generateSignedPreKeyRecord(
@@ -76,19 +71,43 @@ public class KeyUtils {
     public static List<KyberPreKeyRecord> generateKyberPreKeyRecords(
             final int offset, final ECPrivateKey privateKey
     ) {
-        var records = new ArrayList<KyberPreKeyRecord>(PREKEY_BATCH_SIZE);
-        for (var i = 0; i < PREKEY_BATCH_SIZE; i++) {
-            var preKeyId = (offset + i) % PREKEY_MAXIMUM_ID;
-            records.add(generateKyberPreKeyRecord(preKeyId, privateKey));
-        }
-        return records;
+        return generateKyberPreKeyRecords(offset, generateSignedKyberKeyPairs(PREKEY_BATCH_SIZE, privateKey));
+    }
+
+    public static List<KyberPreKeyRecord> generateKyberPreKeyRecords(
+            final int offset, final List<SignedKyberKeyPair> keyPairs
+    ) {
+        final var timestamp = System.currentTimeMillis();
+        return IntStream.range(0, keyPairs.size()).mapToObj(i -> {
+            final var keyPair = keyPairs.get(i);
+            return new KyberPreKeyRecord((offset + i) % PREKEY_MAXIMUM_ID,
+                    timestamp,
+                    keyPair.keyPair(),
+                    keyPair.signature());
+        }).toList();
+    }
+
+    /**
+     * Generate signed kyber key pairs in parallel on the common fork-join pool.
+     * The key ids are only assigned when the pairs are turned into pre key records.
+     */
+    public static List<SignedKyberKeyPair> generateSignedKyberKeyPairs(
+            final int count, final ECPrivateKey privateKey
+    ) {
+        return IntStream.range(0, count).parallel().mapToObj(i -> generateSignedKyberKeyPair(privateKey)).toList();
     }
 
     public static KyberPreKeyRecord generateKyberPreKeyRecord(final int preKeyId, final ECPrivateKey privateKey) {
+        final var keyPair = generateSignedKyberKeyPair(privateKey);
+
+        return new KyberPreKeyRecord(preKeyId, System.currentTimeMillis(), keyPair.keyPair(), keyPair.signature());
+    }
+
+    private static SignedKyberKeyPair generateSignedKyberKeyPair(final ECPrivateKey privateKey) {
         KEMKeyPair keyPair = KEMKeyPair.generate(KEMKeyType.KYBER_1024);
         byte[] signature = privateKey.calculateSignature(keyPair.getPublicKey().serialize());
 
-        return new KyberPreKeyRecord(preKeyId, System.currentTimeMillis(), keyPair, signature);
+        return new SignedKyberKeyPair(keyPair, signature);
     }
 
     public static ProfileKey createProfileKey() {
@@ -125,4 +144,6 @@ public class KeyUtils {
     public static int getRandomInt(int bound) {
         return secureRandom.nextInt(bound);
     }
+
+    public record SignedKyberKeyPair(KEMKeyPair keyPair, byte[] signature) {}
 }
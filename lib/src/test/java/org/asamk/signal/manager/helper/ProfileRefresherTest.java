@@ -0,0 +1,87 @@
+package org.asamk.signal.manager.helper;
+
+import org.junit.jupiter.api.Test;
+import org.whispersystems.signalservice.api.profiles.SignalServiceProfile;
+import org.whispersystems.signalservice.api.push.exceptions.RateLimitException;
+
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProfileRefresherTest {
+
+    private static final SignalServiceProfile.RequestType PROFILE = SignalServiceProfile.RequestType.PROFILE;
+
+    @Test
+    void concurrentFetchesShareOneFetch() throws Exception {
+        final var executor = Executors.newCachedThreadPool();
+        try {
+            final var fetchCount = new AtomicInteger();
+            final var release = new CountDownLatch(1);
+            final var refresher = new ProfileRefresher(executor, 4, (recipientId, requestType) -> {
+                fetchCount.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            });
+
+            final var first = refresher.fetch(null, PROFILE, false);
+            final var second = refresher.fetch(null, PROFILE, true);
+            release.countDown();
+            first.get(5, TimeUnit.SECONDS);
+
+            assertSame(first, second);
+            assertEquals(1, fetchCount.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void foregroundFetchesAreNotPausedAfterRateLimit() throws Exception {
+        final var rateLimited = new AtomicBoolean(true);
+        final var refresher = new ProfileRefresher(Runnable::run, 4, (recipientId, requestType) -> {
+            if (rateLimited.getAndSet(false)) {
+                throw new RateLimitException(429, "Rate limited", Optional.of(60_000L));
+            }
+        });
+
+        final var limited = refresher.fetch(null, PROFILE, false);
+        assertTrue(limited.isCompletedExceptionally());
+        assertTrue(ProfileRefresher.isRateLimited(limited.handle((r, e) -> e).get()));
+
+        final var foreground = refresher.fetch(null, PROFILE, false);
+        assertTrue(foreground.isDone());
+        assertFalse(foreground.isCompletedExceptionally());
+    }
+
+    @Test
+    void backgroundFetchesArePausedAfterRateLimit() {
+        final var rateLimited = new AtomicBoolean(true);
+        final var refresher = new ProfileRefresher(Runnable::run, 4, (recipientId, requestType) -> {
+            if (rateLimited.getAndSet(false)) {
+                throw new RateLimitException(429, "Rate limited", Optional.of(60_000L));
+            }
+        });
+
+        refresher.fetch(null, PROFILE, false);
+
+        final var background = refresher.fetch(null, PROFILE, true);
+        assertFalse(background.isDone());
+
+        // Waiting for the profile in the foreground doesn't wait for the pause to end
+        final var foreground = refresher.fetch(null, PROFILE, false);
+        assertSame(background, foreground);
+        assertTrue(foreground.isDone());
+    }
+}
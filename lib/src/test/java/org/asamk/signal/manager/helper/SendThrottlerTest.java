@@ -0,0 +1,101 @@
+package org.asamk.signal.manager.helper;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SendThrottlerTest {
+
+    @Test
+    void doesNotPaceByDefault() throws InterruptedIOException {
+        final var throttler = new SendThrottler(null);
+
+        final var start = System.nanoTime();
+        throttler.acquire(1000);
+        assertEquals(500, throttler.acquireUpTo(500));
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 100);
+        assertNull(throttler.getStatus().rate());
+    }
+
+    @Test
+    void pacesWithConfiguredRate() throws InterruptedIOException {
+        final var throttler = new SendThrottler(2.0);
+
+        assertEquals(2.0, throttler.getStatus().rate());
+        final var start = System.nanoTime();
+        throttler.acquire(1);
+        throttler.acquire(1);
+        throttler.acquire(1);
+
+        // The first permit is free, the next ones are spaced by half a second each
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 900);
+    }
+
+    @Test
+    void acquireUpToReturnsAvailablePermitsWhilePacing() throws InterruptedIOException {
+        final var throttler = new SendThrottler(5.0);
+
+        assertEquals(1, throttler.acquireUpTo(100));
+        assertTrue(throttler.acquireUpTo(100) >= 1);
+        assertTrue(throttler.acquireUpTo(100) <= 5);
+    }
+
+    @Test
+    void startsPacingAfterRateLimit() throws InterruptedIOException {
+        final var throttler = new SendThrottler(null);
+        throttler.acquire(10);
+
+        throttler.onRateLimited(Duration.ofMillis(300));
+
+        final var status = throttler.getStatus();
+        assertNotNull(status.rate());
+        assertTrue(status.rate() <= 5.0);
+        assertTrue(status.untilNextSend().toMillis() > 0);
+
+        final var start = System.nanoTime();
+        throttler.acquire(1);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 200);
+    }
+
+    @Test
+    void halvesRateOnFurtherRateLimits() {
+        final var throttler = new SendThrottler(8.0);
+
+        throttler.onRateLimited(Duration.ZERO);
+        assertEquals(4.0, throttler.getStatus().rate());
+        throttler.onRateLimited(Duration.ZERO);
+        assertEquals(2.0, throttler.getStatus().rate());
+    }
+
+    @Test
+    void stopsPacingWhenRateRecovered() {
+        final var throttler = new SendThrottler(null);
+        throttler.onRateLimited(Duration.ZERO);
+        assertNotNull(throttler.getStatus().rate());
+
+        for (var i = 0; i < 10_000 && throttler.getStatus().rate() != null; i++) {
+            throttler.onSuccess();
+        }
+
+        assertNull(throttler.getStatus().rate());
+    }
+
+    @Test
+    void configuredRateIsNeverExceeded() {
+        final var throttler = new SendThrottler(3.0);
+        throttler.onRateLimited(Duration.ZERO);
+
+        for (var i = 0; i < 1000; i++) {
+            throttler.onSuccess();
+        }
+
+        assertEquals(3.0, throttler.getStatus().rate());
+    }
+}
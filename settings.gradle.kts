@@ -7,7 +7,9 @@ dependencyResolutionManagement {
     versionCatalogs {
         create("libs") {
             library("bouncycastle", "org.bouncycastle", "bcprov-jdk15on").version("1.70")
-            library("jackson.databind", "com.fasterxml.jackson.core", "jackson-databind").version("2.15.2")
+            version("jackson", "2.15.2")
+            library("jackson.databind", "com.fasterxml.jackson.core", "jackson-databind").versionRef("jackson")
+            library("jackson.cbor", "com.fasterxml.jackson.dataformat", "jackson-dataformat-cbor").versionRef("jackson")
             library("argparse4j", "net.sourceforge.argparse4j", "argparse4j").version("0.9.0")
             library("dbusjava", "com.github.hypfvieh", "dbus-java-transport-native-unixsocket").version("4.3.0")
             version("slf4j", "2.0.7")
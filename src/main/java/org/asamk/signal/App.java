@@ -41,6 +41,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.time.Duration;
 import java.util.Set;
 
 import static net.sourceforge.argparse4j.DefaultSettings.VERSION_0_9_0_DEFAULT_SETTINGS;
@@ -100,6 +101,27 @@ public class App {
                 .help("Disable message send log (for resending messages that recipient couldn't decrypt)")
                 .action(Arguments.storeTrue());
 
+        parser.addArgument("--slow-query-threshold")
+                .help("Log database queries that take longer than the given number of milliseconds.")
+                .type(long.class)
+                .setDefault(500L);
+
+        parser.addArgument("--send-parallelism")
+                .help("Maximum number of individual recipients a message is sent to concurrently.")
+                .type(int.class)
+                .choices(Arguments.range(1, Integer.MAX_VALUE))
+                .setDefault(10);
+
+        parser.addArgument("--profile-fetch-parallelism")
+                .help("Maximum number of profiles that are retrieved concurrently.")
+                .type(int.class)
+                .choices(Arguments.range(1, Integer.MAX_VALUE))
+                .setDefault(10);
+
+        parser.addArgument("--send-rate-limit")
+                .help("Maximum number of messages sent per second. By default messages are only paced after the server reported rate limiting.")
+                .type(double.class);
+
         var subparsers = parser.addSubparsers().title("subcommands").dest("command");
 
         Commands.getCommandSubparserAttachers().forEach((key, value) -> {
@@ -233,12 +255,21 @@ public class App {
                 : trustNewIdentityCli == TrustNewIdentityCli.ALWAYS ? TrustNewIdentity.ALWAYS : TrustNewIdentity.NEVER;
 
         final var disableSendLog = Boolean.TRUE.equals(ns.getBoolean("disable-send-log"));
+        final var slowQueryThreshold = Duration.ofMillis(ns.getLong("slow-query-threshold"));
+        final var sendParallelism = ns.getInt("send-parallelism");
+        final var profileFetchParallelism = ns.getInt("profile-fetch-parallelism");
+        final var sendRateLimit = ns.getDouble("send-rate-limit");
 
         try {
             return new SignalAccountFiles(configPath,
                     serviceEnvironment,
                     BaseConfig.USER_AGENT,
-                    new Settings(trustNewIdentity, disableSendLog));
+                    new Settings(trustNewIdentity,
+                            disableSendLog,
+                            slowQueryThreshold,
+                            sendParallelism,
+                            profileFetchParallelism,
+                            sendRateLimit));
         } catch (IOException e) {
             throw new IOErrorException("Failed to read local accounts list", e);
         }
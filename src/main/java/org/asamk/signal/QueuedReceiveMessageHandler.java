@@ -0,0 +1,288 @@
+package org.asamk.signal;
+
+import org.asamk.signal.manager.Manager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decouples a slow receive subscriber from the receive thread.
+ * <p>
+ * Received messages are put in a bounded queue and passed to the wrapped handler on a writer thread. The writer
+ * threads are shared by all subscribers and only used while a queue isn't empty, so idle subscribers don't need a
+ * thread of their own. The overflow policy decides what happens when the subscriber can't keep up and the queue is full.
+ * <p>
+ * Messages are delivered at most once: they are acknowledged to the server when they're received, before they're
+ * queued. Messages that are dropped by the {@link OverflowPolicy#DROP_OLDEST} policy, discarded when the subscriber is
+ * disconnected by the {@link OverflowPolicy#DISCONNECT} policy or still queued when the process exits are lost.
+ * When the handler is closed, the messages that were queued before are still passed to the subscriber.
+ */
+public class QueuedReceiveMessageHandler implements ReceiveEventHub.Subscriber, AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(QueuedReceiveMessageHandler.class);
+
+    private static final AtomicInteger threadNumber = new AtomicInteger(0);
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(10);
+    private static final Set<QueuedReceiveMessageHandler> activeHandlers = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService writers = Executors.newCachedThreadPool(r -> {
+        final var thread = new Thread(r);
+        thread.setName("receive-writer-" + threadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final Manager m;
+    private final ReceiveEventHub.Subscriber handler;
+    private final Config config;
+    private final ReceiveFilter filter;
+    private final Runnable onDisconnect;
+
+    // Guarded by queue
+    private final ArrayDeque<ReceiveEvent> queue = new ArrayDeque<>();
+    private Thread writerThread;
+    private boolean writing = false;
+    // The writer is passing a message to the subscriber
+    private boolean delivering = false;
+    private boolean closed = false;
+    private boolean drained = false;
+    private boolean disconnecting = false;
+    private long deliveredCount = 0;
+    private long droppedCount = 0;
+    private long lastDeliveryLag = 0;
+
+    /**
+     * @param name         identifies the subscriber in logs and metrics
+     * @param onDisconnect called on a writer thread as soon as the queue overflows with the
+     *                     {@link OverflowPolicy#DISCONNECT} policy, it must close the connection of the subscriber
+     */
+    public QueuedReceiveMessageHandler(
+            final String name,
+            final Manager m,
+            final ReceiveEventHub.Subscriber handler,
+            final Config config,
+            final Runnable onDisconnect
+    ) {
+        this(name, m, handler, config, ReceiveFilter.ALL, onDisconnect);
+    }
+
+    /**
+     * @param filter messages that don't match the filter are discarded before they are queued
+     */
+    public QueuedReceiveMessageHandler(
+            final String name,
+            final Manager m,
+            final ReceiveEventHub.Subscriber handler,
+            final Config config,
+            final ReceiveFilter filter,
+            final Runnable onDisconnect
+    ) {
+        this.name = name;
+        this.m = m;
+        this.handler = handler;
+        this.config = config;
+        this.filter = filter;
+        this.onDisconnect = onDisconnect;
+        activeHandlers.add(this);
+    }
+
+    public static List<Status> getStatus(Manager m) {
+        return activeHandlers.stream().filter(h -> h.m == m).map(QueuedReceiveMessageHandler::getStatus).toList();
+    }
+
+    @Override
+    public void handleEvent(final ReceiveEvent event) {
+        if (!filter.matches(event)) {
+            return;
+        }
+        synchronized (queue) {
+            if (closed || disconnecting) {
+                return;
+            }
+            if (queue.size() >= config.queueSize()) {
+                switch (config.overflowPolicy()) {
+                    case DROP_OLDEST -> {
+                        queue.poll();
+                        if (droppedCount++ % 100 == 0) {
+                            logger.warn("Receive subscriber {} can't keep up, dropped {} messages",
+                                    name,
+                                    droppedCount);
+                        }
+                    }
+                    case DISCONNECT -> {
+                        logger.warn("Receive subscriber {} can't keep up, disconnecting", name);
+                        disconnecting = true;
+                        queue.clear();
+                        queue.notifyAll();
+                        if (delivering) {
+                            // Wake up the writer if it's blocked by the stalled subscriber, e.g. in a socket write
+                            writerThread.interrupt();
+                        }
+                        activeHandlers.remove(this);
+                        // Not called by the writer, which may never return from the stalled subscriber
+                        writers.execute(onDisconnect);
+                        return;
+                    }
+                    case BLOCK -> {
+                        try {
+                            while (queue.size() >= config.queueSize() && !closed) {
+                                queue.wait();
+                            }
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        if (closed) {
+                            return;
+                        }
+                    }
+                }
+            }
+            queue.add(event);
+            startWriter();
+        }
+    }
+
+    /**
+     * Stop accepting new messages and wait until the already queued messages have been passed to the subscriber.
+     */
+    @Override
+    public void close() {
+        activeHandlers.remove(this);
+        synchronized (queue) {
+            closed = true;
+            queue.notifyAll();
+            if (!writing || disconnecting) {
+                drained = true;
+                return;
+            }
+            if (Thread.currentThread() == writerThread) {
+                // Closed by the subscriber itself, the writer thread continues draining the queue after returning
+                return;
+            }
+            final var deadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+            try {
+                while (!drained) {
+                    final var remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        logger.warn("Receive subscriber {} didn't handle {} queued messages before closing",
+                                name,
+                                queue.size());
+                        break;
+                    }
+                    queue.wait(remainingMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public Status getStatus() {
+        synchronized (queue) {
+            final var oldest = queue.peek();
+            final var lag = oldest == null ? 0 : System.currentTimeMillis() - oldest.getReceivedTimestamp();
+            return new Status(name,
+                    queue.size(),
+                    deliveredCount,
+                    droppedCount,
+                    Duration.ofMillis(lag),
+                    Duration.ofMillis(lastDeliveryLag));
+        }
+    }
+
+    /**
+     * Must be called while holding the queue lock.
+     */
+    private void startWriter() {
+        if (!writing) {
+            writing = true;
+            writers.execute(this::runWriter);
+        }
+    }
+
+    /**
+     * Pass the queued messages to the subscriber, until the queue is empty.
+     */
+    private void runWriter() {
+        synchronized (queue) {
+            writerThread = Thread.currentThread();
+        }
+        while (true) {
+            final ReceiveEvent event;
+            synchronized (queue) {
+                event = disconnecting ? null : queue.poll();
+                if (event == null) {
+                    // Cleared together with observing the empty queue, so a new message always starts a writer
+                    writing = false;
+                    writerThread = null;
+                    if (closed || disconnecting) {
+                        drained = true;
+                        queue.clear();
+                    }
+                    queue.notifyAll();
+                    return;
+                }
+                delivering = true;
+                // Wake up the receive thread, if it's blocked by a full queue
+                queue.notifyAll();
+            }
+
+            try {
+                handler.handleEvent(event);
+            } catch (Throwable e) {
+                logger.warn("Receive subscriber {} failed, ignoring", name, e);
+            }
+            synchronized (queue) {
+                delivering = false;
+                // Clear an interrupt of a disconnect, the writer thread is reused for other subscribers
+                Thread.interrupted();
+                deliveredCount++;
+                lastDeliveryLag = System.currentTimeMillis() - event.getReceivedTimestamp();
+            }
+        }
+    }
+
+    public enum OverflowPolicy {
+        DROP_OLDEST {
+            @Override
+            public String toString() {
+                return "drop-oldest";
+            }
+        },
+        DISCONNECT {
+            @Override
+            public String toString() {
+                return "disconnect";
+            }
+        },
+        BLOCK {
+            @Override
+            public String toString() {
+                return "block";
+            }
+        },
+    }
+
+    public record Config(int queueSize, OverflowPolicy overflowPolicy) {
+
+        public static final Config DEFAULT = new Config(1000, OverflowPolicy.DISCONNECT);
+    }
+
+    /**
+     * @param lag             age of the oldest message that hasn't been passed to the subscriber yet
+     * @param lastDeliveryLag time between receiving and passing the last message to the subscriber
+     */
+    public record Status(
+            String name, int queuedCount, long deliveredCount, long droppedCount, Duration lag, Duration lastDeliveryLag
+    ) {}
+}
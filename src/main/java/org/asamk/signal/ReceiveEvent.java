@@ -0,0 +1,123 @@
+package org.asamk.signal;
+
+import org.asamk.signal.json.JsonError;
+import org.asamk.signal.json.JsonMessageEnvelope;
+import org.asamk.signal.manager.Manager;
+import org.asamk.signal.manager.api.MessageEnvelope;
+import org.asamk.signal.output.WireFormat;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A received message, shared by all subscribers of a {@link ReceiveEventHub}.
+ * <p>
+ * The JSON representation is only created once, when the first subscriber requests it, likewise for the other wire
+ * formats.
+ */
+public final class ReceiveEvent {
+
+    private static final AtomicLong lastId = new AtomicLong(0);
+
+    private final long id;
+    private final Manager m;
+    private final MessageEnvelope envelope;
+    private final Throwable exception;
+    private final long receivedTimestamp;
+    // Guarded by this
+    private ReceiveFilter.Attributes attributes;
+    private JsonMessageEnvelope jsonEnvelope;
+    private final Map<WireFormat, Map<String, byte[]>> encodedFields = new EnumMap<>(WireFormat.class);
+    private final Map<WireFormat, byte[]> encoded = new EnumMap<>(WireFormat.class);
+
+    ReceiveEvent(final Manager m, final MessageEnvelope envelope, final Throwable exception) {
+        this.id = nextId();
+        this.m = m;
+        this.envelope = envelope;
+        this.exception = exception;
+        this.receivedTimestamp = System.currentTimeMillis();
+    }
+
+    /**
+     * Ids increase monotonically for all accounts, also across restarts, as they're derived from the current time.
+     */
+    private static long nextId() {
+        return lastId.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis() * 1000));
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Manager getManager() {
+        return m;
+    }
+
+    public MessageEnvelope getEnvelope() {
+        return envelope;
+    }
+
+    public Throwable getException() {
+        return exception;
+    }
+
+    public long getReceivedTimestamp() {
+        return receivedTimestamp;
+    }
+
+    /**
+     * The attributes of the envelope, that receive filters are evaluated on.
+     */
+    public synchronized ReceiveFilter.Attributes getAttributes() {
+        if (attributes == null) {
+            attributes = envelope == null ? ReceiveFilter.Attributes.NONE : ReceiveFilter.Attributes.from(envelope);
+        }
+        return attributes;
+    }
+
+    /**
+     * The event as UTF-8 encoded JSON object, with the account, envelope and exception fields.
+     * <p>
+     * The returned array is shared and must not be modified.
+     */
+    public byte[] getJson() {
+        return getEncoded(WireFormat.JSON);
+    }
+
+    /**
+     * The event object encoded in the given wire format, it's only encoded once for each format.
+     * <p>
+     * The returned array is shared and must not be modified.
+     */
+    public synchronized byte[] getEncoded(final WireFormat wireFormat) {
+        return encoded.computeIfAbsent(wireFormat, f -> f.encodeObject(getEncodedFields(f)));
+    }
+
+    /**
+     * The event object with an additional field appended, e.g. the subscription id of a JSON-RPC notification.
+     */
+    public byte[] getEncodedWithField(final WireFormat wireFormat, final String fieldName, final Object fieldValue) {
+        final var fields = new LinkedHashMap<>(getEncodedFields(wireFormat));
+        fields.put(fieldName, wireFormat.encode(fieldValue));
+        return wireFormat.encodeObject(fields);
+    }
+
+    private synchronized Map<String, byte[]> getEncodedFields(final WireFormat wireFormat) {
+        return encodedFields.computeIfAbsent(wireFormat, f -> {
+            final var fields = new LinkedHashMap<String, byte[]>();
+            fields.put("account", f.encode(m.getSelfNumber()));
+            if (exception != null) {
+                fields.put("exception", f.encode(JsonError.from(exception)));
+            }
+            if (envelope != null) {
+                if (jsonEnvelope == null) {
+                    jsonEnvelope = JsonMessageEnvelope.from(envelope, exception, m);
+                }
+                fields.put("envelope", f.encode(jsonEnvelope));
+            }
+            return fields;
+        });
+    }
+}
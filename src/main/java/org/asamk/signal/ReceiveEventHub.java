@@ -0,0 +1,147 @@
+package org.asamk.signal;
+
+import org.asamk.signal.manager.Manager;
+import org.asamk.signal.manager.api.MessageEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Passes the received messages of a manager to all subscribers of the daemon.
+ * <p>
+ * Each received message is wrapped in a single {@link ReceiveEvent}, so its JSON representation is created once and
+ * shared by all JSON-RPC, SSE and stdout subscribers.
+ */
+public class ReceiveEventHub {
+
+    private final static Logger logger = LoggerFactory.getLogger(ReceiveEventHub.class);
+
+    private static final Map<Manager, ReceiveEventHub> hubs = new HashMap<>();
+
+    private final Manager m;
+    private final SubscriberList subscribers = new SubscriberList(false);
+    private final SubscriberList weakSubscribers = new SubscriberList(true);
+    private final List<Subscriber> eventListeners = new CopyOnWriteArrayList<>();
+
+    private ReceiveEventHub(final Manager m) {
+        this.m = m;
+    }
+
+    public static ReceiveEventHub get(final Manager m) {
+        synchronized (hubs) {
+            var hub = hubs.get(m);
+            if (hub == null) {
+                hub = new ReceiveEventHub(m);
+                hubs.put(m, hub);
+                m.addClosedListener(() -> {
+                    synchronized (hubs) {
+                        hubs.remove(m);
+                    }
+                });
+            }
+            return hub;
+        }
+    }
+
+    /**
+     * @param isWeakListener if true, the subscriber doesn't cause messages to be received, see
+     *                       {@link Manager#addReceiveHandler(Manager.ReceiveMessageHandler, boolean)}
+     */
+    public void subscribe(final Subscriber subscriber, final boolean isWeakListener) {
+        (isWeakListener ? weakSubscribers : subscribers).add(subscriber);
+    }
+
+    public void subscribe(final Subscriber subscriber) {
+        subscribe(subscriber, false);
+    }
+
+    /**
+     * Add a listener, that is called for every received message before it's passed to the subscribers.
+     * Like a weak subscriber, it doesn't cause messages to be received.
+     */
+    public void addEventListener(final Subscriber listener) {
+        eventListeners.add(listener);
+        weakSubscribers.register();
+    }
+
+    public void unsubscribe(final Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        weakSubscribers.remove(subscriber);
+    }
+
+    private ReceiveEvent lastEvent;
+
+    /**
+     * The manager calls the strong and weak handler one after another with the same envelope, so both can share
+     * the event of the last envelope.
+     */
+    private synchronized ReceiveEvent getEvent(final MessageEnvelope envelope, final Throwable exception) {
+        final var event = lastEvent;
+        if (event != null && event.getEnvelope() == envelope && event.getException() == exception) {
+            return event;
+        }
+        lastEvent = new ReceiveEvent(m, envelope, exception);
+        for (final var listener : eventListeners) {
+            try {
+                listener.handleEvent(lastEvent);
+            } catch (Throwable ex) {
+                logger.warn("Receive event listener failed, ignoring", ex);
+            }
+        }
+        return lastEvent;
+    }
+
+    public interface Subscriber {
+
+        void handleEvent(ReceiveEvent event);
+    }
+
+    /**
+     * Registered as a single receive handler with the manager, while it has at least one subscriber.
+     */
+    private class SubscriberList implements Manager.ReceiveMessageHandler {
+
+        private final boolean isWeakListener;
+        private final List<Subscriber> list = new CopyOnWriteArrayList<>();
+        private boolean registered = false;
+
+        private SubscriberList(final boolean isWeakListener) {
+            this.isWeakListener = isWeakListener;
+        }
+
+        private synchronized void add(final Subscriber subscriber) {
+            list.add(subscriber);
+            register();
+        }
+
+        private synchronized void register() {
+            if (!registered) {
+                m.addReceiveHandler(this, isWeakListener);
+                registered = true;
+            }
+        }
+
+        private synchronized void remove(final Subscriber subscriber) {
+            if (list.remove(subscriber) && list.isEmpty() && (!isWeakListener || eventListeners.isEmpty())) {
+                m.removeReceiveHandler(this);
+                registered = false;
+            }
+        }
+
+        @Override
+        public void handleMessage(final MessageEnvelope envelope, final Throwable e) {
+            final var event = getEvent(envelope, e);
+            for (final var subscriber : list) {
+                try {
+                    subscriber.handleEvent(event);
+                } catch (Throwable ex) {
+                    logger.warn("Receive subscriber failed, ignoring", ex);
+                }
+            }
+        }
+    }
+}
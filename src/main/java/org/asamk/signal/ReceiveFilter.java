@@ -0,0 +1,223 @@
+package org.asamk.signal;
+
+import org.asamk.signal.manager.api.GroupId;
+import org.asamk.signal.manager.api.MessageEnvelope;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Selects the received messages passed to a subscriber.
+ * <p>
+ * Filters are evaluated on the {@link Attributes} of a message, which are extracted from the envelope without
+ * converting it to JSON, so messages that are filtered out are never serialized for the subscriber.
+ * An empty set or null matches every message.
+ */
+public record ReceiveFilter(
+        Set<EnvelopeType> envelopeTypes, Set<String> groupIds, Set<String> senders, Boolean hasAttachments
+) {
+
+    public static final ReceiveFilter ALL = new ReceiveFilter(Set.of(), Set.of(), Set.of(), null);
+
+    /**
+     * @param envelopeTypes names of the envelope types, e.g. "data" or "sync"
+     * @param groupIds      base64 encoded group ids
+     * @param senders       phone numbers or uuids of the senders
+     * @throws IllegalArgumentException if an envelope type is unknown
+     */
+    public static ReceiveFilter from(
+            final List<String> envelopeTypes,
+            final List<String> groupIds,
+            final List<String> senders,
+            final Boolean hasAttachments
+    ) {
+        final var types = EnumSet.noneOf(EnvelopeType.class);
+        for (final var name : envelopeTypes) {
+            types.add(EnvelopeType.from(name));
+        }
+        return new ReceiveFilter(types, Set.copyOf(groupIds), Set.copyOf(senders), hasAttachments);
+    }
+
+    /**
+     * The filter parameters of a query have comma separated values,
+     * e.g. {@code envelopeTypes=data,sync&hasAttachments=true}.
+     *
+     * @param query the URL decoded query parameters
+     * @throws IllegalArgumentException if an envelope type or the hasAttachments value is invalid
+     */
+    public static ReceiveFilter fromQuery(final Map<String, String> query) {
+        final var hasAttachments = query.get("hasAttachments");
+        if (hasAttachments != null && !"true".equals(hasAttachments) && !"false".equals(hasAttachments)) {
+            throw new IllegalArgumentException("Invalid hasAttachments value: " + hasAttachments);
+        }
+        return from(getQueryList(query, "envelopeTypes"),
+                getQueryList(query, "groupIds"),
+                getQueryList(query, "senders"),
+                hasAttachments == null ? null : Boolean.valueOf(hasAttachments));
+    }
+
+    private static List<String> getQueryList(final Map<String, String> query, final String name) {
+        final var value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            return List.of();
+        }
+        return List.of(value.split(","));
+    }
+
+    public boolean matchesAll() {
+        return envelopeTypes.isEmpty() && groupIds.isEmpty() && senders.isEmpty() && hasAttachments == null;
+    }
+
+    public boolean matches(final ReceiveEvent event) {
+        return matchesAll() || matches(event.getAttributes());
+    }
+
+    /**
+     * @param attributes the attributes of a message, or null if they're unknown, then the message always matches
+     */
+    public boolean matches(final Attributes attributes) {
+        if (attributes == null || matchesAll()) {
+            return true;
+        }
+        if (!envelopeTypes.isEmpty() && attributes.envelopeTypes().stream().noneMatch(envelopeTypes::contains)) {
+            return false;
+        }
+        if (!groupIds.isEmpty() && attributes.groupIds().stream().noneMatch(groupIds::contains)) {
+            return false;
+        }
+        if (!senders.isEmpty() && attributes.senders().stream().noneMatch(senders::contains)) {
+            return false;
+        }
+        return hasAttachments == null || hasAttachments == attributes.hasAttachments();
+    }
+
+    public enum EnvelopeType {
+        RECEIPT {
+            @Override
+            public String toString() {
+                return "receipt";
+            }
+        },
+        TYPING {
+            @Override
+            public String toString() {
+                return "typing";
+            }
+        },
+        DATA {
+            @Override
+            public String toString() {
+                return "data";
+            }
+        },
+        EDIT {
+            @Override
+            public String toString() {
+                return "edit";
+            }
+        },
+        SYNC {
+            @Override
+            public String toString() {
+                return "sync";
+            }
+        },
+        CALL {
+            @Override
+            public String toString() {
+                return "call";
+            }
+        },
+        STORY {
+            @Override
+            public String toString() {
+                return "story";
+            }
+        };
+
+        public static EnvelopeType from(final String name) {
+            for (final var type : values()) {
+                if (type.toString().equals(name)) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Unknown envelope type: " + name);
+        }
+    }
+
+    /**
+     * The properties of a received message that can be filtered on.
+     *
+     * @param groupIds base64 encoded ids of the groups the message belongs to
+     * @param senders  phone number and uuid of the sender
+     */
+    public record Attributes(
+            Set<EnvelopeType> envelopeTypes, Set<String> groupIds, Set<String> senders, boolean hasAttachments
+    ) {
+
+        public static final Attributes NONE = new Attributes(Set.of(), Set.of(), Set.of(), false);
+
+        public static Attributes from(final MessageEnvelope envelope) {
+            final var types = EnumSet.noneOf(EnvelopeType.class);
+            final var groupIds = new HashSet<String>();
+            final var senders = new HashSet<String>();
+            var hasAttachments = false;
+
+            envelope.sourceAddress().ifPresent(address -> {
+                address.uuid().ifPresent(uuid -> senders.add(uuid.toString()));
+                address.number().ifPresent(senders::add);
+            });
+            if (envelope.receipt().isPresent()) {
+                types.add(EnvelopeType.RECEIPT);
+            }
+            if (envelope.typing().isPresent()) {
+                types.add(EnvelopeType.TYPING);
+                envelope.typing().get().groupId().map(GroupId::toBase64).ifPresent(groupIds::add);
+            }
+            if (envelope.data().isPresent()) {
+                types.add(EnvelopeType.DATA);
+                hasAttachments |= addData(envelope.data().get(), groupIds);
+            }
+            if (envelope.edit().isPresent()) {
+                types.add(EnvelopeType.EDIT);
+                hasAttachments |= addData(envelope.edit().get().dataMessage(), groupIds);
+            }
+            if (envelope.sync().isPresent()) {
+                types.add(EnvelopeType.SYNC);
+                final var sent = envelope.sync().get().sent();
+                if (sent.isPresent()) {
+                    if (sent.get().message().isPresent()) {
+                        hasAttachments |= addData(sent.get().message().get(), groupIds);
+                    }
+                    if (sent.get().editMessage().isPresent()) {
+                        hasAttachments |= addData(sent.get().editMessage().get().dataMessage(), groupIds);
+                    }
+                    if (sent.get().story().isPresent()) {
+                        hasAttachments |= addStory(sent.get().story().get(), groupIds);
+                    }
+                }
+            }
+            if (envelope.call().isPresent()) {
+                types.add(EnvelopeType.CALL);
+            }
+            if (envelope.story().isPresent()) {
+                types.add(EnvelopeType.STORY);
+                hasAttachments |= addStory(envelope.story().get(), groupIds);
+            }
+            return new Attributes(types, groupIds, senders, hasAttachments);
+        }
+
+        private static boolean addData(final MessageEnvelope.Data data, final Set<String> groupIds) {
+            data.groupContext().map(c -> c.groupId().toBase64()).ifPresent(groupIds::add);
+            return !data.attachments().isEmpty();
+        }
+
+        private static boolean addStory(final MessageEnvelope.Story story, final Set<String> groupIds) {
+            story.groupId().map(GroupId::toBase64).ifPresent(groupIds::add);
+            return story.fileAttachment().isPresent();
+        }
+    }
+}
@@ -16,6 +16,9 @@ public class Commands {
         addCommand(new DeleteLocalAccountDataCommand());
         addCommand(new FinishLinkCommand());
         addCommand(new GetAttachmentCommand());
+        addCommand(new GetDatabaseStatisticsCommand());
+        addCommand(new GetOutboxResultsCommand());
+        addCommand(new GetSendThrottleStatusCommand());
         addCommand(new GetUserStatusCommand());
         addCommand(new JoinGroupCommand());
         addCommand(new JsonRpcDispatcherCommand());
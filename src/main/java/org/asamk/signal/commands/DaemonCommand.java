@@ -6,6 +6,8 @@ import net.sourceforge.argparse4j.inf.Subparser;
 
 import org.asamk.signal.DbusConfig;
 import org.asamk.signal.OutputType;
+import org.asamk.signal.QueuedReceiveMessageHandler;
+import org.asamk.signal.ReceiveEventHub;
 import org.asamk.signal.ReceiveMessageHandler;
 import org.asamk.signal.commands.exceptions.CommandException;
 import org.asamk.signal.commands.exceptions.IOErrorException;
@@ -13,16 +15,18 @@ import org.asamk.signal.commands.exceptions.UnexpectedErrorException;
 import org.asamk.signal.commands.exceptions.UserErrorException;
 import org.asamk.signal.dbus.DbusSignalControlImpl;
 import org.asamk.signal.dbus.DbusSignalImpl;
+import org.asamk.signal.http.EventReplayBuffer;
 import org.asamk.signal.http.HttpServerHandler;
-import org.asamk.signal.json.JsonReceiveMessageHandler;
+import org.asamk.signal.jsonrpc.JsonRpcRequestExecutor;
+import org.asamk.signal.jsonrpc.JsonRpcSocketServer;
 import org.asamk.signal.jsonrpc.SignalJsonRpcDispatcherHandler;
 import org.asamk.signal.manager.Manager;
 import org.asamk.signal.manager.MultiAccountManager;
 import org.asamk.signal.manager.api.ReceiveConfig;
 import org.asamk.signal.output.JsonWriter;
-import org.asamk.signal.output.JsonWriterImpl;
 import org.asamk.signal.output.OutputWriter;
 import org.asamk.signal.output.PlainTextWriter;
+import org.asamk.signal.output.WireFormat;
 import org.asamk.signal.util.IOUtils;
 import org.freedesktop.dbus.connections.impl.DBusConnection;
 import org.freedesktop.dbus.connections.impl.DBusConnectionBuilder;
@@ -34,18 +38,17 @@ import java.io.File;
 import java.io.IOException;
 import java.net.UnixDomainSocketAddress;
 import java.nio.channels.Channel;
-import java.nio.channels.Channels;
 import java.nio.channels.ServerSocketChannel;
-import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
 
 public class DaemonCommand implements MultiLocalCommand, LocalCommand {
 
     private final static Logger logger = LoggerFactory.getLogger(DaemonCommand.class);
 
+    private JsonRpcRequestExecutor requestExecutor;
+    private QueuedReceiveMessageHandler.Config receiveQueueConfig;
+    private WireFormat socketFormat;
+
     @Override
     public String getName() {
         return "daemon";
@@ -70,10 +73,51 @@ public class DaemonCommand implements MultiLocalCommand, LocalCommand {
                 .nargs("?")
                 .setConst("localhost:7583")
                 .help("Expose a JSON-RPC interface on a TCP socket (default localhost:7583).");
+        subparser.addArgument("--socket-format")
+                .help("Wire format of the JSON-RPC UNIX and TCP sockets, cbor uses length-prefixed binary frames.")
+                .type(Arguments.enumStringType(WireFormat.class))
+                .setDefault(WireFormat.JSON);
         subparser.addArgument("--http")
                 .nargs("?")
                 .setConst("localhost:8080")
                 .help("Expose a JSON-RPC interface as http endpoint (default localhost:8080).");
+        subparser.addArgument("--http-rpc-threads")
+                .help("Number of threads executing requests of the http JSON-RPC endpoint.")
+                .type(int.class)
+                .choices(Arguments.range(1, Integer.MAX_VALUE))
+                .setDefault(10);
+        subparser.addArgument("--event-replay-buffer-size")
+                .help("Size in bytes of the recent http events kept for each account, to resume event streams (0 to disable).")
+                .type(long.class)
+                .choices(Arguments.range(0L, Long.MAX_VALUE))
+                .setDefault(1024L * 1024);
+        subparser.addArgument("--event-replay-dir")
+                .help("Also store the recent http events in this directory, to resume event streams after a restart.")
+                .type(File.class);
+        subparser.addArgument("--max-connection-requests")
+                .help("Maximum number of JSON-RPC requests executed concurrently for a single socket connection.")
+                .type(int.class)
+                .choices(Arguments.range(1, Integer.MAX_VALUE))
+                .setDefault(1);
+        subparser.addArgument("--max-concurrent-requests")
+                .help("Maximum number of JSON-RPC requests executed concurrently for all socket connections.")
+                .type(int.class)
+                .choices(Arguments.range(1, Integer.MAX_VALUE))
+                .setDefault(32);
+        subparser.addArgument("--max-batch-requests")
+                .help("Maximum number of requests of a JSON-RPC batch request executed concurrently.")
+                .type(int.class)
+                .choices(Arguments.range(1, Integer.MAX_VALUE))
+                .setDefault(8);
+        subparser.addArgument("--receive-queue-size")
+                .help("Maximum number of received messages queued for a single JSON-RPC or http subscriber.")
+                .type(int.class)
+                .choices(Arguments.range(1, Integer.MAX_VALUE))
+                .setDefault(QueuedReceiveMessageHandler.Config.DEFAULT.queueSize());
+        subparser.addArgument("--receive-queue-overflow")
+                .help("Specify what happens to a subscriber that can't keep up with received messages.")
+                .type(Arguments.enumStringType(QueuedReceiveMessageHandler.OverflowPolicy.class))
+                .setDefault(QueuedReceiveMessageHandler.Config.DEFAULT.overflowPolicy());
         subparser.addArgument("--no-receive-stdout")
                 .help("Don’t print received messages to stdout.")
                 .action(Arguments.storeTrue());
@@ -107,6 +151,10 @@ public class DaemonCommand implements MultiLocalCommand, LocalCommand {
         final var ignoreAttachments = Boolean.TRUE.equals(ns.getBoolean("ignore-attachments"));
         final var ignoreStories = Boolean.TRUE.equals(ns.getBoolean("ignore-stories"));
         final var sendReadReceipts = Boolean.TRUE.equals(ns.getBoolean("send-read-receipts"));
+        requestExecutor = getRequestExecutor(ns);
+        socketFormat = ns.get("socket-format");
+        receiveQueueConfig = new QueuedReceiveMessageHandler.Config(ns.getInt("receive-queue-size"),
+                ns.get("receive-queue-overflow"));
 
         m.setReceiveConfig(new ReceiveConfig(ignoreAttachments, ignoreStories, sendReadReceipts));
         addDefaultReceiveHandler(m, noReceiveStdOut ? null : outputWriter, receiveMode != ReceiveMode.ON_START);
@@ -136,7 +184,12 @@ public class DaemonCommand implements MultiLocalCommand, LocalCommand {
         final var httpAddress = ns.getString("http");
         if (httpAddress != null) {
             final var address = IOUtils.parseInetSocketAddress(httpAddress);
-            final var handler = new HttpServerHandler(address, m);
+            final var handler = new HttpServerHandler(address,
+                    m,
+                    requestExecutor,
+                    receiveQueueConfig,
+                    ns.getInt("http-rpc-threads"),
+                    getEventReplayConfig(ns));
             try {
                 handler.init();
             } catch (IOException ex) {
@@ -182,6 +235,10 @@ public class DaemonCommand implements MultiLocalCommand, LocalCommand {
         final var ignoreAttachments = Boolean.TRUE.equals(ns.getBoolean("ignore-attachments"));
         final var ignoreStories = Boolean.TRUE.equals(ns.getBoolean("ignore-stories"));
         final var sendReadReceipts = Boolean.TRUE.equals(ns.getBoolean("send-read-receipts"));
+        requestExecutor = getRequestExecutor(ns);
+        socketFormat = ns.get("socket-format");
+        receiveQueueConfig = new QueuedReceiveMessageHandler.Config(ns.getInt("receive-queue-size"),
+                ns.get("receive-queue-overflow"));
 
         final var receiveConfig = new ReceiveConfig(ignoreAttachments, ignoreStories, sendReadReceipts);
         c.getManagers().forEach(m -> {
@@ -218,7 +275,12 @@ public class DaemonCommand implements MultiLocalCommand, LocalCommand {
         final var httpAddress = ns.getString("http");
         if (httpAddress != null) {
             final var address = IOUtils.parseInetSocketAddress(httpAddress);
-            final var handler = new HttpServerHandler(address, c);
+            final var handler = new HttpServerHandler(address,
+                    c,
+                    requestExecutor,
+                    receiveQueueConfig,
+                    ns.getInt("http-rpc-threads"),
+                    getEventReplayConfig(ns));
             try {
                 handler.init();
             } catch (IOException ex) {
@@ -248,77 +310,95 @@ public class DaemonCommand implements MultiLocalCommand, LocalCommand {
         }
     }
 
+    private static EventReplayBuffer.Config getEventReplayConfig(final Namespace ns) {
+        final long maxMemorySize = ns.getLong("event-replay-buffer-size");
+        return new EventReplayBuffer.Config(maxMemorySize,
+                ns.get("event-replay-dir"),
+                Math.max(maxMemorySize, EventReplayBuffer.Config.DEFAULT_MAX_SPILL_SIZE));
+    }
+
+    private static JsonRpcRequestExecutor getRequestExecutor(final Namespace ns) {
+        final int maxConnectionRequests = ns.getInt("max-connection-requests");
+        final int maxConcurrentRequests = ns.getInt("max-concurrent-requests");
+        final int maxBatchRequests = ns.getInt("max-batch-requests");
+        return new JsonRpcRequestExecutor(maxConnectionRequests, maxConcurrentRequests, maxBatchRequests);
+    }
+
     private void addDefaultReceiveHandler(Manager m, OutputWriter outputWriter, final boolean isWeakListener) {
-        final var handler = outputWriter instanceof JsonWriter o
-                ? new JsonReceiveMessageHandler(m, o)
-                : outputWriter instanceof PlainTextWriter o
-                        ? new ReceiveMessageHandler(m, o)
-                        : Manager.ReceiveMessageHandler.EMPTY;
-        m.addReceiveHandler(handler, isWeakListener);
+        final ReceiveEventHub.Subscriber subscriber;
+        if (outputWriter instanceof JsonWriter o) {
+            subscriber = event -> o.writeRaw(event.getJson());
+        } else if (outputWriter instanceof PlainTextWriter o) {
+            final var handler = new ReceiveMessageHandler(m, o);
+            subscriber = event -> handler.handleMessage(event.getEnvelope(), event.getException());
+        } else {
+            subscriber = event -> {};
+        }
+        ReceiveEventHub.get(m).subscribe(subscriber, isWeakListener);
     }
 
     private void runSocketSingleAccount(
             final Manager m, final ServerSocketChannel serverChannel, final boolean noReceiveOnStart
     ) {
-        runSocket(serverChannel, channel -> {
-            final var handler = getSignalJsonRpcDispatcherHandler(channel, noReceiveOnStart);
-            handler.handleConnection(m);
+        runSocket(serverChannel, (jsonWriter, closeConnection) -> {
+            final var handler = getSignalJsonRpcDispatcherHandler(jsonWriter, noReceiveOnStart);
+            handler.openConnection(m, closeConnection);
+            return handler;
         });
     }
 
     private void runSocketMultiAccount(
             final MultiAccountManager c, final ServerSocketChannel serverChannel, final boolean noReceiveOnStart
     ) {
-        runSocket(serverChannel, channel -> {
-            final var handler = getSignalJsonRpcDispatcherHandler(channel, noReceiveOnStart);
-            handler.handleConnection(c);
+        runSocket(serverChannel, (jsonWriter, closeConnection) -> {
+            final var handler = getSignalJsonRpcDispatcherHandler(jsonWriter, noReceiveOnStart);
+            handler.openConnection(c, closeConnection);
+            return handler;
         });
     }
 
-    private static final AtomicInteger threadNumber = new AtomicInteger(0);
+    private interface SocketHandlerFactory {
 
-    private void runSocket(final ServerSocketChannel serverChannel, Consumer<SocketChannel> socketHandler) {
-        final var thread = new Thread(() -> {
-            while (true) {
-                final var connectionId = threadNumber.getAndIncrement();
-                final SocketChannel channel;
-                final String clientString;
-                try {
-                    channel = serverChannel.accept();
-                    clientString = channel.getRemoteAddress() + " " + IOUtils.getUnixDomainPrincipal(channel);
-                    logger.info("Accepted new client connection {}: {}", connectionId, clientString);
-                } catch (IOException e) {
-                    logger.error("Failed to accept new socket connection", e);
-                    synchronized (this) {
-                        notifyAll();
-                    }
-                    break;
+        SignalJsonRpcDispatcherHandler open(JsonWriter jsonWriter, Runnable closeConnection);
+    }
+
+    private void runSocket(final ServerSocketChannel serverChannel, final SocketHandlerFactory handlerFactory) {
+        final var server = new JsonRpcSocketServer(serverChannel, (jsonWriter, closeConnection) -> {
+            final var handler = handlerFactory.open(jsonWriter, closeConnection);
+            return new JsonRpcSocketServer.ConnectionHandler() {
+                @Override
+                public void handleMessage(final byte[] message) {
+                    handler.handleMessage(message);
                 }
-                final var connectionThread = new Thread(() -> {
-                    try (final var c = channel) {
-                        socketHandler.accept(c);
-                    } catch (IOException e) {
-                        logger.warn("Failed to close channel", e);
-                    } catch (Throwable e) {
-                        logger.warn("Connection handler failed, closing connection", e);
-                    }
-                    logger.info("Connection {} closed: {}", connectionId, clientString);
-                });
-                connectionThread.setName("daemon-connection-" + connectionId);
-                connectionThread.start();
+
+                @Override
+                public void close() {
+                    handler.closeConnection();
+                }
+            };
+        }, () -> {
+            synchronized (this) {
+                notifyAll();
             }
-        });
-        thread.setName("daemon-listener");
-        thread.start();
+        }, socketFormat);
+        try {
+            server.start();
+        } catch (IOException e) {
+            logger.error("Failed to start socket server", e);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
     }
 
     private SignalJsonRpcDispatcherHandler getSignalJsonRpcDispatcherHandler(
-            final SocketChannel c, final boolean noReceiveOnStart
+            final JsonWriter jsonWriter, final boolean noReceiveOnStart
     ) {
-        final var lineSupplier = IOUtils.getLineSupplier(Channels.newReader(c, StandardCharsets.UTF_8));
-        final var jsonOutputWriter = new JsonWriterImpl(Channels.newWriter(c, StandardCharsets.UTF_8));
-
-        return new SignalJsonRpcDispatcherHandler(jsonOutputWriter, lineSupplier, noReceiveOnStart);
+        return new SignalJsonRpcDispatcherHandler(jsonWriter,
+                null,
+                noReceiveOnStart,
+                requestExecutor,
+                receiveQueueConfig);
     }
 
     private void runDbusSingleAccount(
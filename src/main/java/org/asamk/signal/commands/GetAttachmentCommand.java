@@ -41,11 +41,10 @@ public class GetAttachmentCommand implements JsonRpcLocalCommand {
 
         try (InputStream attachment = m.retrieveAttachment(id)) {
             final var bytes = attachment.readAllBytes();
-            final var base64 = Base64.getEncoder().encodeToString(bytes);
             if (outputWriter instanceof PlainTextWriter writer) {
-                writer.println(base64);
+                writer.println(Base64.getEncoder().encodeToString(bytes));
             } else if (outputWriter instanceof JsonWriter writer) {
-                writer.write(new JsonAttachmentData(base64));
+                writer.write(new JsonAttachmentData(bytes));
             }
         } catch (FileNotFoundException ex) {
             throw new UserErrorException("Could not find attachment with ID: " + id, ex);
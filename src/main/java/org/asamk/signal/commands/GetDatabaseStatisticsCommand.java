@@ -0,0 +1,58 @@
+package org.asamk.signal.commands;
+
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import org.asamk.signal.commands.exceptions.CommandException;
+import org.asamk.signal.json.JsonDatabaseStatistics;
+import org.asamk.signal.manager.Manager;
+import org.asamk.signal.output.JsonWriter;
+import org.asamk.signal.output.OutputWriter;
+import org.asamk.signal.output.PlainTextWriter;
+import org.asamk.signal.util.DateUtils;
+
+public class GetDatabaseStatisticsCommand implements JsonRpcLocalCommand {
+
+    @Override
+    public String getName() {
+        return "getDatabaseStatistics";
+    }
+
+    @Override
+    public void attachToSubparser(final Subparser subparser) {
+        subparser.help("Show size, maintenance state and query latencies of the account database.");
+    }
+
+    @Override
+    public void handleCommand(
+            final Namespace ns, final Manager m, final OutputWriter outputWriter
+    ) throws CommandException {
+        final var statistics = m.getDatabaseStatistics();
+
+        if (outputWriter instanceof PlainTextWriter writer) {
+            writer.println("Size: {} bytes", statistics.size());
+            writer.println("Pages: {}", statistics.pageCount());
+            writer.println("Free pages: {}", statistics.freePageCount());
+            writer.println("Last maintenance: {}",
+                    statistics.lastMaintenanceTimestamp().map(DateUtils::formatTimestamp).orElse("never"));
+            final var connectionWait = statistics.connectionWait();
+            writer.println("Connection wait: {} acquired, {}ms total, {}ms max",
+                    connectionWait.count(),
+                    connectionWait.totalMicros() / 1000,
+                    connectionWait.maxMicros() / 1000);
+            writer.println("Queries:");
+            writer.indent(w -> {
+                for (final var query : statistics.queries()) {
+                    w.println("{}: {} executions, {}ms total, {}ms max",
+                            query.name(),
+                            query.count(),
+                            query.totalMicros() / 1000,
+                            query.maxMicros() / 1000);
+                }
+            });
+        } else {
+            final var writer = (JsonWriter) outputWriter;
+            writer.write(JsonDatabaseStatistics.from(statistics));
+        }
+    }
+}
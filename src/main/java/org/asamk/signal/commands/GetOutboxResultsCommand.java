@@ -0,0 +1,48 @@
+package org.asamk.signal.commands;
+
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import org.asamk.signal.commands.exceptions.CommandException;
+import org.asamk.signal.json.JsonOutboxResult;
+import org.asamk.signal.manager.Manager;
+import org.asamk.signal.output.JsonWriter;
+import org.asamk.signal.output.OutputWriter;
+import org.asamk.signal.output.PlainTextWriter;
+
+public class GetOutboxResultsCommand implements JsonRpcLocalCommand {
+
+    @Override
+    public String getName() {
+        return "getOutboxResults";
+    }
+
+    @Override
+    public void attachToSubparser(final Subparser subparser) {
+        subparser.help("Show the final results of a message queued with send --queue.");
+        subparser.addArgument("-t", "--timestamp")
+                .required(true)
+                .type(long.class)
+                .help("Specify the timestamp of the queued message.");
+    }
+
+    @Override
+    public void handleCommand(
+            final Namespace ns, final Manager m, final OutputWriter outputWriter
+    ) throws CommandException {
+        final var results = m.getOutboxResults(ns.getLong("timestamp"));
+
+        if (outputWriter instanceof PlainTextWriter writer) {
+            for (final var result : results) {
+                writer.println("{}: {} after {} attempts{}",
+                        result.recipient().getLegacyIdentifier(),
+                        result.isSuccess() ? "Success" : "Failed",
+                        result.attempts(),
+                        result.error().map(e -> " (" + e + ")").orElse(""));
+            }
+        } else {
+            final var writer = (JsonWriter) outputWriter;
+            writer.write(results.stream().map(JsonOutboxResult::from).toList());
+        }
+    }
+}
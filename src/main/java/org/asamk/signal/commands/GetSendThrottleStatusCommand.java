@@ -0,0 +1,44 @@
+package org.asamk.signal.commands;
+
+import net.sourceforge.argparse4j.inf.Namespace;
+import net.sourceforge.argparse4j.inf.Subparser;
+
+import org.asamk.signal.commands.exceptions.CommandException;
+import org.asamk.signal.json.JsonSendThrottleStatus;
+import org.asamk.signal.manager.Manager;
+import org.asamk.signal.output.JsonWriter;
+import org.asamk.signal.output.OutputWriter;
+import org.asamk.signal.output.PlainTextWriter;
+
+public class GetSendThrottleStatusCommand implements JsonRpcLocalCommand {
+
+    @Override
+    public String getName() {
+        return "getSendThrottleStatus";
+    }
+
+    @Override
+    public void attachToSubparser(final Subparser subparser) {
+        subparser.help("Show the current send rate limiting of the account.");
+    }
+
+    @Override
+    public void handleCommand(
+            final Namespace ns, final Manager m, final OutputWriter outputWriter
+    ) throws CommandException {
+        final var status = m.getSendThrottleStatus();
+
+        if (outputWriter instanceof PlainTextWriter writer) {
+            if (status.rate() == null) {
+                writer.println("Rate: not paced");
+            } else {
+                writer.println("Rate: {} messages/s", String.format("%.2f", status.rate()));
+            }
+            writer.println("Queued sends: {}", status.queuedSends());
+            writer.println("Next send in: {}ms", status.untilNextSend().toMillis());
+        } else {
+            final var writer = (JsonWriter) outputWriter;
+            writer.write(JsonSendThrottleStatus.from(status));
+        }
+    }
+}
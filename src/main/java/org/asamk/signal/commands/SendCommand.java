@@ -17,7 +17,9 @@ import org.asamk.signal.manager.api.NotAGroupMemberException;
 import org.asamk.signal.manager.api.RecipientIdentifier;
 import org.asamk.signal.manager.api.TextStyle;
 import org.asamk.signal.manager.api.UnregisteredRecipientException;
+import org.asamk.signal.output.JsonWriter;
 import org.asamk.signal.output.OutputWriter;
+import org.asamk.signal.output.PlainTextWriter;
 import org.asamk.signal.util.CommandUtil;
 import org.asamk.signal.util.Hex;
 import org.asamk.signal.util.IOUtils;
@@ -27,7 +29,9 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -94,6 +98,9 @@ public class SendCommand implements JsonRpcLocalCommand {
         subparser.addArgument("--edit-timestamp")
                 .type(long.class)
                 .help("Specify the timestamp of a previous message with the recipient or group to send an edited message.");
+        subparser.addArgument("--queue")
+                .help("Queue the message in the outbox and return immediately, it is sent in the background while receiving messages.")
+                .action(Arguments.storeTrue());
     }
 
     @Override
@@ -222,6 +229,10 @@ public class SendCommand implements JsonRpcLocalCommand {
                     previews,
                     Optional.ofNullable((storyReply)),
                     textStyles);
+            if (Boolean.TRUE.equals(ns.getBoolean("queue"))) {
+                queueMessage(m, message, recipientIdentifiers, editTimestamp, outputWriter);
+                return;
+            }
             var results = editTimestamp != null
                     ? m.sendEditMessage(message, recipientIdentifiers, editTimestamp)
                     : m.sendMessage(message, recipientIdentifiers);
@@ -238,6 +249,33 @@ public class SendCommand implements JsonRpcLocalCommand {
         }
     }
 
+    private void queueMessage(
+            final Manager m,
+            final Message message,
+            final Set<RecipientIdentifier> recipientIdentifiers,
+            final Long editTimestamp,
+            final OutputWriter outputWriter
+    ) throws UnregisteredRecipientException, UserErrorException {
+        if (editTimestamp != null) {
+            throw new UserErrorException("Edit messages can't be queued");
+        }
+        final var singleRecipients = recipientIdentifiers.stream()
+                .filter(r -> r instanceof RecipientIdentifier.Single)
+                .map(RecipientIdentifier.Single.class::cast)
+                .collect(Collectors.toSet());
+        if (singleRecipients.size() != recipientIdentifiers.size()) {
+            throw new UserErrorException("Only messages to individual recipients can be queued");
+        }
+
+        final var timestamp = m.queueMessage(message, singleRecipients);
+        if (outputWriter instanceof PlainTextWriter writer) {
+            writer.println("{}", timestamp);
+        } else {
+            final var writer = (JsonWriter) outputWriter;
+            writer.write(Map.of("timestamp", timestamp));
+        }
+    }
+
     private List<Message.Mention> parseMentions(
             final String selfNumber, final List<String> mentionStrings
     ) throws UserErrorException {
@@ -6,6 +6,7 @@ import org.asamk.signal.manager.Manager;
 import org.asamk.signal.manager.api.AttachmentInvalidException;
 import org.asamk.signal.manager.api.Configuration;
 import org.asamk.signal.manager.api.Contact;
+import org.asamk.signal.manager.api.DatabaseStatistics;
 import org.asamk.signal.manager.api.Device;
 import org.asamk.signal.manager.api.DeviceLinkUrl;
 import org.asamk.signal.manager.api.Group;
@@ -25,6 +26,7 @@ import org.asamk.signal.manager.api.Message;
 import org.asamk.signal.manager.api.MessageEnvelope;
 import org.asamk.signal.manager.api.NotAGroupMemberException;
 import org.asamk.signal.manager.api.NotPrimaryDeviceException;
+import org.asamk.signal.manager.api.OutboxResult;
 import org.asamk.signal.manager.api.Pair;
 import org.asamk.signal.manager.api.ReceiveConfig;
 import org.asamk.signal.manager.api.Recipient;
@@ -32,6 +34,7 @@ import org.asamk.signal.manager.api.RecipientAddress;
 import org.asamk.signal.manager.api.RecipientIdentifier;
 import org.asamk.signal.manager.api.SendGroupMessageResults;
 import org.asamk.signal.manager.api.SendMessageResults;
+import org.asamk.signal.manager.api.SendThrottleStatus;
 import org.asamk.signal.manager.api.StickerPack;
 import org.asamk.signal.manager.api.StickerPackInvalidException;
 import org.asamk.signal.manager.api.StickerPackUrl;
@@ -374,6 +377,16 @@ public class DbusManagerImpl implements Manager {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public long queueMessage(final Message message, final Set<RecipientIdentifier.Single> recipients) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<OutboxResult> getOutboxResults(final long timestamp) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public SendMessageResults sendRemoteDeleteMessage(
             final long targetSentTimestamp, final Set<RecipientIdentifier> recipients
@@ -523,6 +536,14 @@ public class DbusManagerImpl implements Manager {
         }
     }
 
+    @Override
+    public void addOutboxListener(final OutboxListener listener) {
+    }
+
+    @Override
+    public void removeOutboxListener(final OutboxListener listener) {
+    }
+
     @Override
     public void receiveMessages(
             Optional<Duration> timeout, Optional<Integer> maxMessages, ReceiveMessageHandler handler
@@ -679,6 +700,16 @@ public class DbusManagerImpl implements Manager {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public DatabaseStatistics getDatabaseStatistics() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public SendThrottleStatus getSendThrottleStatus() {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public void addAddressChangedListener(final Runnable listener) {
     }
@@ -690,6 +721,13 @@ public class DbusManagerImpl implements Manager {
         }
     }
 
+    @Override
+    public void removeClosedListener(final Runnable listener) {
+        synchronized (closedListeners) {
+            closedListeners.remove(listener);
+        }
+    }
+
     @Override
     public void close() {
         synchronized (this) {
@@ -702,10 +740,13 @@ public class DbusManagerImpl implements Manager {
             weakHandlers.clear();
             messageHandlers.clear();
         }
+        final List<Runnable> listeners;
         synchronized (closedListeners) {
-            closedListeners.forEach(Runnable::run);
+            listeners = new ArrayList<>(closedListeners);
             closedListeners.clear();
         }
+        // Not run while holding the lock, a listener may remove itself
+        listeners.forEach(Runnable::run);
     }
 
     private SendMessageResults handleMessage(
@@ -0,0 +1,477 @@
+package org.asamk.signal.http;
+
+import org.asamk.signal.ReceiveEvent;
+import org.asamk.signal.ReceiveEventHub;
+import org.asamk.signal.ReceiveFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the recently received events of an account, so a reconnecting event stream client can resume with the
+ * Last-Event-ID header.
+ * <p>
+ * The newest events are kept in memory up to the configured size. If a spill directory is configured, all events are
+ * additionally appended to a log file, so older events and events from before a restart can be replayed as well.
+ * <p>
+ * The receive thread only queues the events, they're serialized and written to the log file on a separate thread.
+ */
+public class EventReplayBuffer implements ReceiveEventHub.Subscriber, AutoCloseable {
+
+    private final static Logger logger = LoggerFactory.getLogger(EventReplayBuffer.class);
+
+    private static final AtomicInteger threadNumber = new AtomicInteger(0);
+    private static final ExecutorService writers = Executors.newCachedThreadPool(r -> {
+        final var thread = new Thread(r);
+        thread.setName("event-replay-" + threadNumber.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Duration PENDING_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Config config;
+    private final File spillFile;
+    private final File oldSpillFile;
+
+    // Guarded by pending
+    private final ArrayDeque<ReceiveEvent> pending = new ArrayDeque<>();
+    private boolean writing = false;
+    private boolean closed = false;
+
+    // Guarded by this
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private long size = 0;
+    // Events up to this id are no longer available in memory
+    private long memoryDroppedUpTo;
+    // Events up to this id are no longer available at all
+    private long droppedUpTo;
+    private OutputStream spillOutput;
+    private long spillFileSize = 0;
+    private long lastSpilledId = 0;
+    // The size of the complete lines that have been flushed to the file, only these are read for a replay
+    private long flushedSpillSize = 0;
+    private long lastFlushedId = 0;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @param name identifies the account in the spill file name
+     */
+    public EventReplayBuffer(final String name, final Config config) {
+        this.config = config;
+        // Events received before this buffer was created are lost, unless they are available in the spill file
+        this.memoryDroppedUpTo = System.currentTimeMillis() * 1000;
+        this.droppedUpTo = memoryDroppedUpTo;
+        if (config.spillDirectory() == null) {
+            this.spillFile = null;
+            this.oldSpillFile = null;
+            return;
+        }
+
+        final var fileName = name.replaceAll("[^A-Za-z0-9+_-]", "_");
+        this.spillFile = new File(config.spillDirectory(), fileName + ".events");
+        this.oldSpillFile = new File(config.spillDirectory(), fileName + ".events.old");
+        try {
+            Files.createDirectories(config.spillDirectory().toPath());
+            final var firstId = readFirstId(oldSpillFile.exists() ? oldSpillFile : spillFile);
+            if (firstId > 0) {
+                droppedUpTo = firstId - 1;
+            }
+            spillFileSize = spillFile.length();
+            flushedSpillSize = spillFileSize;
+            spillOutput = new BufferedOutputStream(Files.newOutputStream(spillFile.toPath(),
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND));
+        } catch (IOException e) {
+            logger.warn("Failed to open event spill file {}, only keeping events in memory: {}",
+                    spillFile,
+                    e.getMessage());
+            spillOutput = null;
+        }
+    }
+
+    /**
+     * Called on the receive thread, the event is only queued.
+     */
+    @Override
+    public void handleEvent(final ReceiveEvent event) {
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            pending.add(event);
+            if (!writing) {
+                writing = true;
+                writers.execute(this::writePending);
+            }
+        }
+    }
+
+    /**
+     * Get the events after the given id, including the events that have been received but not yet buffered.
+     * <p>
+     * The events from the spill files are read while iterating, the returned replay has to be closed.
+     *
+     * @return the events, ordered by id, and whether no event after the given id has been dropped
+     */
+    public Replay getEventsAfter(final long lastEventId) {
+        awaitPending();
+        final var readers = new ArrayList<BufferedReader>();
+        final List<Entry> memoryEntries;
+        final boolean complete;
+        synchronized (this) {
+            complete = lastEventId >= droppedUpTo;
+            if (complete) {
+                hitCount++;
+            } else {
+                missCount++;
+            }
+            if (lastEventId >= memoryDroppedUpTo || spillOutput == null) {
+                memoryEntries = entries.stream().filter(e -> e.id() > lastEventId).toList();
+            } else {
+                // Only open the files here, they're read without holding the lock. Events written after this point
+                // are taken from memory instead.
+                openSpillFile(oldSpillFile, oldSpillFile.length(), readers);
+                openSpillFile(spillFile, flushedSpillSize, readers);
+                final var spilledUpTo = lastFlushedId;
+                memoryEntries = entries.stream().filter(e -> e.id() > Math.max(lastEventId, spilledUpTo)).toList();
+            }
+        }
+        final var spilledEvents = readers.stream()
+                .flatMap(BufferedReader::lines)
+                .map(EventReplayBuffer::parseLine)
+                .filter(e -> e != null && e.id() > lastEventId);
+        final var events = Stream.concat(spilledEvents, memoryEntries.stream()).onClose(() -> {
+            for (final var reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        });
+        return new Replay(events, complete);
+    }
+
+    public synchronized Status getStatus() {
+        return new Status(entries.size(), size, hitCount, missCount);
+    }
+
+    /**
+     * Stop buffering events and close the spill file.
+     */
+    @Override
+    public void close() {
+        synchronized (pending) {
+            closed = true;
+        }
+        awaitPending();
+        synchronized (this) {
+            if (spillOutput != null) {
+                try {
+                    spillOutput.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close event spill file: {}", e.getMessage());
+                }
+                spillOutput = null;
+            }
+        }
+    }
+
+    private void writePending() {
+        while (true) {
+            final ReceiveEvent event;
+            synchronized (pending) {
+                event = pending.poll();
+            }
+            if (event == null) {
+                // Flush once for all events that were pending
+                flushSpillOutput();
+                synchronized (pending) {
+                    if (pending.isEmpty()) {
+                        writing = false;
+                        pending.notifyAll();
+                        return;
+                    }
+                }
+                continue;
+            }
+            try {
+                final var json = new String(event.getJson(), StandardCharsets.UTF_8);
+                add(new Entry(event.getId(), json, event.getAttributes()));
+            } catch (Throwable e) {
+                logger.warn("Failed to buffer event {} for replay, ignoring", event.getId(), e);
+            }
+        }
+    }
+
+    private void awaitPending() {
+        synchronized (pending) {
+            final var deadline = System.nanoTime() + PENDING_TIMEOUT.toNanos();
+            try {
+                while (writing) {
+                    final var remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMillis <= 0) {
+                        logger.debug("Timed out waiting for {} events to be buffered", pending.size());
+                        return;
+                    }
+                    pending.wait(remainingMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    synchronized void add(final Entry entry) {
+        entries.add(entry);
+        size += entry.json().length();
+        while (size > config.maxMemorySize() && entries.size() > 1) {
+            final var dropped = entries.poll();
+            size -= dropped.json().length();
+            memoryDroppedUpTo = dropped.id();
+        }
+        if (spillOutput == null) {
+            droppedUpTo = memoryDroppedUpTo;
+        } else {
+            spill(entry);
+        }
+    }
+
+    private synchronized void flushSpillOutput() {
+        if (spillOutput == null) {
+            return;
+        }
+        try {
+            spillOutput.flush();
+            flushedSpillSize = spillFileSize;
+            lastFlushedId = lastSpilledId;
+        } catch (IOException e) {
+            disableSpill(e);
+        }
+    }
+
+    private void spill(final Entry entry) {
+        try {
+            if (spillFileSize > config.maxSpillSize() / 2) {
+                // Keep the previous file, so at least half of the configured size is always available
+                spillOutput.close();
+                droppedUpTo = Math.max(droppedUpTo, readFirstId(spillFile) - 1);
+                Files.move(spillFile.toPath(), oldSpillFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                spillOutput = new BufferedOutputStream(Files.newOutputStream(spillFile.toPath()));
+                spillFileSize = 0;
+                flushedSpillSize = 0;
+            }
+            final var line = entry.id() + "\t" + encodeAttributes(entry.attributes()) + "\t" + entry.json() + "\n";
+            final var bytes = line.getBytes(StandardCharsets.UTF_8);
+            spillOutput.write(bytes);
+            spillFileSize += bytes.length;
+            lastSpilledId = entry.id();
+        } catch (IOException e) {
+            disableSpill(e);
+        }
+    }
+
+    private void disableSpill(final IOException e) {
+        logger.warn("Failed to write event spill file, only keeping events in memory: {}", e.getMessage());
+        try {
+            spillOutput.close();
+        } catch (IOException ignored) {
+        }
+        spillOutput = null;
+        droppedUpTo = memoryDroppedUpTo;
+    }
+
+    /**
+     * Open the file for reading up to the given size, which excludes lines that haven't been completely written yet.
+     */
+    private static void openSpillFile(final File file, final long size, final List<BufferedReader> readers) {
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            final var input = Files.newInputStream(file.toPath());
+            readers.add(new BufferedReader(new InputStreamReader(new LimitedInputStream(input, size),
+                    StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            logger.warn("Failed to read event spill file {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static long readFirstId(final File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (final var reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            final var entry = parseLine(reader.readLine());
+            return entry == null ? 0 : entry.id();
+        }
+    }
+
+    /**
+     * Parse a line with id, attributes and json, separated by tabs, which can't occur in the compact json.
+     * Lines written by older versions don't have the attributes.
+     */
+    private static Entry parseLine(final String line) {
+        if (line == null) {
+            return null;
+        }
+        final var separator = line.indexOf('\t');
+        if (separator < 0) {
+            return null;
+        }
+        final long id;
+        try {
+            id = Long.parseLong(line.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        final var attributesSeparator = line.indexOf('\t', separator + 1);
+        if (attributesSeparator < 0) {
+            return new Entry(id, line.substring(separator + 1), null);
+        }
+        return new Entry(id,
+                line.substring(attributesSeparator + 1),
+                decodeAttributes(line.substring(separator + 1, attributesSeparator)));
+    }
+
+    /**
+     * Encode the attributes as envelope types, group ids and senders, each comma separated, and the attachments flag.
+     * None of the values can contain a comma or a semicolon.
+     */
+    private static String encodeAttributes(final ReceiveFilter.Attributes attributes) {
+        return String.join(",", attributes.envelopeTypes().stream().map(Object::toString).toList())
+                + ";"
+                + String.join(",", attributes.groupIds())
+                + ";"
+                + String.join(",", attributes.senders())
+                + ";"
+                + (attributes.hasAttachments() ? "1" : "0");
+    }
+
+    private static ReceiveFilter.Attributes decodeAttributes(final String value) {
+        final var parts = value.split(";", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        final var envelopeTypes = EnumSet.noneOf(ReceiveFilter.EnvelopeType.class);
+        try {
+            splitList(parts[0]).forEach(t -> envelopeTypes.add(ReceiveFilter.EnvelopeType.from(t)));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return new ReceiveFilter.Attributes(envelopeTypes,
+                Set.copyOf(splitList(parts[1])),
+                Set.copyOf(splitList(parts[2])),
+                "1".equals(parts[3]));
+    }
+
+    private static List<String> splitList(final String value) {
+        return value.isEmpty() ? List.of() : List.of(value.split(","));
+    }
+
+    /**
+     * @param maxMemorySize  maximum size of the events kept in memory, in bytes (assuming mostly ASCII JSON)
+     * @param spillDirectory directory for the event log files, or null to only keep events in memory
+     * @param maxSpillSize   maximum size of the log files of an account, in bytes
+     */
+    public record Config(long maxMemorySize, File spillDirectory, long maxSpillSize) {
+
+        public static final long DEFAULT_MAX_SPILL_SIZE = 64L * 1024 * 1024;
+    }
+
+    /**
+     * @param attributes the attributes for receive filters, null if they're unknown
+     */
+    public record Entry(long id, String json, ReceiveFilter.Attributes attributes) {}
+
+    /**
+     * @param events   the events, read lazily from the spill files
+     * @param complete false, if some events after the requested id are no longer available
+     */
+    public record Replay(Stream<Entry> events, boolean complete) implements AutoCloseable {
+
+        @Override
+        public void close() {
+            events.close();
+        }
+    }
+
+    public record Status(int eventCount, long size, long hitCount, long missCount) {}
+
+    /**
+     * Reads at most the given number of bytes from the wrapped stream.
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private LimitedInputStream(final InputStream in, final long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final var b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            final var read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final var skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -1,73 +1,149 @@
 package org.asamk.signal.http;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 
+import org.asamk.signal.QueuedReceiveMessageHandler;
+import org.asamk.signal.ReceiveEventHub;
+import org.asamk.signal.ReceiveFilter;
 import org.asamk.signal.commands.Commands;
-import org.asamk.signal.json.JsonReceiveMessageHandler;
+import org.asamk.signal.json.JsonDatabaseStatistics;
+import org.asamk.signal.json.JsonEventReplayStatus;
+import org.asamk.signal.json.JsonReceiveSubscriberStatus;
+import org.asamk.signal.json.JsonSendThrottleStatus;
 import org.asamk.signal.jsonrpc.JsonRpcReader;
+import org.asamk.signal.jsonrpc.JsonRpcRequestExecutor;
 import org.asamk.signal.jsonrpc.JsonRpcResponse;
 import org.asamk.signal.jsonrpc.JsonRpcSender;
 import org.asamk.signal.jsonrpc.SignalJsonRpcCommandHandler;
 import org.asamk.signal.manager.Manager;
 import org.asamk.signal.manager.MultiAccountManager;
 import org.asamk.signal.manager.api.Pair;
+import org.asamk.signal.output.WireFormat;
 import org.asamk.signal.util.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpServerHandler {
 
     private final static Logger logger = LoggerFactory.getLogger(HttpServerHandler.class);
 
-    private final ObjectMapper objectMapper = Util.createJsonObjectMapper();
-
     private final InetSocketAddress address;
 
     private final SignalJsonRpcCommandHandler commandHandler;
     private final MultiAccountManager c;
     private final Manager m;
-
-    public HttpServerHandler(final InetSocketAddress address, final Manager m) {
+    private final JsonRpcRequestExecutor requestExecutor;
+    private final QueuedReceiveMessageHandler.Config receiveQueueConfig;
+    private final int rpcThreads;
+    private final EventReplayBuffer.Config replayConfig;
+    private final ServerSentEventHub sseHub = new ServerSentEventHub();
+    private final Map<Manager, EventReplayBuffer> replayBuffers = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger nextStreamId = new AtomicInteger(0);
+    private static final AtomicInteger threadNumber = new AtomicInteger(0);
+
+    public HttpServerHandler(
+            final InetSocketAddress address,
+            final Manager m,
+            final JsonRpcRequestExecutor requestExecutor,
+            final QueuedReceiveMessageHandler.Config receiveQueueConfig,
+            final int rpcThreads,
+            final EventReplayBuffer.Config replayConfig
+    ) {
         this.address = address;
         commandHandler = new SignalJsonRpcCommandHandler(m, Commands::getCommand);
         this.c = null;
         this.m = m;
+        this.requestExecutor = requestExecutor;
+        this.receiveQueueConfig = receiveQueueConfig;
+        this.rpcThreads = rpcThreads;
+        this.replayConfig = replayConfig;
     }
 
-    public HttpServerHandler(final InetSocketAddress address, final MultiAccountManager c) {
+    public HttpServerHandler(
+            final InetSocketAddress address,
+            final MultiAccountManager c,
+            final JsonRpcRequestExecutor requestExecutor,
+            final QueuedReceiveMessageHandler.Config receiveQueueConfig,
+            final int rpcThreads,
+            final EventReplayBuffer.Config replayConfig
+    ) {
         this.address = address;
         commandHandler = new SignalJsonRpcCommandHandler(c, Commands::getCommand);
         this.c = c;
         this.m = null;
+        this.requestExecutor = requestExecutor;
+        this.receiveQueueConfig = receiveQueueConfig;
+        this.rpcThreads = rpcThreads;
+        this.replayConfig = replayConfig;
     }
 
     public void init() throws IOException {
         logger.info("Starting server on " + address.toString());
 
-        final var server = HttpServer.create(address, 0);
-        server.setExecutor(Executors.newFixedThreadPool(10));
+        if (replayConfig.maxMemorySize() > 0) {
+            if (m != null) {
+                addReplayBuffer(m);
+            } else {
+                c.getManagers().forEach(this::addReplayBuffer);
+                c.addOnManagerAddedHandler(this::addReplayBuffer);
+                c.addOnManagerRemovedHandler(this::removeReplayBuffer);
+            }
+        }
 
-        server.createContext("/api/v1/rpc", this::handleRpcEndpoint);
+        final var server = HttpServer.create(address, 0);
+        // Only dispatches requests, event streams and RPC requests don't block these threads
+        server.setExecutor(Executors.newFixedThreadPool(4));
+
+        final var rpcExecutor = Executors.newFixedThreadPool(rpcThreads, r -> {
+            final var thread = new Thread(r);
+            thread.setName("http-rpc-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/api/v1/rpc", httpExchange -> rpcExecutor.execute(() -> {
+            try {
+                handleRpcEndpoint(httpExchange);
+            } catch (IOException e) {
+                logger.debug("Failed to send http response: {}", e.getMessage());
+                httpExchange.close();
+            }
+        }));
         server.createContext("/api/v1/events", this::handleEventsEndpoint);
         server.createContext("/api/v1/check", this::handleCheckEndpoint);
+        server.createContext("/api/v1/metrics", this::handleMetricsEndpoint);
 
         server.start();
     }
 
     private void sendResponse(int status, Object response, HttpExchange httpExchange) throws IOException {
+        sendResponse(status, response, WireFormat.JSON, httpExchange);
+    }
+
+    private void sendResponse(
+            int status, Object response, WireFormat wireFormat, HttpExchange httpExchange
+    ) throws IOException {
         if (response != null) {
-            final var byteResponse = objectMapper.writeValueAsBytes(response);
+            final var byteResponse = wireFormat.getObjectMapper().writeValueAsBytes(response);
 
-            httpExchange.getResponseHeaders().add("Content-Type", "application/json");
+            httpExchange.getResponseHeaders().add("Content-Type", wireFormat.getContentType());
             httpExchange.sendResponseHeaders(status, byteResponse.length);
 
             httpExchange.getResponseBody().write(byteResponse);
@@ -89,7 +165,11 @@ public class HttpServerHandler {
         }
 
         final var contentType = httpExchange.getRequestHeaders().getFirst("Content-Type");
-        if (contentType == null || !contentType.startsWith("application/json")) {
+        final var wireFormat = contentType == null ? null : Arrays.stream(WireFormat.values())
+                .filter(f -> contentType.startsWith(f.getContentType()))
+                .findFirst()
+                .orElse(null);
+        if (wireFormat == null) {
             sendResponse(415, null, httpExchange);
             return;
         }
@@ -103,14 +183,16 @@ public class HttpServerHandler {
                 }
 
                 result[0] = s;
-            });
+            }, wireFormat);
 
-            final var jsonRpcReader = new JsonRpcReader(jsonRpcSender, httpExchange.getRequestBody());
-            jsonRpcReader.readMessages((method, params) -> commandHandler.handleRequest(objectMapper, method, params),
+            final var jsonRpcReader = new JsonRpcReader(jsonRpcSender,
+                    httpExchange.getRequestBody(),
+                    requestExecutor);
+            jsonRpcReader.readMessages(commandHandler::handleRequest,
                     response -> logger.debug("Received unexpected response for id {}", response.getId()));
 
             if (result[0] != null) {
-                sendResponse(200, result[0], httpExchange);
+                sendResponse(200, result[0], wireFormat, httpExchange);
             } else {
                 sendResponse(201, null, httpExchange);
             }
@@ -121,6 +203,7 @@ public class HttpServerHandler {
                     JsonRpcResponse.forError(new JsonRpcResponse.Error(JsonRpcResponse.Error.INTERNAL_ERROR,
                             "An internal server error has occurred.",
                             null), null),
+                    wireFormat,
                     httpExchange);
         }
     }
@@ -136,7 +219,7 @@ public class HttpServerHandler {
         }
 
         try {
-            final var queryString = httpExchange.getRequestURI().getQuery();
+            final var queryString = httpExchange.getRequestURI().getRawQuery();
             final var query = queryString == null ? Map.<String, String>of() : Util.getQueryMap(queryString);
 
             List<Manager> managers = getManagerFromQuery(query);
@@ -144,43 +227,46 @@ public class HttpServerHandler {
                 sendResponse(400, null, httpExchange);
                 return;
             }
+            final ReceiveFilter filter;
+            try {
+                filter = ReceiveFilter.fromQuery(query);
+            } catch (IllegalArgumentException e) {
+                logger.debug("Invalid event filter: {}", e.getMessage());
+                sendResponse(400, null, httpExchange);
+                return;
+            }
 
             httpExchange.getResponseHeaders().add("Content-Type", "text/event-stream");
             httpExchange.sendResponseHeaders(200, 0);
             final var sender = new ServerSentEventSender(httpExchange.getResponseBody());
-
-            final var shouldStop = new AtomicBoolean(false);
-            final var handlers = subscribeReceiveHandlers(managers, sender, () -> {
-                shouldStop.set(true);
-                synchronized (this) {
-                    this.notify();
+            final var lastEventId = getLastEventId(httpExchange);
+
+            // The handler returns while the stream stays open, it's closed when sending an event or keep-alive fails
+            final var handlers = new ArrayList<Pair<Manager, ReceiveEventHub.Subscriber>>();
+            final var stream = sseHub.open(sender, httpExchange.getResponseBody(), managers, () -> {
+                synchronized (handlers) {
+                    handlers.forEach(this::unsubscribeReceiveHandler);
+                    handlers.clear();
                 }
             });
-
-            try {
-                while (true) {
-                    synchronized (this) {
-                        wait(15_000);
-                    }
-                    if (shouldStop.get()) {
-                        break;
+            sseHub.execute(() -> {
+                // New events wait until the replay is complete, as sending an event requires the stream lock
+                synchronized (stream) {
+                    synchronized (handlers) {
+                        if (stream.isClosed()) {
+                            return;
+                        }
+                        handlers.addAll(subscribeReceiveHandlers(managers, stream, filter));
                     }
-
-                    try {
-                        sender.sendKeepAlive();
-                    } catch (IOException e) {
-                        break;
+                    if (lastEventId != null) {
+                        try {
+                            replayEvents(managers, stream, lastEventId, filter);
+                        } catch (IOException e) {
+                            stream.close();
+                        }
                     }
                 }
-            } finally {
-                for (final var pair : handlers) {
-                    unsubscribeReceiveHandler(pair);
-                }
-                try {
-                    httpExchange.getResponseBody().close();
-                } catch (IOException ignored) {
-                }
-            }
+            });
         } catch (Throwable aEx) {
             logger.error("Failed to process request.", aEx);
             sendResponse(500, null, httpExchange);
@@ -200,6 +286,52 @@ public class HttpServerHandler {
         sendResponse(200, null, httpExchange);
     }
 
+    private void handleMetricsEndpoint(HttpExchange httpExchange) throws IOException {
+        if (!"/api/v1/metrics".equals(httpExchange.getRequestURI().getPath())) {
+            sendResponse(404, null, httpExchange);
+            return;
+        }
+        if (!"GET".equals(httpExchange.getRequestMethod())) {
+            sendResponse(405, null, httpExchange);
+            return;
+        }
+
+        try {
+            final var queryString = httpExchange.getRequestURI().getRawQuery();
+            final var query = queryString == null ? Map.<String, String>of() : Util.getQueryMap(queryString);
+
+            List<Manager> managers = getManagerFromQuery(query);
+            if (managers == null) {
+                sendResponse(400, null, httpExchange);
+                return;
+            }
+
+            final var metrics = new HashMap<String, Object>();
+            for (final var manager : managers) {
+                final var accountMetrics = new HashMap<String, Object>(Map.of("database",
+                                JsonDatabaseStatistics.from(manager.getDatabaseStatistics()),
+                                "sendThrottle",
+                                JsonSendThrottleStatus.from(manager.getSendThrottleStatus()),
+                                "receiveSubscribers",
+                                QueuedReceiveMessageHandler.getStatus(manager)
+                                        .stream()
+                                        .map(JsonReceiveSubscriberStatus::from)
+                                        .toList(),
+                                "eventStreams",
+                                sseHub.getConnectionCount(manager)));
+                final var replayBuffer = replayBuffers.get(manager);
+                if (replayBuffer != null) {
+                    accountMetrics.put("eventReplay", JsonEventReplayStatus.from(replayBuffer.getStatus()));
+                }
+                metrics.put(manager.getSelfNumber(), accountMetrics);
+            }
+            sendResponse(200, metrics, httpExchange);
+        } catch (Throwable aEx) {
+            logger.error("Failed to process request.", aEx);
+            sendResponse(500, null, httpExchange);
+        }
+    }
+
     private List<Manager> getManagerFromQuery(final Map<String, String> query) {
         List<Manager> managers;
         if (m != null) {
@@ -219,30 +351,108 @@ public class HttpServerHandler {
         return managers;
     }
 
-    private List<Pair<Manager, Manager.ReceiveMessageHandler>> subscribeReceiveHandlers(
-            final List<Manager> managers, final ServerSentEventSender sender, Callable unsubscribe
+    private static Long getLastEventId(final HttpExchange httpExchange) {
+        final var lastEventId = httpExchange.getRequestHeaders().getFirst("Last-Event-ID");
+        if (lastEventId == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            logger.debug("Ignoring invalid Last-Event-ID: {}", lastEventId);
+            return null;
+        }
+    }
+
+    private void addReplayBuffer(final Manager m) {
+        final var buffer = new EventReplayBuffer(m.getSelfNumber(), replayConfig);
+        replayBuffers.put(m, buffer);
+        ReceiveEventHub.get(m).addEventListener(buffer);
+    }
+
+    private void removeReplayBuffer(final Manager m) {
+        final var buffer = replayBuffers.remove(m);
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    /**
+     * Send the buffered events after the given id that match the filter, ordered by id.
+     * The events of the accounts are merged while they're read, without loading all of them first.
+     */
+    private void replayEvents(
+            final List<Manager> managers,
+            final ServerSentEventHub.Stream stream,
+            final long lastEventId,
+            final ReceiveFilter filter
+    ) throws IOException {
+        final var replays = new ArrayList<EventReplayBuffer.Replay>();
+        try {
+            final var cursors = new PriorityQueue<ReplayCursor>(Comparator.comparingLong(c -> c.entry().id()));
+            for (final var manager : managers) {
+                final var buffer = replayBuffers.get(manager);
+                if (buffer == null) {
+                    continue;
+                }
+                final var replay = buffer.getEventsAfter(lastEventId);
+                replays.add(replay);
+                if (!replay.complete()) {
+                    logger.debug("Some events after {} are no longer available for replay", lastEventId);
+                }
+                final var events = replay.events().filter(e -> filter.matches(e.attributes())).iterator();
+                if (events.hasNext()) {
+                    cursors.add(new ReplayCursor(manager, events, events.next()));
+                }
+            }
+            while (!cursors.isEmpty()) {
+                final var cursor = cursors.poll();
+                stream.sendEvent(cursor.manager(), cursor.entry().id(), cursor.entry().json());
+                if (cursor.events().hasNext()) {
+                    cursors.add(new ReplayCursor(cursor.manager(), cursor.events(), cursor.events().next()));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            replays.forEach(EventReplayBuffer.Replay::close);
+        }
+    }
+
+    private List<Pair<Manager, ReceiveEventHub.Subscriber>> subscribeReceiveHandlers(
+            final List<Manager> managers, final ServerSentEventHub.Stream stream, final ReceiveFilter filter
     ) {
+        final var streamId = nextStreamId.getAndIncrement();
         return managers.stream().map(m1 -> {
-            final var receiveMessageHandler = new JsonReceiveMessageHandler(m1, s -> {
+            final ReceiveEventHub.Subscriber receiveMessageHandler = event -> {
                 try {
-                    sender.sendEvent(null, "receive", List.of(objectMapper.writeValueAsString(s)));
+                    stream.sendEvent(m1, event.getId(), new String(event.getJson(), StandardCharsets.UTF_8));
                 } catch (IOException e) {
-                    unsubscribe.call();
+                    stream.close();
                 }
-            });
-            m1.addReceiveHandler(receiveMessageHandler);
-            return new Pair<>(m1, (Manager.ReceiveMessageHandler) receiveMessageHandler);
+            };
+            final var queuedHandler = new QueuedReceiveMessageHandler("sse-stream-" + streamId,
+                    m1,
+                    receiveMessageHandler,
+                    receiveQueueConfig,
+                    filter,
+                    stream::close);
+            ReceiveEventHub.get(m1).subscribe(queuedHandler);
+            return new Pair<>(m1, (ReceiveEventHub.Subscriber) queuedHandler);
         }).toList();
     }
 
-    private void unsubscribeReceiveHandler(final Pair<Manager, Manager.ReceiveMessageHandler> pair) {
+    private void unsubscribeReceiveHandler(final Pair<Manager, ReceiveEventHub.Subscriber> pair) {
         final var m = pair.first();
         final var handler = pair.second();
-        m.removeReceiveHandler(handler);
+        // Close the queue first, the receive thread may be blocked by a full queue
+        if (handler instanceof QueuedReceiveMessageHandler queuedHandler) {
+            queuedHandler.close();
+        }
+        ReceiveEventHub.get(m).unsubscribe(handler);
     }
 
-    private interface Callable {
-
-        void call();
-    }
+    private record ReplayCursor(
+            Manager manager, Iterator<EventReplayBuffer.Entry> events, EventReplayBuffer.Entry entry
+    ) {}
 }
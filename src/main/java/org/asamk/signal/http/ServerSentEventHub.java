@@ -0,0 +1,172 @@
+package org.asamk.signal.http;
+
+import org.asamk.signal.manager.Manager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the open server-sent event streams.
+ * <p>
+ * Streams don't need a thread of their own while they are open. Events are written by the receive subscribers and a
+ * single timer thread sends the keep-alive comments of all streams.
+ */
+public class ServerSentEventHub {
+
+    private final static Logger logger = LoggerFactory.getLogger(ServerSentEventHub.class);
+
+    private static final long KEEP_ALIVE_INTERVAL_SECONDS = 15;
+
+    private static final AtomicInteger threadNumber = new AtomicInteger(0);
+
+    private final Set<Stream> streams = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService timer;
+    // Keep-alive writes and closing of streams may block, so they don't run on the timer thread
+    private final ExecutorService workers;
+
+    public ServerSentEventHub() {
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            final var thread = new Thread(r);
+            thread.setName("sse-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers = Executors.newCachedThreadPool(r -> {
+            final var thread = new Thread(r);
+            thread.setName("sse-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::sendKeepAlives,
+                KEEP_ALIVE_INTERVAL_SECONDS,
+                KEEP_ALIVE_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Register an open stream, the response body is closed when the stream is closed.
+     *
+     * @param managers the accounts whose messages are sent on this stream
+     * @param onClose  called once when the stream is closed, e.g. to remove the receive subscribers
+     */
+    public Stream open(
+            final ServerSentEventSender sender,
+            final Closeable responseBody,
+            final List<Manager> managers,
+            final Runnable onClose
+    ) {
+        final var stream = new Stream(sender, responseBody, managers, onClose);
+        streams.add(stream);
+        return stream;
+    }
+
+    public int getConnectionCount() {
+        return streams.size();
+    }
+
+    public int getConnectionCount(final Manager m) {
+        return (int) streams.stream().filter(s -> s.managers.contains(m)).count();
+    }
+
+    /**
+     * Run a task, that may block, on a worker thread.
+     */
+    void execute(final Runnable task) {
+        workers.execute(task);
+    }
+
+    private void sendKeepAlives() {
+        for (final var stream : streams) {
+            if (stream.keepAlivePending.compareAndSet(false, true)) {
+                workers.execute(stream::sendKeepAlive);
+            }
+        }
+    }
+
+    public class Stream {
+
+        private final ServerSentEventSender sender;
+        private final Closeable responseBody;
+        private final List<Manager> managers;
+        private final Runnable onClose;
+        private final AtomicBoolean keepAlivePending = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        // Id of the last event sent for each account, guarded by this
+        private final Map<Manager, Long> lastSentIds = new HashMap<>();
+
+        private Stream(
+                final ServerSentEventSender sender,
+                final Closeable responseBody,
+                final List<Manager> managers,
+                final Runnable onClose
+        ) {
+            this.sender = sender;
+            this.responseBody = responseBody;
+            this.managers = managers;
+            this.onClose = onClose;
+        }
+
+        /**
+         * Send a receive event, unless an event with a higher id of the same account has already been sent, e.g.
+         * while replaying the buffered events.
+         * <p>
+         * Holding the lock of the stream blocks sending of events.
+         */
+        public synchronized void sendEvent(final Manager m, final long id, final String json) throws IOException {
+            final var lastSentId = lastSentIds.get(m);
+            if (lastSentId != null && id <= lastSentId) {
+                return;
+            }
+            sender.sendEvent(String.valueOf(id), "receive", List.of(json));
+            lastSentIds.put(m, id);
+        }
+
+        public boolean isClosed() {
+            return closed.get();
+        }
+
+        /**
+         * Close the stream asynchronously, can be called from any thread, also multiple times.
+         */
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            streams.remove(this);
+            workers.execute(() -> {
+                try {
+                    onClose.run();
+                } catch (Throwable e) {
+                    logger.warn("Failed to unsubscribe event stream", e);
+                }
+                try {
+                    responseBody.close();
+                } catch (IOException ignored) {
+                }
+            });
+        }
+
+        private void sendKeepAlive() {
+            try {
+                sender.sendKeepAlive();
+            } catch (IOException e) {
+                close();
+            } finally {
+                keepAlivePending.set(false);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package org.asamk.signal.json;
 
+/**
+ * @param data the attachment content, encoded as base64 string in JSON and as raw byte string in CBOR
+ */
 public record JsonAttachmentData(
-        String data
+        byte[] data
 ) {}
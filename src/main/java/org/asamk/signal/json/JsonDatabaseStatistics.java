@@ -0,0 +1,40 @@
+package org.asamk.signal.json;
+
+import org.asamk.signal.manager.api.DatabaseStatistics;
+import org.asamk.signal.manager.api.LatencyStatistics;
+
+import java.util.List;
+
+public record JsonDatabaseStatistics(
+        long size,
+        long pageCount,
+        long freePageCount,
+        Long lastMaintenanceTimestamp,
+        JsonLatencyStatistics connectionWait,
+        List<JsonLatencyStatistics> queries
+) {
+
+    public static JsonDatabaseStatistics from(DatabaseStatistics statistics) {
+        return new JsonDatabaseStatistics(statistics.size(),
+                statistics.pageCount(),
+                statistics.freePageCount(),
+                statistics.lastMaintenanceTimestamp().orElse(null),
+                JsonLatencyStatistics.from(statistics.connectionWait()),
+                statistics.queries().stream().map(JsonLatencyStatistics::from).toList());
+    }
+
+    public record JsonLatencyStatistics(
+            String name, long count, long totalMicros, long maxMicros, List<JsonBucket> buckets
+    ) {
+
+        static JsonLatencyStatistics from(LatencyStatistics statistics) {
+            return new JsonLatencyStatistics(statistics.name(),
+                    statistics.count(),
+                    statistics.totalMicros(),
+                    statistics.maxMicros(),
+                    statistics.buckets().stream().map(b -> new JsonBucket(b.upperBoundMicros(), b.count())).toList());
+        }
+    }
+
+    public record JsonBucket(Long upperBoundMicros, long count) {}
+}
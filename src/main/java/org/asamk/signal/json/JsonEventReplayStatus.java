@@ -0,0 +1,10 @@
+package org.asamk.signal.json;
+
+import org.asamk.signal.http.EventReplayBuffer;
+
+public record JsonEventReplayStatus(int bufferedEvents, long bufferedSize, long hitCount, long missCount) {
+
+    public static JsonEventReplayStatus from(EventReplayBuffer.Status status) {
+        return new JsonEventReplayStatus(status.eventCount(), status.size(), status.hitCount(), status.missCount());
+    }
+}
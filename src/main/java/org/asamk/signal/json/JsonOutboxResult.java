@@ -0,0 +1,24 @@
+package org.asamk.signal.json;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import org.asamk.signal.manager.api.OutboxResult;
+
+public record JsonOutboxResult(
+        long timestamp,
+        JsonRecipientAddress recipientAddress,
+        boolean success,
+        int attempts,
+        @JsonInclude(JsonInclude.Include.NON_NULL) JsonSendMessageResult result,
+        @JsonInclude(JsonInclude.Include.NON_NULL) String error
+) {
+
+    public static JsonOutboxResult from(OutboxResult result) {
+        return new JsonOutboxResult(result.timestamp(),
+                JsonRecipientAddress.from(result.recipient()),
+                result.isSuccess(),
+                result.attempts(),
+                result.result().map(JsonSendMessageResult::from).orElse(null),
+                result.error().orElse(null));
+    }
+}
@@ -0,0 +1,22 @@
+package org.asamk.signal.json;
+
+import org.asamk.signal.QueuedReceiveMessageHandler;
+
+public record JsonReceiveSubscriberStatus(
+        String name,
+        int queuedCount,
+        long deliveredCount,
+        long droppedCount,
+        long lagMillis,
+        long lastDeliveryLagMillis
+) {
+
+    public static JsonReceiveSubscriberStatus from(QueuedReceiveMessageHandler.Status status) {
+        return new JsonReceiveSubscriberStatus(status.name(),
+                status.queuedCount(),
+                status.deliveredCount(),
+                status.droppedCount(),
+                status.lag().toMillis(),
+                status.lastDeliveryLag().toMillis());
+    }
+}
@@ -0,0 +1,14 @@
+package org.asamk.signal.json;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import org.asamk.signal.manager.api.SendThrottleStatus;
+
+public record JsonSendThrottleStatus(
+        @JsonInclude(JsonInclude.Include.NON_NULL) Double rate, int queuedSends, long untilNextSendMillis
+) {
+
+    public static JsonSendThrottleStatus from(SendThrottleStatus status) {
+        return new JsonSendThrottleStatus(status.rate(), status.queuedSends(), status.untilNextSend().toMillis());
+    }
+}
@@ -1,18 +1,19 @@
 package org.asamk.signal.jsonrpc;
 
-import com.fasterxml.jackson.databind.JsonNode;
-
 import java.util.List;
 
 public final class JsonRpcBatchMessage extends JsonRpcMessage {
 
-    List<JsonNode> messages;
+    /**
+     * The requests of the batch, invalid requests are replaced by their error response.
+     */
+    List<JsonRpcMessage> messages;
 
-    public JsonRpcBatchMessage(final List<JsonNode> messages) {
+    public JsonRpcBatchMessage(final List<JsonRpcMessage> messages) {
         this.messages = messages;
     }
 
-    public List<JsonNode> getMessages() {
+    public List<JsonRpcMessage> getMessages() {
         return messages;
     }
 }
@@ -1,23 +1,29 @@
 package org.asamk.signal.jsonrpc;
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.exc.StreamReadException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ContainerNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.ValueNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
-import org.asamk.signal.util.Util;
+import org.asamk.signal.output.WireFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Objects;
+import java.util.concurrent.Semaphore;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
-import java.util.stream.StreamSupport;
 
 public class JsonRpcReader {
 
@@ -27,19 +33,49 @@ public class JsonRpcReader {
     private final ObjectMapper objectMapper;
     private final InputStream input;
     private final Supplier<String> lineSupplier;
+    private final JsonRpcRequestExecutor requestExecutor;
+    private final JsonRpcRequestExecutor batchExecutor;
+    private final Semaphore connectionPermits;
 
     public JsonRpcReader(final JsonRpcSender jsonRpcSender, final Supplier<String> lineSupplier) {
+        this(jsonRpcSender, lineSupplier, null);
+    }
+
+    /**
+     * @param requestExecutor if it allows more than one request per connection, requests are executed concurrently
+     *                        and responses are sent as they complete
+     */
+    public JsonRpcReader(
+            final JsonRpcSender jsonRpcSender,
+            final Supplier<String> lineSupplier,
+            final JsonRpcRequestExecutor requestExecutor
+    ) {
         this.jsonRpcSender = jsonRpcSender;
+        this.objectMapper = jsonRpcSender.getWireFormat().getObjectMapper();
         this.input = null;
         this.lineSupplier = lineSupplier;
-        this.objectMapper = Util.createJsonObjectMapper();
+        this.requestExecutor = requestExecutor;
+        this.batchExecutor = requestExecutor == null ? JsonRpcRequestExecutor.getDefault() : requestExecutor;
+        this.connectionPermits = isSequential() ? null : new Semaphore(requestExecutor.getMaxConnectionRequests());
     }
 
     public JsonRpcReader(final JsonRpcSender jsonRpcSender, final InputStream input) {
+        this(jsonRpcSender, input, null);
+    }
+
+    /**
+     * @param batchExecutor used to execute the requests of a batch request, the default executor if null
+     */
+    public JsonRpcReader(
+            final JsonRpcSender jsonRpcSender, final InputStream input, final JsonRpcRequestExecutor batchExecutor
+    ) {
         this.jsonRpcSender = jsonRpcSender;
+        this.objectMapper = jsonRpcSender.getWireFormat().getObjectMapper();
         this.input = input;
         this.lineSupplier = null;
-        this.objectMapper = Util.createJsonObjectMapper();
+        this.requestExecutor = null;
+        this.batchExecutor = batchExecutor == null ? JsonRpcRequestExecutor.getDefault() : batchExecutor;
+        this.connectionPermits = null;
     }
 
     public void readMessages(final RequestHandler requestHandler, final Consumer<JsonRpcResponse> responseHandler) {
@@ -60,14 +96,40 @@ public class JsonRpcReader {
                 break;
             }
 
-            logger.trace("Incoming JSON-RPC message: {}", input);
-            JsonRpcMessage message = parseJsonRpcMessage(input);
-            if (message == null) {
-                continue;
-            }
+            handleLine(input, requestHandler, responseHandler);
+        }
 
-            handleMessage(message, requestHandler, responseHandler);
+        awaitRunningRequests();
+    }
+
+    /**
+     * Handle a single message, encoded in the wire format of the sender, for connections that don't provide a line
+     * supplier.
+     */
+    public void handleMessage(
+            final byte[] input, final RequestHandler requestHandler, final Consumer<JsonRpcResponse> responseHandler
+    ) {
+        if (logger.isTraceEnabled() && jsonRpcSender.getWireFormat() == WireFormat.JSON) {
+            logger.trace("Incoming JSON-RPC message: {}", new String(input, StandardCharsets.UTF_8));
+        }
+        JsonRpcMessage message = parseJsonRpcMessage(input);
+        if (message == null) {
+            return;
         }
+
+        handleMessage(message, requestHandler, responseHandler);
+    }
+
+    private void handleLine(
+            final String input, final RequestHandler requestHandler, final Consumer<JsonRpcResponse> responseHandler
+    ) {
+        logger.trace("Incoming JSON-RPC message: {}", input);
+        JsonRpcMessage message = parseJsonRpcMessage(input);
+        if (message == null) {
+            return;
+        }
+
+        handleMessage(message, requestHandler, responseHandler);
     }
 
     private void handleMessage(
@@ -77,25 +139,119 @@ public class JsonRpcReader {
     ) {
         if (message instanceof final JsonRpcRequest jsonRpcRequest) {
             logger.debug("Received json rpc request, method: " + jsonRpcRequest.getMethod());
-            final var response = handleRequest(requestHandler, jsonRpcRequest);
-            if (response != null) {
-                jsonRpcSender.sendResponse(response);
-            }
+            execute(jsonRpcRequest.isOrdered(), () -> {
+                final var response = handleRequest(requestHandler, jsonRpcRequest);
+                if (response != null) {
+                    jsonRpcSender.sendResponse(response);
+                }
+            });
         } else if (message instanceof JsonRpcResponse jsonRpcResponse) {
             responseHandler.accept(jsonRpcResponse);
         } else {
-            final var responseList = ((JsonRpcBatchMessage) message).getMessages().stream().map(jsonNode -> {
-                final JsonRpcRequest request;
-                try {
-                    request = parseJsonRpcRequest(jsonNode);
-                } catch (JsonRpcException e) {
-                    return JsonRpcResponse.forError(e.getError(), getId(jsonNode));
+            final var batchMessage = (JsonRpcBatchMessage) message;
+            execute(false, () -> handleBatch(batchMessage, requestHandler));
+        }
+    }
+
+    /**
+     * Execute the requests of a batch concurrently and send the responses in the order of the requests.
+     * A request with the "ordered" field is executed after the preceding requests of the batch have completed
+     * and before the following requests are started.
+     */
+    private void handleBatch(final JsonRpcBatchMessage batchMessage, final RequestHandler requestHandler) {
+        final var responses = new ArrayList<JsonRpcResponse>();
+        final var pendingTasks = new ArrayList<Supplier<JsonRpcResponse>>();
+        for (final var message : batchMessage.getMessages()) {
+            if (message instanceof JsonRpcResponse error) {
+                pendingTasks.add(() -> error);
+                continue;
+            }
+
+            final var request = (JsonRpcRequest) message;
+            if (request.isOrdered()) {
+                responses.addAll(batchExecutor.executeBatch(pendingTasks));
+                pendingTasks.clear();
+                responses.add(handleBatchRequest(requestHandler, request));
+            } else {
+                pendingTasks.add(() -> handleBatchRequest(requestHandler, request));
+            }
+        }
+        responses.addAll(batchExecutor.executeBatch(pendingTasks));
+
+        jsonRpcSender.sendBatchResponses(responses.stream().filter(Objects::nonNull).toList());
+    }
+
+    private JsonRpcResponse handleBatchRequest(final RequestHandler requestHandler, final JsonRpcRequest request) {
+        try {
+            return handleRequest(requestHandler, request);
+        } catch (RuntimeException e) {
+            // A failing request must not fail the other requests of the batch
+            logger.warn("Batch request '{}' failed", request.getMethod(), e);
+            if (request.getId() == null) {
+                return null;
+            }
+            return JsonRpcResponse.forError(new JsonRpcResponse.Error(JsonRpcResponse.Error.INTERNAL_ERROR,
+                    e.getMessage(),
+                    null), request.getId());
+        }
+    }
+
+    /**
+     * Run the task directly in sequential mode, otherwise on a worker thread of the request executor.
+     *
+     * @param ordered if true, the task only starts after all previous requests of this connection have completed
+     *                and no further request is started before it has completed.
+     */
+    private void execute(final boolean ordered, final Runnable task) {
+        if (isSequential()) {
+            task.run();
+            return;
+        }
+
+        final var permits = ordered ? requestExecutor.getMaxConnectionRequests() : 1;
+        try {
+            connectionPermits.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        final Runnable wrappedTask = () -> {
+            try {
+                task.run();
+            } catch (AssertionError e) {
+                if (!(e.getCause() instanceof ClosedChannelException)) {
+                    logger.warn("Failed to handle json rpc request", e);
                 }
+            } finally {
+                connectionPermits.release(permits);
+            }
+        };
+        if (ordered) {
+            wrappedTask.run();
+            return;
+        }
+        try {
+            requestExecutor.execute(wrappedTask);
+        } catch (InterruptedException e) {
+            connectionPermits.release(permits);
+            Thread.currentThread().interrupt();
+        }
+    }
 
-                return handleRequest(requestHandler, request);
-            }).filter(Objects::nonNull).toList();
+    private boolean isSequential() {
+        return requestExecutor == null || requestExecutor.getMaxConnectionRequests() <= 1;
+    }
 
-            jsonRpcSender.sendBatchResponses(responseList);
+    void awaitRunningRequests() {
+        if (isSequential() || Thread.currentThread().isInterrupted()) {
+            return;
+        }
+        final var permits = requestExecutor.getMaxConnectionRequests();
+        try {
+            connectionPermits.acquire(permits);
+            connectionPermits.release(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -103,7 +259,7 @@ public class JsonRpcReader {
         try {
             final var result = requestHandler.apply(request.getMethod(), request.getParams());
             if (request.getId() != null) {
-                return JsonRpcResponse.forSuccess(result, request.getId());
+                return JsonRpcResponse.forSuccess(bufferResult(result), request.getId());
             } else {
                 logger.debug("Command '{}' succeeded but client didn't specify an id, dropping response",
                         request.getMethod());
@@ -120,107 +276,215 @@ public class JsonRpcReader {
         return null;
     }
 
-    private JsonRpcMessage parseJsonRpcMessage(final String input) {
-        final JsonNode jsonNode;
+    /**
+     * Serialize the result before the response is sent, so a result that can't be serialized is answered with an
+     * error, instead of failing while the response is written to the connection.
+     */
+    private TokenBuffer bufferResult(final Object result) throws JsonRpcException {
+        final var buffer = new TokenBuffer(objectMapper, false);
         try {
-            jsonNode = objectMapper.readTree(input);
-        } catch (JsonParseException e) {
-            jsonRpcSender.sendResponse(JsonRpcResponse.forError(new JsonRpcResponse.Error(JsonRpcResponse.Error.PARSE_ERROR,
-                    e.getMessage(),
-                    null), null));
-            return null;
+            objectMapper.writeValue(buffer, result);
+        } catch (IOException e) {
+            logger.error("Failed to serialize json rpc result", e);
+            throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INTERNAL_ERROR,
+                    "Failed to serialize result: " + e.getMessage(),
+                    null));
+        }
+        return buffer;
+    }
+
+    private JsonRpcMessage parseJsonRpcMessage(final String input) {
+        try (final var parser = objectMapper.createParser(input)) {
+            return parseJsonRpcMessage(parser);
         } catch (IOException e) {
             throw new AssertionError(e);
         }
+    }
 
-        return parseJsonRpcMessage(jsonNode);
+    private JsonRpcMessage parseJsonRpcMessage(final byte[] input) {
+        try (final var parser = objectMapper.createParser(input)) {
+            return parseJsonRpcMessage(parser);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
     }
 
     private JsonRpcMessage parseJsonRpcMessage(final InputStream input) {
-        final JsonNode jsonNode;
+        try (final var parser = objectMapper.createParser(input)) {
+            return parseJsonRpcMessage(parser);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Parse the message directly from the token stream, the params of requests are only copied as tokens, so they
+     * are bound to the request type of the command without building a JSON tree first.
+     */
+    private JsonRpcMessage parseJsonRpcMessage(final JsonParser parser) throws IOException {
+        final JsonRpcMessage message;
         try {
-            jsonNode = objectMapper.readTree(input);
-        } catch (JsonParseException e) {
+            message = parseJsonRpcMessageTokens(parser);
+        } catch (StreamReadException e) {
             jsonRpcSender.sendResponse(JsonRpcResponse.forError(new JsonRpcResponse.Error(JsonRpcResponse.Error.PARSE_ERROR,
                     e.getMessage(),
                     null), null));
             return null;
-        } catch (IOException e) {
-            throw new AssertionError(e);
+        } catch (InvalidRequestException e) {
+            jsonRpcSender.sendResponse(JsonRpcResponse.forError(e.getError(), e.getId()));
+            return null;
         }
-
-        return parseJsonRpcMessage(jsonNode);
+        return message;
     }
 
-    private JsonRpcMessage parseJsonRpcMessage(final JsonNode jsonNode) {
-        if (jsonNode == null) {
-            jsonRpcSender.sendResponse(JsonRpcResponse.forError(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
+    private JsonRpcMessage parseJsonRpcMessageTokens(
+            final JsonParser parser
+    ) throws IOException, InvalidRequestException {
+        final var token = parser.nextToken();
+        if (token == null) {
+            throw new InvalidRequestException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
                     "invalid request",
-                    null), null));
-            return null;
-        } else if (jsonNode.isArray()) {
-            if (jsonNode.size() == 0) {
-                jsonRpcSender.sendResponse(JsonRpcResponse.forError(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
-                        "invalid request",
-                        null), null));
-                return null;
-            }
-            return new JsonRpcBatchMessage(StreamSupport.stream(jsonNode.spliterator(), false).toList());
-        } else if (jsonNode.isObject()) {
-            if (jsonNode.has("result") || jsonNode.has("error")) {
-                return parseJsonRpcResponse(jsonNode);
-            } else {
+                    null), null);
+        } else if (token == JsonToken.START_ARRAY) {
+            final var messages = new ArrayList<JsonRpcMessage>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
                 try {
-                    return parseJsonRpcRequest(jsonNode);
-                } catch (JsonRpcException e) {
-                    jsonRpcSender.sendResponse(JsonRpcResponse.forError(e.getError(), getId(jsonNode)));
-                    return null;
+                    messages.add(parseJsonRpcObject(parser, false));
+                } catch (InvalidRequestException e) {
+                    messages.add(JsonRpcResponse.forError(e.getError(), e.getId()));
                 }
             }
+            if (messages.isEmpty()) {
+                throw new InvalidRequestException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
+                        "invalid request",
+                        null), null);
+            }
+            return new JsonRpcBatchMessage(messages);
         } else {
-            jsonRpcSender.sendResponse(JsonRpcResponse.forError(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
-                    "unexpected type: " + jsonNode.getNodeType().name(),
-                    null), null));
-            return null;
+            return parseJsonRpcObject(parser, true);
         }
     }
 
-    private ValueNode getId(JsonNode jsonNode) {
-        final var id = jsonNode.get("id");
-        return id instanceof ValueNode ? (ValueNode) id : null;
-    }
-
-    private JsonRpcRequest parseJsonRpcRequest(final JsonNode input) throws JsonRpcException {
-        if (input instanceof ObjectNode i && input.has("params") && input.get("params").isNull()) {
-            // Workaround for clients that send a null params field instead of omitting it
-            i.remove("params");
+    /**
+     * Parse a request, or a response if allowed, from the object at the current token.
+     * All fields are read even if the request is invalid, so the error response can include the id.
+     */
+    private JsonRpcMessage parseJsonRpcObject(
+            final JsonParser parser, final boolean allowResponse
+    ) throws IOException, InvalidRequestException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            final var type = getTypeName(parser.currentToken());
+            parser.skipChildren();
+            throw new InvalidRequestException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
+                    "unexpected type: " + type,
+                    null), null);
         }
-        JsonRpcRequest request;
-        try {
-            request = objectMapper.treeToValue(input, JsonRpcRequest.class);
-        } catch (JsonMappingException e) {
-            throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
-                    e.getMessage(),
-                    null));
-        } catch (IOException e) {
-            throw new AssertionError(e);
+
+        JsonRpcResponse.Error error = null;
+        String jsonrpc = null;
+        String method = null;
+        TokenBuffer params = null;
+        ValueNode id = null;
+        // Extension field, the request is executed in order with the other requests of the connection
+        var ordered = false;
+        ObjectNode responseFields = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final var name = parser.currentName();
+            final var token = parser.nextToken();
+            final var isScalar = token.isScalarValue();
+            if (!isScalar && !"params".equals(name) && !(allowResponse && isResponseField(name))) {
+                parser.skipChildren();
+            }
+            switch (name) {
+                case "jsonrpc" -> {
+                    if (isScalar) {
+                        jsonrpc = getTextValue(parser);
+                    } else if (error == null) {
+                        error = invalidRequest("jsonrpc field must be a string");
+                    }
+                }
+                case "method" -> {
+                    if (isScalar) {
+                        method = getTextValue(parser);
+                    } else if (error == null) {
+                        error = invalidRequest("method field must be a string");
+                    }
+                }
+                case "params" -> {
+                    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                        params = new TokenBuffer(parser);
+                        params.copyCurrentStructure(parser);
+                    } else if (token != JsonToken.VALUE_NULL && error == null) {
+                        // A null params field is accepted as a workaround for clients that don't omit it
+                        error = invalidRequest("params field must be an object or an array");
+                    }
+                }
+                case "id" -> {
+                    if (isScalar) {
+                        id = (ValueNode) objectMapper.readTree(parser);
+                    } else if (error == null) {
+                        error = invalidRequest("id field must be a string, number or null");
+                    }
+                }
+                case "ordered" -> ordered = isScalar && parser.getValueAsBoolean();
+                default -> {
+                    if (allowResponse && isResponseField(name)) {
+                        if (responseFields == null) {
+                            responseFields = objectMapper.createObjectNode();
+                        }
+                        responseFields.set(name, objectMapper.readTree(parser));
+                    } else if (error == null) {
+                        error = invalidRequest("Unrecognized field \"" + name + "\"");
+                    }
+                }
+            }
         }
 
-        if (!"2.0".equals(request.getJsonrpc())) {
-            throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
-                    "only jsonrpc version 2.0 is supported",
-                    null));
+        if (responseFields != null) {
+            responseFields.put("jsonrpc", jsonrpc);
+            responseFields.set("id", id);
+            return parseJsonRpcResponse(responseFields);
         }
 
-        if (request.getMethod() == null) {
-            throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
-                    "method field must be set",
-                    null));
+        if (error == null && !"2.0".equals(jsonrpc)) {
+            error = invalidRequest("only jsonrpc version 2.0 is supported");
+        }
+        if (error == null && method == null) {
+            error = invalidRequest("method field must be set");
+        }
+        if (error != null) {
+            throw new InvalidRequestException(error, id);
         }
 
+        final var request = JsonRpcRequest.forNotification(method, params, id);
+        request.setOrdered(ordered);
         return request;
     }
 
+    private static boolean isResponseField(final String name) {
+        return "result".equals(name) || "error".equals(name);
+    }
+
+    private static String getTextValue(final JsonParser parser) throws IOException {
+        return parser.currentToken() == JsonToken.VALUE_NULL ? null : parser.getText();
+    }
+
+    private static String getTypeName(final JsonToken token) {
+        return switch (token) {
+            case START_ARRAY -> "ARRAY";
+            case VALUE_STRING -> "STRING";
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> "NUMBER";
+            case VALUE_TRUE, VALUE_FALSE -> "BOOLEAN";
+            case VALUE_NULL -> "NULL";
+            case VALUE_EMBEDDED_OBJECT -> "BINARY";
+            default -> token.name();
+        };
+    }
+
+    private static JsonRpcResponse.Error invalidRequest(final String message) {
+        return new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST, message, null);
+    }
+
     private JsonRpcResponse parseJsonRpcResponse(final JsonNode input) {
         JsonRpcResponse response;
         try {
@@ -257,6 +521,23 @@ public class JsonRpcReader {
 
     public interface RequestHandler {
 
-        JsonNode apply(String method, ContainerNode<?> params) throws JsonRpcException;
+        /**
+         * @return the result of the request, it's serialized with the response
+         */
+        Object apply(String method, TokenBuffer params) throws JsonRpcException;
+    }
+
+    private static class InvalidRequestException extends JsonRpcException {
+
+        private final ValueNode id;
+
+        InvalidRequestException(final JsonRpcResponse.Error error, final ValueNode id) {
+            super(error);
+            this.id = id;
+        }
+
+        ValueNode getId() {
+            return id;
+        }
     }
 }
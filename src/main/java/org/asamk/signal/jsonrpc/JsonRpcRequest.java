@@ -1,8 +1,8 @@
 package org.asamk.signal.jsonrpc;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.databind.node.ContainerNode;
 import com.fasterxml.jackson.databind.node.ValueNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 /**
  * Represents a JSON-RPC request.
@@ -25,9 +25,10 @@ public final class JsonRpcRequest extends JsonRpcMessage {
     /**
      * A Structured value that holds the parameter values to be used during the invocation of the method.
      * This member MAY be omitted.
+     * Kept as the parsed tokens, so they are only bound once, to the request type of the command.
      */
     @JsonInclude(JsonInclude.Include.NON_NULL)
-    private ContainerNode<?> params;
+    private TokenBuffer params;
 
     /**
      * An identifier established by the Client that MUST contain a String, Number, or NULL value if included.
@@ -37,8 +38,13 @@ public final class JsonRpcRequest extends JsonRpcMessage {
     @JsonInclude(JsonInclude.Include.NON_NULL)
     private ValueNode id;
 
+    /**
+     * Not part of the JSON-RPC specification, set from the optional "ordered" field of a request.
+     */
+    private boolean ordered;
+
     public static JsonRpcRequest forNotification(
-            final String method, final ContainerNode<?> params, final ValueNode id
+            final String method, final TokenBuffer params, final ValueNode id
     ) {
         return new JsonRpcRequest("2.0", method, params, id);
     }
@@ -47,7 +53,7 @@ public final class JsonRpcRequest extends JsonRpcMessage {
     }
 
     private JsonRpcRequest(
-            final String jsonrpc, final String method, final ContainerNode<?> params, final ValueNode id
+            final String jsonrpc, final String method, final TokenBuffer params, final ValueNode id
     ) {
         this.jsonrpc = jsonrpc;
         this.method = method;
@@ -63,11 +69,19 @@ public final class JsonRpcRequest extends JsonRpcMessage {
         return method;
     }
 
-    public ContainerNode<?> getParams() {
+    public TokenBuffer getParams() {
         return params;
     }
 
     public ValueNode getId() {
         return id;
     }
+
+    boolean isOrdered() {
+        return ordered;
+    }
+
+    void setOrdered(final boolean ordered) {
+        this.ordered = ordered;
+    }
 }
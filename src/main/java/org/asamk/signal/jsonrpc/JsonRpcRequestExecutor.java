@@ -0,0 +1,130 @@
+package org.asamk.signal.jsonrpc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Executes JSON-RPC requests of all connections on a shared pool of worker threads.
+ * <p>
+ * The number of requests running at the same time is limited for each connection, for each batch request and for
+ * all connections together.
+ */
+public class JsonRpcRequestExecutor {
+
+    private static final AtomicInteger threadNumber = new AtomicInteger(0);
+    private static JsonRpcRequestExecutor defaultExecutor;
+
+    private final int maxConnectionRequests;
+    private final int maxBatchRequests;
+    private final Semaphore totalPermits;
+    private final ExecutorService executor;
+
+    /**
+     * Executor used for batch requests, if no executor is configured.
+     */
+    static synchronized JsonRpcRequestExecutor getDefault() {
+        if (defaultExecutor == null) {
+            defaultExecutor = new JsonRpcRequestExecutor(1, 32, 8);
+        }
+        return defaultExecutor;
+    }
+
+    public JsonRpcRequestExecutor(
+            final int maxConnectionRequests, final int maxTotalRequests, final int maxBatchRequests
+    ) {
+        this.maxConnectionRequests = maxConnectionRequests;
+        this.maxBatchRequests = maxBatchRequests;
+        this.totalPermits = new Semaphore(maxTotalRequests);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            final var thread = new Thread(r);
+            thread.setName("jsonrpc-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getMaxConnectionRequests() {
+        return maxConnectionRequests;
+    }
+
+    /**
+     * Run the task on a worker thread, blocking while the global request limit is reached.
+     */
+    void execute(final Runnable task) throws InterruptedException {
+        totalPermits.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    totalPermits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            totalPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Run the tasks of a batch request concurrently, at most maxBatchRequests at the same time.
+     * <p>
+     * The calling thread works on the tasks as well. Additional worker threads are only used while the global
+     * request limit isn't reached, so a batch always makes progress, even if all permits are in use.
+     *
+     * @return the results of the tasks, in the same order as the tasks
+     */
+    <T> List<T> executeBatch(final List<Supplier<T>> tasks) {
+        final var results = new ArrayList<T>(Collections.nCopies(tasks.size(), null));
+        final var nextTask = new AtomicInteger(0);
+        final Runnable worker = () -> {
+            int i;
+            while ((i = nextTask.getAndIncrement()) < tasks.size()) {
+                final var result = tasks.get(i).get();
+                synchronized (results) {
+                    results.set(i, result);
+                }
+            }
+        };
+
+        final var helpers = new ArrayList<Future<?>>();
+        final var helperCount = Math.min(maxBatchRequests, tasks.size()) - 1;
+        for (var i = 0; i < helperCount && totalPermits.tryAcquire(); i++) {
+            try {
+                helpers.add(executor.submit(() -> {
+                    try {
+                        worker.run();
+                    } finally {
+                        totalPermits.release();
+                    }
+                }));
+            } catch (RuntimeException e) {
+                totalPermits.release();
+                break;
+            }
+        }
+        worker.run();
+        for (final var helper : helpers) {
+            try {
+                helper.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                helpers.forEach(h -> h.cancel(true));
+                break;
+            } catch (ExecutionException e) {
+                throw new AssertionError(e.getCause());
+            }
+        }
+        synchronized (results) {
+            return new ArrayList<>(results);
+        }
+    }
+}
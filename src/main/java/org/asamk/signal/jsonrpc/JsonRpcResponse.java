@@ -21,7 +21,7 @@ public final class JsonRpcResponse extends JsonRpcMessage {
      * The value of this member is determined by the method invoked on the Server.
      */
     @JsonInclude(JsonInclude.Include.NON_NULL)
-    JsonNode result;
+    Object result;
 
     /**
      * This member is REQUIRED on error.
@@ -38,7 +38,7 @@ public final class JsonRpcResponse extends JsonRpcMessage {
      */
     ValueNode id;
 
-    public static JsonRpcResponse forSuccess(JsonNode result, ValueNode id) {
+    public static JsonRpcResponse forSuccess(Object result, ValueNode id) {
         return new JsonRpcResponse("2.0", result, null, id);
     }
 
@@ -49,7 +49,7 @@ public final class JsonRpcResponse extends JsonRpcMessage {
     private JsonRpcResponse() {
     }
 
-    private JsonRpcResponse(final String jsonrpc, final JsonNode result, final Error error, final ValueNode id) {
+    private JsonRpcResponse(final String jsonrpc, final Object result, final Error error, final ValueNode id) {
         this.jsonrpc = jsonrpc;
         this.result = result;
         this.error = error;
@@ -60,7 +60,7 @@ public final class JsonRpcResponse extends JsonRpcMessage {
         return jsonrpc;
     }
 
-    public JsonNode getResult() {
+    public Object getResult() {
         return result;
     }
 
@@ -1,21 +1,50 @@
 package org.asamk.signal.jsonrpc;
 
 import org.asamk.signal.output.JsonWriter;
+import org.asamk.signal.output.WireFormat;
 
+import java.util.LinkedHashMap;
 import java.util.List;
 
 public class JsonRpcSender {
 
     private final JsonWriter jsonWriter;
+    private final WireFormat wireFormat;
 
     public JsonRpcSender(final JsonWriter jsonWriter) {
+        this(jsonWriter, jsonWriter.getWireFormat());
+    }
+
+    /**
+     * @param wireFormat the format of the connection, if it differs from the format of the writer, e.g. if the writer
+     *                   only collects the messages
+     */
+    public JsonRpcSender(final JsonWriter jsonWriter, final WireFormat wireFormat) {
         this.jsonWriter = jsonWriter;
+        this.wireFormat = wireFormat;
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat;
     }
 
     public void sendRequest(JsonRpcRequest request) {
         jsonWriter.write(request);
     }
 
+    /**
+     * Send a notification with already serialized params, without converting them to a JSON tree first.
+     *
+     * @param params object encoded in the wire format of this sender
+     */
+    public void sendNotification(String method, byte[] params) {
+        final var fields = new LinkedHashMap<String, byte[]>();
+        fields.put("jsonrpc", wireFormat.encode("2.0"));
+        fields.put("method", wireFormat.encode(method));
+        fields.put("params", params);
+        jsonWriter.writeRaw(wireFormat.encodeObject(fields));
+    }
+
     public void sendBatchRequests(List<JsonRpcRequest> requests) {
         jsonWriter.write(requests);
     }
@@ -0,0 +1,490 @@
+package org.asamk.signal.jsonrpc;
+
+import org.asamk.signal.output.JsonWriter;
+import org.asamk.signal.output.WireFormat;
+import org.asamk.signal.util.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves JSON-RPC connections of a UNIX or TCP server socket from a single selector thread.
+ * <p>
+ * Messages are newline delimited JSON or, with the CBOR wire format, length-prefixed frames. The selector thread only
+ * reads, splits the input into messages and writes pending output. The messages are handled on a shared pool of
+ * worker threads, one message after another for each connection. So idle connections don't need a thread of their
+ * own.
+ */
+public class JsonRpcSocketServer {
+
+    private final static Logger logger = LoggerFactory.getLogger(JsonRpcSocketServer.class);
+
+    private static final AtomicInteger connectionNumber = new AtomicInteger(0);
+    private static final AtomicInteger threadNumber = new AtomicInteger(0);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // Reading from a connection is paused, while this many messages or bytes are waiting to be handled
+    private static final int MAX_PENDING_MESSAGES = 100;
+    private static final int MAX_PENDING_INPUT = 16 * 1024 * 1024;
+    // Writers are blocked, while this many bytes are waiting to be sent to a connection
+    private static final int MAX_PENDING_OUTPUT = 16 * 1024 * 1024;
+    // Connections sending a longer line or announcing a larger frame are closed, instead of buffering the message
+    static final int MAX_MESSAGE_SIZE = 8 * 1024 * 1024;
+
+    private final ServerSocketChannel serverChannel;
+    private final ConnectionHandlerFactory connectionHandlerFactory;
+    private final Runnable onStopped;
+    private final WireFormat wireFormat;
+    private final ExecutorService workers;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private Selector selector;
+
+    public JsonRpcSocketServer(
+            final ServerSocketChannel serverChannel,
+            final ConnectionHandlerFactory connectionHandlerFactory,
+            final Runnable onStopped,
+            final WireFormat wireFormat
+    ) {
+        this.serverChannel = serverChannel;
+        this.connectionHandlerFactory = connectionHandlerFactory;
+        this.onStopped = onStopped;
+        this.wireFormat = wireFormat;
+        this.workers = Executors.newCachedThreadPool(r -> {
+            final var thread = new Thread(r);
+            thread.setName("daemon-worker-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Start the selector thread, onStopped is called if it stops accepting connections.
+     */
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        final var thread = new Thread(this::run);
+        thread.setName("daemon-listener");
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                selector.select();
+                for (final var key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    final var connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        // Only close the failed connection, a canceled key must not stop the selector thread
+                        logger.debug("Connection {} failed: {}", connection.connectionId, e.getMessage());
+                        connection.close();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to accept new socket connection", e);
+        }
+        onStopped.run();
+    }
+
+    private void accept() throws IOException {
+        final var channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        final var connectionId = connectionNumber.getAndIncrement();
+        final Connection connection;
+        try {
+            final var clientString = channel.getRemoteAddress() + " " + IOUtils.getUnixDomainPrincipal(channel);
+            logger.info("Accepted new client connection {}: {}", connectionId, clientString);
+
+            channel.configureBlocking(false);
+            connection = new Connection(connectionId, clientString, channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException e) {
+            logger.debug("Failed to set up client connection {}: {}", connectionId, e.getMessage());
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+        connection.submit(() -> connection.handler = connectionHandlerFactory.open(connection, connection::close));
+    }
+
+    public interface ConnectionHandlerFactory {
+
+        /**
+         * Called on a worker thread for every new connection.
+         *
+         * @param jsonWriter      writes a message in the wire format of the server to the connection
+         * @param closeConnection closes the connection
+         */
+        ConnectionHandler open(JsonWriter jsonWriter, Runnable closeConnection);
+    }
+
+    public interface ConnectionHandler {
+
+        /**
+         * @param message a single message, encoded in the wire format of the server
+         */
+        void handleMessage(byte[] message);
+
+        /**
+         * Called on a worker thread after the connection has been closed or the input has ended.
+         */
+        void close();
+    }
+
+    private class Connection implements JsonWriter {
+
+        private final int connectionId;
+        private final String clientString;
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private volatile ConnectionHandler handler;
+
+        // Only accessed from the selector thread
+        // The received part of the current message, it grows as the bytes arrive, not to the announced frame length
+        private byte[] partialMessage = new byte[0];
+        private int partialMessageLength = 0;
+        private final ByteBuffer frameHeader = ByteBuffer.allocate(4);
+        // The length of the current frame, -1 while the frame header is read
+        private int frameLength = -1;
+
+        // Guarded by this
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private boolean taskRunning = false;
+        private int pendingMessages = 0;
+        private long pendingInput = 0;
+        private boolean readPaused = false;
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        private long pendingOutput = 0;
+        private boolean inputClosed = false;
+        private boolean closed = false;
+
+        private Connection(final int connectionId, final String clientString, final SocketChannel channel) {
+            this.connectionId = connectionId;
+            this.clientString = clientString;
+            this.channel = channel;
+        }
+
+        private void read() throws IOException {
+            readBuffer.clear();
+            final var read = channel.read(readBuffer);
+            if (read < 0) {
+                if (wireFormat == WireFormat.JSON && partialMessageLength > 0) {
+                    handleMessage(takePartialMessage(partialMessageLength));
+                }
+                if (frameLength >= 0 || frameHeader.position() > 0) {
+                    logger.debug("Connection {} closed in the middle of a frame", connectionId);
+                }
+                synchronized (this) {
+                    updateInterestOps(0, SelectionKey.OP_READ);
+                    inputClosed = true;
+                }
+                submit(this::closeHandler);
+                return;
+            }
+            readBuffer.flip();
+            if (wireFormat == WireFormat.JSON) {
+                readLines();
+            } else {
+                readFrames();
+            }
+        }
+
+        private void readLines() throws IOException {
+            while (readBuffer.hasRemaining()) {
+                final var start = readBuffer.position();
+                var end = start;
+                while (end < readBuffer.limit() && readBuffer.get(end) != '\n') {
+                    end++;
+                }
+                appendPartialMessage(end - start);
+                if (end < readBuffer.limit()) {
+                    // Skip the newline and a preceding carriage return, like BufferedReader.readLine
+                    readBuffer.get();
+                    var length = partialMessageLength;
+                    if (length > 0 && partialMessage[length - 1] == '\r') {
+                        length--;
+                    }
+                    handleMessage(takePartialMessage(length));
+                }
+            }
+        }
+
+        private void readFrames() throws IOException {
+            while (readBuffer.hasRemaining()) {
+                if (frameLength < 0) {
+                    while (frameHeader.hasRemaining() && readBuffer.hasRemaining()) {
+                        frameHeader.put(readBuffer.get());
+                    }
+                    if (frameHeader.hasRemaining()) {
+                        return;
+                    }
+                    final var length = frameHeader.getInt(0);
+                    frameHeader.clear();
+                    if (length < 0 || length > MAX_MESSAGE_SIZE) {
+                        throw new IOException("Invalid frame length " + Integer.toUnsignedString(length));
+                    }
+                    frameLength = length;
+                }
+                appendPartialMessage(Math.min(frameLength - partialMessageLength, readBuffer.remaining()));
+                if (partialMessageLength == frameLength) {
+                    handleMessage(takePartialMessage(frameLength));
+                    frameLength = -1;
+                }
+            }
+        }
+
+        private void appendPartialMessage(final int length) throws IOException {
+            if (partialMessageLength + length > MAX_MESSAGE_SIZE) {
+                throw new IOException("Message longer than " + MAX_MESSAGE_SIZE + " bytes");
+            }
+            if (partialMessageLength + length > partialMessage.length) {
+                partialMessage = Arrays.copyOf(partialMessage,
+                        Math.min(MAX_MESSAGE_SIZE,
+                                Math.max(partialMessageLength + length, partialMessage.length * 2)));
+            }
+            readBuffer.get(partialMessage, partialMessageLength, length);
+            partialMessageLength += length;
+        }
+
+        /**
+         * Copy the first bytes of the partial message and start the next message, a buffer grown for a large message
+         * is released.
+         */
+        private byte[] takePartialMessage(final int length) {
+            final var message = Arrays.copyOf(partialMessage, length);
+            partialMessageLength = 0;
+            if (partialMessage.length > READ_BUFFER_SIZE) {
+                partialMessage = new byte[0];
+            }
+            return message;
+        }
+
+        private void handleMessage(final byte[] message) {
+            synchronized (this) {
+                pendingMessages++;
+                pendingInput += message.length;
+                if (!readPaused && isInputFull()) {
+                    readPaused = true;
+                    updateInterestOps(0, SelectionKey.OP_READ);
+                }
+            }
+            submit(() -> {
+                try {
+                    handler.handleMessage(message);
+                } finally {
+                    messageHandled(message.length);
+                }
+            });
+        }
+
+        private void messageHandled(final int length) {
+            synchronized (this) {
+                pendingMessages--;
+                pendingInput -= length;
+                if (readPaused && !isInputFull() && !inputClosed) {
+                    readPaused = false;
+                    updateInterestOps(SelectionKey.OP_READ, 0);
+                    selector.wakeup();
+                }
+            }
+        }
+
+        /**
+         * Must be called while holding the lock of this connection.
+         */
+        private boolean isInputFull() {
+            return pendingMessages >= MAX_PENDING_MESSAGES || pendingInput >= MAX_PENDING_INPUT;
+        }
+
+        /**
+         * Run the task on a worker thread, after the previous tasks of this connection have completed.
+         */
+        private void submit(final Runnable task) {
+            synchronized (this) {
+                tasks.add(task);
+                if (taskRunning) {
+                    return;
+                }
+                taskRunning = true;
+            }
+            workers.execute(this::runTasks);
+        }
+
+        private void runTasks() {
+            while (true) {
+                final Runnable task;
+                synchronized (this) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        taskRunning = false;
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    logger.warn("Connection handler failed, closing connection", e);
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void write(final Object object) {
+            writeRaw(wireFormat.encode(object));
+        }
+
+        @Override
+        public WireFormat getWireFormat() {
+            return wireFormat;
+        }
+
+        @Override
+        public void writeRaw(final byte[] json) {
+            final var buffer = wireFormat == WireFormat.JSON
+                    ? ByteBuffer.allocate(json.length + 1).put(json).put((byte) '\n').flip()
+                    : ByteBuffer.allocate(4 + json.length).putInt(json.length).put(json).flip();
+
+            synchronized (this) {
+                try {
+                    while (pendingOutput > MAX_PENDING_OUTPUT && !closed) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new AssertionError(new ClosedChannelException());
+                }
+                if (closed) {
+                    throw new AssertionError(new ClosedChannelException());
+                }
+                output.add(buffer);
+                pendingOutput += buffer.remaining();
+                if (output.size() == 1) {
+                    updateInterestOps(SelectionKey.OP_WRITE, 0);
+                    selector.wakeup();
+                }
+            }
+        }
+
+        private synchronized void flush() throws IOException {
+            while (!output.isEmpty()) {
+                final var buffer = output.peek();
+                final var written = channel.write(buffer);
+                pendingOutput -= written;
+                if (buffer.hasRemaining()) {
+                    break;
+                }
+                output.poll();
+            }
+            notifyAll();
+            if (output.isEmpty()) {
+                updateInterestOps(0, SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Must be called while holding the lock of this connection, does nothing once the connection is closed.
+         */
+        private void updateInterestOps(final int add, final int remove) {
+            if (closed) {
+                return;
+            }
+            try {
+                key.interestOps((key.interestOps() | add) & ~remove);
+            } catch (CancelledKeyException e) {
+                logger.debug("Connection {} key has been canceled", connectionId);
+            }
+        }
+
+        private void closeHandler() {
+            final var h = handler;
+            if (h != null) {
+                h.close();
+            }
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (output.isEmpty()) {
+                    close();
+                } else {
+                    // Close the connection once the remaining output is sent
+                    submitCloseWhenFlushed();
+                }
+            }
+        }
+
+        private void submitCloseWhenFlushed() {
+            workers.execute(() -> {
+                synchronized (this) {
+                    try {
+                        while (!output.isEmpty() && !closed) {
+                            wait();
+                        }
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                close();
+            });
+        }
+
+        private void close() {
+            final boolean closeHandler;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                closeHandler = !inputClosed;
+                inputClosed = true;
+                output.clear();
+                notifyAll();
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close channel", e);
+            }
+            logger.info("Connection {} closed: {}", connectionId, clientString);
+            if (closeHandler) {
+                submit(this::closeHandler);
+            }
+        }
+    }
+}
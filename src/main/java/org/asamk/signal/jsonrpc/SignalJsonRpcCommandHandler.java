@@ -1,12 +1,12 @@
 package org.asamk.signal.jsonrpc;
 
-import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ContainerNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
 import org.asamk.signal.commands.Command;
 import org.asamk.signal.commands.JsonRpcMultiCommand;
@@ -20,12 +20,15 @@ import org.asamk.signal.manager.Manager;
 import org.asamk.signal.manager.MultiAccountManager;
 import org.asamk.signal.manager.RegistrationManager;
 import org.asamk.signal.output.JsonWriter;
+import org.asamk.signal.util.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.lang.reflect.Type;
 import java.nio.channels.OverlappingFileLockException;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 public class SignalJsonRpcCommandHandler {
@@ -36,6 +39,9 @@ public class SignalJsonRpcCommandHandler {
     private static final int IO_ERROR = -3;
     private static final int UNTRUSTED_KEY_ERROR = -4;
 
+    private static final ObjectMapper objectMapper = Util.getJsonObjectMapper();
+    private static final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
     private final Manager m;
     private final MultiAccountManager c;
     private final Function<String, Command> commandProvider;
@@ -52,26 +58,30 @@ public class SignalJsonRpcCommandHandler {
         this.commandProvider = commandProvider;
     }
 
-    public JsonNode handleRequest(
-            final ObjectMapper objectMapper, final String method, ContainerNode<?> params
-    ) throws JsonRpcException {
+    /**
+     * @return the result of the command, which is serialized directly into the response
+     */
+    public Object handleRequest(final String method, TokenBuffer params) throws JsonRpcException {
         var command = getCommand(method);
+        String account = null;
         if (c != null) {
+            final var accountParams = removeAccount(params);
+            account = accountParams.account();
+            params = accountParams.params();
+
             if (command instanceof JsonRpcSingleCommand<?> jsonRpcCommand) {
-                final var manager = getManagerFromParams(params);
+                final var manager = getManager(account);
                 if (manager != null) {
-                    return runCommand(objectMapper, params, new CommandRunnerImpl<>(manager, jsonRpcCommand));
+                    return runCommand(params, new CommandRunnerImpl<>(manager, jsonRpcCommand));
                 }
             }
             if (command instanceof JsonRpcMultiCommand<?> jsonRpcCommand) {
-                return runCommand(objectMapper, params, new MultiCommandRunnerImpl<>(c, jsonRpcCommand));
+                return runCommand(params, new MultiCommandRunnerImpl<>(c, jsonRpcCommand));
             }
             if (command instanceof JsonRpcRegistrationCommand<?> jsonRpcCommand) {
-                try (var manager = getRegistrationManagerFromParams(params)) {
+                try (var manager = getRegistrationManager(account)) {
                     if (manager != null) {
-                        return runCommand(objectMapper,
-                                params,
-                                new RegistrationCommandRunnerImpl<>(manager, c, jsonRpcCommand));
+                        return runCommand(params, new RegistrationCommandRunnerImpl<>(manager, c, jsonRpcCommand));
                     } else {
                         throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_PARAMS,
                                 "Method requires valid account parameter",
@@ -84,10 +94,10 @@ public class SignalJsonRpcCommandHandler {
         }
         if (command instanceof JsonRpcSingleCommand<?> jsonRpcCommand) {
             if (m != null) {
-                return runCommand(objectMapper, params, new CommandRunnerImpl<>(m, jsonRpcCommand));
+                return runCommand(params, new CommandRunnerImpl<>(m, jsonRpcCommand));
             }
 
-            var manager = getManagerFromParams(params);
+            var manager = getManager(account);
             if (manager == null) {
                 final var managers = c.getManagers();
                 if (managers.size() == 1) {
@@ -95,7 +105,7 @@ public class SignalJsonRpcCommandHandler {
                 }
             }
             if (manager != null) {
-                return runCommand(objectMapper, params, new CommandRunnerImpl<>(manager, jsonRpcCommand));
+                return runCommand(params, new CommandRunnerImpl<>(manager, jsonRpcCommand));
             } else {
                 throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_PARAMS,
                         "Method requires valid account parameter",
@@ -108,35 +118,66 @@ public class SignalJsonRpcCommandHandler {
                 null));
     }
 
-    private Manager getManagerFromParams(final ContainerNode<?> params) throws JsonRpcException {
-        if (params != null && params.hasNonNull("account")) {
-            final var manager = c.getManager(params.get("account").asText());
-            ((ObjectNode) params).remove("account");
-            if (manager == null) {
-                throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_PARAMS,
-                        "Specified account does not exist",
-                        null));
+    /**
+     * Split the "account" field from the params, the remaining fields are copied as tokens, without a JSON tree.
+     */
+    private static AccountParams removeAccount(final TokenBuffer params) {
+        if (params == null || params.firstToken() != JsonToken.START_OBJECT) {
+            return new AccountParams(null, params);
+        }
+        try (final var parser = params.asParser()) {
+            parser.nextToken();
+            final var remaining = new TokenBuffer(parser);
+            remaining.writeStartObject();
+            String account = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final var name = parser.currentName();
+                final var token = parser.nextToken();
+                if ("account".equals(name)) {
+                    account = token.isScalarValue() && token != JsonToken.VALUE_NULL ? parser.getText() : null;
+                    parser.skipChildren();
+                } else {
+                    remaining.writeFieldName(name);
+                    remaining.copyCurrentStructure(parser);
+                }
             }
-            return manager;
+            remaining.writeEndObject();
+            return new AccountParams(account, remaining);
+        } catch (IOException e) {
+            throw new AssertionError(e);
         }
-        return null;
     }
 
-    private RegistrationManager getRegistrationManagerFromParams(final ContainerNode<?> params) {
-        if (params != null && params.has("account")) {
-            try {
-                final var registrationManager = c.getNewRegistrationManager(params.get("account").asText());
-                ((ObjectNode) params).remove("account");
-                return registrationManager;
-            } catch (OverlappingFileLockException e) {
-                logger.warn("Account is already in use");
-                return null;
-            } catch (IOException | IllegalStateException e) {
-                logger.warn("Failed to load registration manager", e);
-                return null;
-            }
+    private Manager getManager(final String account) throws JsonRpcException {
+        if (account == null) {
+            return null;
+        }
+        final var manager = c.getManager(account);
+        if (manager == null) {
+            throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_PARAMS,
+                    "Specified account does not exist",
+                    null));
         }
-        return null;
+        return manager;
+    }
+
+    private RegistrationManager getRegistrationManager(final String account) {
+        if (account == null) {
+            return null;
+        }
+        try {
+            return c.getNewRegistrationManager(account);
+        } catch (OverlappingFileLockException e) {
+            logger.warn("Account is already in use");
+            return null;
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Failed to load registration manager", e);
+            return null;
+        }
+    }
+
+    private static ObjectReader getReader(final TypeReference<?> requestType) {
+        return readers.computeIfAbsent(requestType.getType(), objectMapper::readerFor);
     }
 
     private Command getCommand(final String method) {
@@ -193,9 +234,9 @@ public class SignalJsonRpcCommandHandler {
         TypeReference<T> getRequestType();
     }
 
-    private JsonNode runCommand(
-            final ObjectMapper objectMapper, final ContainerNode<?> params, final CommandRunner<?> command
-    ) throws JsonRpcException {
+    private record AccountParams(String account, TokenBuffer params) {}
+
+    private Object runCommand(final TokenBuffer params, final CommandRunner<?> command) throws JsonRpcException {
         final Object[] result = {null};
         final JsonWriter commandJsonWriter = s -> {
             if (result[0] != null) {
@@ -206,7 +247,7 @@ public class SignalJsonRpcCommandHandler {
         };
 
         try {
-            parseParamsAndRunCommand(objectMapper, params, commandJsonWriter, command);
+            parseParamsAndRunCommand(params, commandJsonWriter, command);
         } catch (JsonMappingException e) {
             throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INVALID_REQUEST,
                     e.getMessage(),
@@ -214,27 +255,26 @@ public class SignalJsonRpcCommandHandler {
         } catch (UserErrorException e) {
             throw new JsonRpcException(new JsonRpcResponse.Error(USER_ERROR,
                     e.getMessage(),
-                    getErrorDataNode(objectMapper, result)));
+                    getErrorDataNode(result)));
         } catch (IOErrorException e) {
             throw new JsonRpcException(new JsonRpcResponse.Error(IO_ERROR,
                     e.getMessage(),
-                    getErrorDataNode(objectMapper, result)));
+                    getErrorDataNode(result)));
         } catch (UntrustedKeyErrorException e) {
             throw new JsonRpcException(new JsonRpcResponse.Error(UNTRUSTED_KEY_ERROR,
                     e.getMessage(),
-                    getErrorDataNode(objectMapper, result)));
+                    getErrorDataNode(result)));
         } catch (Throwable e) {
             logger.error("Command execution failed", e);
             throw new JsonRpcException(new JsonRpcResponse.Error(JsonRpcResponse.Error.INTERNAL_ERROR,
                     e.getMessage(),
-                    getErrorDataNode(objectMapper, result)));
+                    getErrorDataNode(result)));
         }
 
-        Object output = result[0] == null ? Map.of() : result[0];
-        return objectMapper.valueToTree(output);
+        return result[0] == null ? Map.of() : result[0];
     }
 
-    private JsonNode getErrorDataNode(final ObjectMapper objectMapper, final Object[] result) {
+    private JsonNode getErrorDataNode(final Object[] result) {
         if (result[0] == null) {
             return null;
         }
@@ -242,16 +282,13 @@ public class SignalJsonRpcCommandHandler {
     }
 
     private <T> void parseParamsAndRunCommand(
-            final ObjectMapper objectMapper,
-            final TreeNode params,
-            final JsonWriter jsonWriter,
-            final CommandRunner<T> command
+            final TokenBuffer params, final JsonWriter jsonWriter, final CommandRunner<T> command
     ) throws CommandException, JsonMappingException {
         T requestParams = null;
         final var requestType = command.getRequestType();
         if (params != null && requestType != null) {
             try {
-                requestParams = objectMapper.readValue(objectMapper.treeAsTokens(params), requestType);
+                requestParams = getReader(requestType).readValue(params.asParser());
             } catch (JsonMappingException e) {
                 throw e;
             } catch (IOException e) {
@@ -4,17 +4,19 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ContainerNode;
-import com.fasterxml.jackson.databind.node.IntNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 
+import org.asamk.signal.QueuedReceiveMessageHandler;
+import org.asamk.signal.ReceiveEventHub;
+import org.asamk.signal.ReceiveFilter;
 import org.asamk.signal.commands.Command;
 import org.asamk.signal.commands.Commands;
 import org.asamk.signal.commands.JsonRpcMultiCommand;
 import org.asamk.signal.commands.JsonRpcSingleCommand;
 import org.asamk.signal.commands.exceptions.CommandException;
 import org.asamk.signal.commands.exceptions.UserErrorException;
-import org.asamk.signal.json.JsonReceiveMessageHandler;
+import org.asamk.signal.json.JsonOutboxResult;
 import org.asamk.signal.manager.Manager;
 import org.asamk.signal.manager.MultiAccountManager;
 import org.asamk.signal.manager.api.Pair;
@@ -24,11 +26,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.channels.ClosedChannelException;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
+import java.util.stream.StreamSupport;
 
 public class SignalJsonRpcDispatcherHandler {
 
@@ -38,42 +43,121 @@ public class SignalJsonRpcDispatcherHandler {
     private final JsonRpcSender jsonRpcSender;
     private final JsonRpcReader jsonRpcReader;
     private final boolean noReceiveOnStart;
+    private final QueuedReceiveMessageHandler.Config receiveQueueConfig;
 
-    private final Map<Integer, List<Pair<Manager, Manager.ReceiveMessageHandler>>> receiveHandlers = new HashMap<>();
+    private final Map<Integer, List<Pair<Manager, ReceiveEventHub.Subscriber>>> receiveHandlers = new ConcurrentHashMap<>();
+    private final List<Pair<Manager, Manager.OutboxListener>> outboxListeners = new ArrayList<>();
     private SignalJsonRpcCommandHandler commandHandler;
+    private Runnable closeConnection;
+    // Removes the listeners registered on the managers for this connection
+    private Runnable removeManagerListeners = () -> {};
 
     public SignalJsonRpcDispatcherHandler(
             final JsonWriter jsonWriter, final Supplier<String> lineSupplier, final boolean noReceiveOnStart
+    ) {
+        // The stdio connection is the only subscriber, so blocking the receive thread doesn't delay other subscribers
+        this(jsonWriter,
+                lineSupplier,
+                noReceiveOnStart,
+                null,
+                new QueuedReceiveMessageHandler.Config(QueuedReceiveMessageHandler.Config.DEFAULT.queueSize(),
+                        QueuedReceiveMessageHandler.OverflowPolicy.BLOCK));
+    }
+
+    public SignalJsonRpcDispatcherHandler(
+            final JsonWriter jsonWriter,
+            final Supplier<String> lineSupplier,
+            final boolean noReceiveOnStart,
+            final JsonRpcRequestExecutor requestExecutor,
+            final QueuedReceiveMessageHandler.Config receiveQueueConfig
     ) {
         this.noReceiveOnStart = noReceiveOnStart;
-        this.objectMapper = Util.createJsonObjectMapper();
+        this.receiveQueueConfig = receiveQueueConfig;
+        this.objectMapper = Util.getJsonObjectMapper();
         this.jsonRpcSender = new JsonRpcSender(jsonWriter);
-        this.jsonRpcReader = new JsonRpcReader(jsonRpcSender, lineSupplier);
+        this.jsonRpcReader = new JsonRpcReader(jsonRpcSender, lineSupplier, requestExecutor);
     }
 
     public void handleConnection(final MultiAccountManager c) {
+        final var currentThread = Thread.currentThread();
+        openConnection(c, currentThread::interrupt);
+
+        handleConnection();
+    }
+
+    public void handleConnection(final Manager m) {
+        final var currentThread = Thread.currentThread();
+        openConnection(m, currentThread::interrupt);
+
+        handleConnection();
+    }
+
+    /**
+     * Prepare a connection, whose input is passed with {@link #handleMessage(byte[])} instead of the line supplier.
+     *
+     * @param closeConnection called to close the connection, e.g. if a slow subscriber is disconnected
+     */
+    public void openConnection(final MultiAccountManager c, final Runnable closeConnection) {
+        this.closeConnection = closeConnection;
         this.commandHandler = new SignalJsonRpcCommandHandler(c, this::getCommand);
 
         if (!noReceiveOnStart) {
             this.subscribeReceive(c.getManagers());
-            c.addOnManagerAddedHandler(this::subscribeReceive);
-            c.addOnManagerRemovedHandler(this::unsubscribeReceive);
         }
+        c.getManagers().forEach(this::subscribeOutbox);
 
-        handleConnection();
+        final Consumer<Manager> onManagerAdded = m -> {
+            if (!noReceiveOnStart) {
+                subscribeReceive(m);
+            }
+            subscribeOutbox(m);
+        };
+        final Consumer<Manager> onManagerRemoved = m -> {
+            if (!noReceiveOnStart) {
+                unsubscribeReceive(m);
+            }
+            unsubscribeOutbox(m);
+        };
+        c.addOnManagerAddedHandler(onManagerAdded);
+        c.addOnManagerRemovedHandler(onManagerRemoved);
+        removeManagerListeners = () -> {
+            c.removeOnManagerAddedHandler(onManagerAdded);
+            c.removeOnManagerRemovedHandler(onManagerRemoved);
+        };
     }
 
-    public void handleConnection(final Manager m) {
+    /**
+     * @see #openConnection(MultiAccountManager, Runnable)
+     */
+    public void openConnection(final Manager m, final Runnable closeConnection) {
+        this.closeConnection = closeConnection;
         this.commandHandler = new SignalJsonRpcCommandHandler(m, this::getCommand);
 
         if (!noReceiveOnStart) {
             subscribeReceive(m);
         }
+        subscribeOutbox(m);
 
-        final var currentThread = Thread.currentThread();
-        m.addClosedListener(currentThread::interrupt);
+        m.addClosedListener(closeConnection);
+        removeManagerListeners = () -> m.removeClosedListener(closeConnection);
+    }
 
-        handleConnection();
+    /**
+     * @param message a single message, encoded in the wire format of the json writer
+     */
+    public void handleMessage(final byte[] message) {
+        jsonRpcReader.handleMessage(message, this::handleRequest, this::handleResponse);
+    }
+
+    /**
+     * Wait for running requests and remove the subscriptions of a connection opened with openConnection.
+     */
+    public void closeConnection() {
+        try {
+            jsonRpcReader.awaitRunningRequests();
+        } finally {
+            removeSubscriptions();
+        }
     }
 
     private static final AtomicInteger nextSubscriptionId = new AtomicInteger(0);
@@ -83,28 +167,44 @@ public class SignalJsonRpcDispatcherHandler {
     }
 
     private int subscribeReceive(final List<Manager> managers) {
+        return subscribeReceive(managers, ReceiveFilter.ALL);
+    }
+
+    private int subscribeReceive(final List<Manager> managers, final ReceiveFilter filter) {
         final var subscriptionId = nextSubscriptionId.getAndIncrement();
         final var handlers = managers.stream().map(m -> {
-            final var receiveMessageHandler = new JsonReceiveMessageHandler(m, s -> {
-                final ContainerNode<?> params = objectMapper.valueToTree(s);
-                ((ObjectNode) params).set("subscription", IntNode.valueOf(subscriptionId));
-                final var jsonRpcRequest = JsonRpcRequest.forNotification("receive", params, null);
+            final ReceiveEventHub.Subscriber receiveMessageHandler = event -> {
+                final var params = event.getEncodedWithField(jsonRpcSender.getWireFormat(),
+                        "subscription",
+                        subscriptionId);
                 try {
-                    jsonRpcSender.sendRequest(jsonRpcRequest);
+                    jsonRpcSender.sendNotification("receive", params);
                 } catch (AssertionError e) {
                     if (e.getCause() instanceof ClosedChannelException) {
                         unsubscribeReceive(subscriptionId);
                     }
                 }
-            });
-            m.addReceiveHandler(receiveMessageHandler);
-            return new Pair<>(m, (Manager.ReceiveMessageHandler) receiveMessageHandler);
+            };
+            final var queuedHandler = new QueuedReceiveMessageHandler("jsonrpc-subscription-" + subscriptionId,
+                    m,
+                    receiveMessageHandler,
+                    receiveQueueConfig,
+                    filter,
+                    () -> disconnect(subscriptionId));
+            ReceiveEventHub.get(m).subscribe(queuedHandler);
+            return new Pair<>(m, (ReceiveEventHub.Subscriber) queuedHandler);
         }).toList();
         receiveHandlers.put(subscriptionId, handlers);
 
         return subscriptionId;
     }
 
+    private void disconnect(final int subscriptionId) {
+        // Close the connection first, it wakes up a writer that is blocked by the stalled client
+        closeConnection.run();
+        unsubscribeReceive(subscriptionId);
+    }
+
     private boolean unsubscribeReceive(final int subscriptionId) {
         final var handlers = receiveHandlers.remove(subscriptionId);
         if (handlers == null) {
@@ -125,20 +225,70 @@ public class SignalJsonRpcDispatcherHandler {
         subscriptionId.ifPresent(this::unsubscribeReceive);
     }
 
+    private void subscribeOutbox(final Manager manager) {
+        final Manager.OutboxListener listener = result -> {
+            final ObjectNode params = objectMapper.valueToTree(JsonOutboxResult.from(result));
+            params.put("account", manager.getSelfNumber());
+            try {
+                jsonRpcSender.sendNotification("outboxResult", jsonRpcSender.getWireFormat().encode(params));
+            } catch (AssertionError e) {
+                if (!(e.getCause() instanceof ClosedChannelException)) {
+                    throw e;
+                }
+            }
+        };
+        manager.addOutboxListener(listener);
+        synchronized (outboxListeners) {
+            outboxListeners.add(new Pair<>(manager, listener));
+        }
+    }
+
+    private void unsubscribeOutbox(final Manager manager) {
+        synchronized (outboxListeners) {
+            outboxListeners.removeIf(pair -> {
+                if (!pair.first().equals(manager)) {
+                    return false;
+                }
+                manager.removeOutboxListener(pair.second());
+                return true;
+            });
+        }
+    }
+
     private void handleConnection() {
         try {
-            jsonRpcReader.readMessages((method, params) -> commandHandler.handleRequest(objectMapper, method, params),
-                    response -> logger.debug("Received unexpected response for id {}", response.getId()));
+            jsonRpcReader.readMessages(this::handleRequest, this::handleResponse);
         } finally {
-            receiveHandlers.forEach((_subscriptionId, handlers) -> handlers.forEach(this::unsubscribeReceiveHandler));
-            receiveHandlers.clear();
+            removeSubscriptions();
         }
     }
 
-    private void unsubscribeReceiveHandler(final Pair<Manager, Manager.ReceiveMessageHandler> pair) {
+    private Object handleRequest(final String method, final TokenBuffer params) throws JsonRpcException {
+        return commandHandler.handleRequest(method, params);
+    }
+
+    private void handleResponse(final JsonRpcResponse response) {
+        logger.debug("Received unexpected response for id {}", response.getId());
+    }
+
+    private void removeSubscriptions() {
+        removeManagerListeners.run();
+        receiveHandlers.forEach((_subscriptionId, handlers) -> handlers.forEach(this::unsubscribeReceiveHandler));
+        receiveHandlers.clear();
+        synchronized (outboxListeners) {
+            outboxListeners.forEach(pair -> pair.first().removeOutboxListener(pair.second()));
+            outboxListeners.clear();
+        }
+    }
+
+    private void unsubscribeReceiveHandler(final Pair<Manager, ReceiveEventHub.Subscriber> pair) {
         final var m = pair.first();
         final var handler = pair.second();
-        m.removeReceiveHandler(handler);
+        // Close the queue first, the receive thread may be blocked by a full queue
+        if (handler instanceof QueuedReceiveMessageHandler queuedHandler) {
+            queuedHandler.close();
+        }
+        ReceiveEventHub.get(m).unsubscribe(handler);
     }
 
     private Command getCommand(final String method) {
@@ -151,28 +301,64 @@ public class SignalJsonRpcDispatcherHandler {
         return Commands.getCommand(method);
     }
 
-    private class SubscribeReceiveCommand implements JsonRpcSingleCommand<Void>, JsonRpcMultiCommand<Void> {
+    private class SubscribeReceiveCommand implements JsonRpcSingleCommand<JsonNode>, JsonRpcMultiCommand<JsonNode> {
 
         @Override
         public String getName() {
             return "subscribeReceive";
         }
 
+        @Override
+        public TypeReference<JsonNode> getRequestType() {
+            return new TypeReference<>() {};
+        }
+
         @Override
         public void handleCommand(
-                final Void request, final Manager m, final JsonWriter jsonWriter
+                final JsonNode request, final Manager m, final JsonWriter jsonWriter
         ) throws CommandException {
-            final var subscriptionId = subscribeReceive(m);
+            final var subscriptionId = subscribeReceive(List.of(m), getFilter(request));
             jsonWriter.write(subscriptionId);
         }
 
         @Override
         public void handleCommand(
-                final Void request, final MultiAccountManager c, final JsonWriter jsonWriter
+                final JsonNode request, final MultiAccountManager c, final JsonWriter jsonWriter
         ) throws CommandException {
-            final var subscriptionId = subscribeReceive(c.getManagers());
+            final var subscriptionId = subscribeReceive(c.getManagers(), getFilter(request));
             jsonWriter.write(subscriptionId);
         }
+
+        private ReceiveFilter getFilter(final JsonNode request) throws UserErrorException {
+            if (!(request instanceof ObjectNode req)) {
+                return ReceiveFilter.ALL;
+            }
+            final var hasAttachments = req.get("hasAttachments");
+            if (hasAttachments != null && !hasAttachments.isNull() && !hasAttachments.isBoolean()) {
+                throw new UserErrorException("Invalid hasAttachments value: " + hasAttachments);
+            }
+            try {
+                return ReceiveFilter.from(getStrings(req.get("envelopeTypes")),
+                        getStrings(req.get("groupIds")),
+                        getStrings(req.get("senders")),
+                        hasAttachments == null || hasAttachments.isNull() ? null : hasAttachments.booleanValue());
+            } catch (IllegalArgumentException e) {
+                throw new UserErrorException(e.getMessage());
+            }
+        }
+
+        /**
+         * Like the other multi value parameters, a single value doesn't need to be wrapped in an array.
+         */
+        private List<String> getStrings(final JsonNode node) {
+            if (node == null || node.isNull()) {
+                return List.of();
+            } else if (node.isArray()) {
+                return StreamSupport.stream(node.spliterator(), false).map(JsonNode::asText).toList();
+            } else {
+                return List.of(node.asText());
+            }
+        }
     }
 
     private class UnsubscribeReceiveCommand implements JsonRpcSingleCommand<JsonNode>, JsonRpcMultiCommand<JsonNode> {
@@ -1,6 +1,23 @@
 package org.asamk.signal.output;
 
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.nio.charset.StandardCharsets;
+
 public interface JsonWriter extends OutputWriter {
 
     void write(final Object object);
+
+    /**
+     * Write an already serialized value.
+     *
+     * @param json value encoded in the wire format of this writer, UTF-8 encoded JSON by default
+     */
+    default void writeRaw(final byte[] json) {
+        write(new RawValue(new String(json, StandardCharsets.UTF_8)));
+    }
+
+    default WireFormat getWireFormat() {
+        return WireFormat.JSON;
+    }
 }
@@ -1,27 +1,28 @@
 package org.asamk.signal.output;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import org.asamk.signal.util.Util;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 
 public class JsonWriterImpl implements JsonWriter {
 
     private final Writer writer;
-    private final ObjectMapper objectMapper;
+    private final ObjectWriter objectWriter;
 
     public JsonWriterImpl(final Writer writer) {
         this.writer = writer;
-        this.objectMapper = Util.createJsonObjectMapper();
+        this.objectWriter = Util.getJsonObjectMapper().writer();
     }
 
     public synchronized void write(final Object object) {
         try {
             try {
-                objectMapper.writeValue(writer, object);
+                objectWriter.writeValue(writer, object);
             } catch (JsonProcessingException e) {
                 // Some issue with json serialization, probably caused by a bug
                 throw new AssertionError(e);
@@ -32,4 +33,15 @@ public class JsonWriterImpl implements JsonWriter {
             throw new AssertionError(e);
         }
     }
+
+    @Override
+    public synchronized void writeRaw(final byte[] json) {
+        try {
+            writer.write(new String(json, StandardCharsets.UTF_8));
+            writer.write(System.lineSeparator());
+            writer.flush();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
 }
@@ -0,0 +1,96 @@
+package org.asamk.signal.output;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.asamk.signal.util.Util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+/**
+ * The encoding of the messages of a JSON-RPC connection.
+ */
+public enum WireFormat {
+    /**
+     * JSON text, messages on a socket are separated by newlines.
+     */
+    JSON("application/json", (byte) '{', (byte) '}', new byte[]{':'}, new byte[]{','}) {
+        @Override
+        public String toString() {
+            return "json";
+        }
+    },
+    /**
+     * CBOR, messages on a socket are prefixed with their length as 4 byte big-endian integer.
+     * Binary values, like attachment data, are encoded as byte strings instead of base64 encoded text.
+     */
+    CBOR("application/cbor", (byte) 0xbf, (byte) 0xff, new byte[0], new byte[0]) {
+        @Override
+        public String toString() {
+            return "cbor";
+        }
+    };
+
+    private final String contentType;
+    private final byte objectStart;
+    private final byte objectEnd;
+    private final byte[] nameSeparator;
+    private final byte[] fieldSeparator;
+
+    WireFormat(
+            final String contentType,
+            final byte objectStart,
+            final byte objectEnd,
+            final byte[] nameSeparator,
+            final byte[] fieldSeparator
+    ) {
+        this.contentType = contentType;
+        this.objectStart = objectStart;
+        this.objectEnd = objectEnd;
+        this.nameSeparator = nameSeparator;
+        this.fieldSeparator = fieldSeparator;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public ObjectMapper getObjectMapper() {
+        return switch (this) {
+            case JSON -> Util.getJsonObjectMapper();
+            case CBOR -> Util.getCborObjectMapper();
+        };
+    }
+
+    public byte[] encode(final Object value) {
+        try {
+            return getObjectMapper().writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            // Some issue with json serialization, probably caused by a bug
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Encode an object from already encoded field values, without serializing the values again.
+     *
+     * @param fields the field names with the values encoded in this format, in the order they are written
+     */
+    public byte[] encodeObject(final Map<String, byte[]> fields) {
+        final var output = new ByteArrayOutputStream();
+        output.write(objectStart);
+        var first = true;
+        for (final var field : fields.entrySet()) {
+            if (!first) {
+                output.writeBytes(fieldSeparator);
+            }
+            first = false;
+            output.writeBytes(encode(field.getKey()));
+            output.writeBytes(nameSeparator);
+            output.writeBytes(field.getValue());
+        }
+        output.write(objectEnd);
+        return output.toByteArray();
+    }
+}
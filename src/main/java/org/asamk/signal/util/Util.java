@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
 
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
@@ -61,18 +62,43 @@ public class Util {
         return f.toString();
     }
 
+    private static final ObjectMapper jsonObjectMapper = createJsonObjectMapper();
+    private static final ObjectMapper cborObjectMapper = configureObjectMapper(new CBORMapper());
+
+    /**
+     * Get a shared mapper with the configuration of {@link #createJsonObjectMapper()}, it must not be reconfigured.
+     * Sharing the mapper also shares its cache of serializers and deserializers.
+     */
+    public static ObjectMapper getJsonObjectMapper() {
+        return jsonObjectMapper;
+    }
+
+    /**
+     * Get a shared mapper for the CBOR wire format, with the same configuration as the JSON mapper.
+     */
+    public static ObjectMapper getCborObjectMapper() {
+        return cborObjectMapper;
+    }
+
     public static ObjectMapper createJsonObjectMapper() {
-        var objectMapper = new ObjectMapper();
+        return configureObjectMapper(new ObjectMapper());
+    }
+
+    private static ObjectMapper configureObjectMapper(final ObjectMapper objectMapper) {
         objectMapper.setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.PUBLIC_ONLY);
         objectMapper.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
         return objectMapper;
     }
 
+    /**
+     * @param query the raw query of an URI, which is still URL encoded, as returned by {@link java.net.URI#getRawQuery()}
+     */
     public static Map<String, String> getQueryMap(String query) {
         var params = query.split("&");
         var map = new HashMap<String, String>();
         for (var param : params) {
-            final var paramParts = param.split("=");
+            // Only split at the first '=', the value may contain further '=' characters, e.g. base64 group ids
+            final var paramParts = param.split("=", 2);
             var name = URLDecoder.decode(paramParts[0], StandardCharsets.UTF_8);
             var value = paramParts.length == 1 ? null : URLDecoder.decode(paramParts[1], StandardCharsets.UTF_8);
             map.put(name, value);
@@ -0,0 +1,228 @@
+package org.asamk.signal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueuedReceiveMessageHandlerTest {
+
+    @Test
+    void dropOldestKeepsNewestMessages() throws InterruptedException {
+        final var blocked = new BlockingSubscriber();
+        final var handler = new QueuedReceiveMessageHandler("test",
+                null,
+                blocked,
+                new QueuedReceiveMessageHandler.Config(2, QueuedReceiveMessageHandler.OverflowPolicy.DROP_OLDEST),
+                () -> {});
+
+        final var events = createEvents(5);
+        handler.handleEvent(events.get(0));
+        blocked.awaitFirst();
+        events.subList(1, events.size()).forEach(handler::handleEvent);
+        // The first message is being handled, the queue holds the last two messages
+        assertEquals(2, handler.getStatus().queuedCount());
+        assertEquals(2, handler.getStatus().droppedCount());
+
+        blocked.release();
+        handler.close();
+        assertEquals(List.of(events.get(0), events.get(3), events.get(4)), blocked.handled);
+    }
+
+    @Test
+    void disconnectDiscardsQueueAndNotifies() throws InterruptedException {
+        final var blocked = new BlockingSubscriber();
+        final var disconnected = new CountDownLatch(1);
+        final var handler = new QueuedReceiveMessageHandler("test",
+                null,
+                blocked,
+                new QueuedReceiveMessageHandler.Config(2, QueuedReceiveMessageHandler.OverflowPolicy.DISCONNECT),
+                disconnected::countDown);
+
+        final var events = createEvents(5);
+        handler.handleEvent(events.get(0));
+        blocked.awaitFirst();
+        events.subList(1, events.size()).forEach(handler::handleEvent);
+        blocked.release();
+
+        assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(events.get(0)), blocked.handled);
+    }
+
+    @Test
+    void disconnectDoesntWaitForStalledSubscriber() throws InterruptedException {
+        final var started = new CountDownLatch(1);
+        final var testDone = new CountDownLatch(1);
+        // Never returns while the test runs, not even when interrupted
+        final ReceiveEventHub.Subscriber stalled = event -> {
+            started.countDown();
+            while (testDone.getCount() > 0) {
+                try {
+                    testDone.await();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        };
+        final var disconnected = new CountDownLatch(1);
+        final var handler = new QueuedReceiveMessageHandler("stalled",
+                null,
+                stalled,
+                new QueuedReceiveMessageHandler.Config(2, QueuedReceiveMessageHandler.OverflowPolicy.DISCONNECT),
+                disconnected::countDown);
+
+        try {
+            handler.handleEvent(createEvents(1).get(0));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            createEvents(3).forEach(handler::handleEvent);
+
+            assertTrue(disconnected.await(5, TimeUnit.SECONDS));
+            assertTrue(QueuedReceiveMessageHandler.getStatus(null)
+                    .stream()
+                    .noneMatch(status -> status.name().equals("stalled")));
+            final var closeStart = System.nanoTime();
+            handler.close();
+            assertTrue(System.nanoTime() - closeStart < TimeUnit.SECONDS.toNanos(1));
+        } finally {
+            testDone.countDown();
+        }
+    }
+
+    @Test
+    void blockWaitsForSubscriber() throws InterruptedException {
+        final var blocked = new BlockingSubscriber();
+        final var handler = new QueuedReceiveMessageHandler("test",
+                null,
+                blocked,
+                new QueuedReceiveMessageHandler.Config(1, QueuedReceiveMessageHandler.OverflowPolicy.BLOCK),
+                () -> {});
+
+        final var events = createEvents(3);
+        handler.handleEvent(events.get(0));
+        blocked.awaitFirst();
+        handler.handleEvent(events.get(1));
+
+        final var receiveDone = new AtomicBoolean(false);
+        final var receiveThread = new Thread(() -> {
+            handler.handleEvent(events.get(2));
+            receiveDone.set(true);
+        });
+        receiveThread.start();
+        receiveThread.join(200);
+        assertFalse(receiveDone.get());
+
+        blocked.release();
+        receiveThread.join(5000);
+        assertTrue(receiveDone.get());
+        handler.close();
+        assertEquals(events, blocked.handled);
+    }
+
+    @Test
+    void closeDeliversQueuedMessages() throws InterruptedException {
+        final var blocked = new BlockingSubscriber();
+        final var handler = new QueuedReceiveMessageHandler("test",
+                null,
+                blocked,
+                QueuedReceiveMessageHandler.Config.DEFAULT,
+                () -> {});
+
+        final var events = createEvents(10);
+        events.forEach(handler::handleEvent);
+        blocked.awaitFirst();
+        blocked.release();
+        handler.close();
+
+        assertEquals(events, blocked.handled);
+        // Messages received after closing aren't accepted anymore
+        handler.handleEvent(createEvents(1).get(0));
+        assertEquals(10, blocked.handled.size());
+    }
+
+    @Test
+    void messagesAfterIdleWriterAreDelivered() throws InterruptedException {
+        final var handled = new LinkedBlockingQueue<ReceiveEvent>();
+        final var handler = new QueuedReceiveMessageHandler("test",
+                null,
+                handled::add,
+                QueuedReceiveMessageHandler.Config.DEFAULT,
+                () -> {});
+
+        // Each message arrives while the previous writer may just be finding an empty queue
+        for (final var event : createEvents(1000)) {
+            handler.handleEvent(event);
+            assertSame(event, handled.poll(5, TimeUnit.SECONDS));
+        }
+        handler.close();
+    }
+
+    @Test
+    void idleSubscribersDontUseThreads() {
+        final var threadsBefore = countWriterThreads();
+        final var handlers = new ArrayList<QueuedReceiveMessageHandler>();
+        for (var i = 0; i < 100; i++) {
+            handlers.add(new QueuedReceiveMessageHandler("test-" + i,
+                    null,
+                    event -> {},
+                    QueuedReceiveMessageHandler.Config.DEFAULT,
+                    () -> {}));
+        }
+
+        assertEquals(threadsBefore, countWriterThreads());
+        handlers.forEach(QueuedReceiveMessageHandler::close);
+    }
+
+    private static long countWriterThreads() {
+        return Thread.getAllStackTraces()
+                .keySet()
+                .stream()
+                .filter(t -> t.getName().startsWith("receive-writer-"))
+                .count();
+    }
+
+    private static List<ReceiveEvent> createEvents(int count) {
+        final var events = new CopyOnWriteArrayList<ReceiveEvent>();
+        for (var i = 0; i < count; i++) {
+            events.add(new ReceiveEvent(null, null, null));
+        }
+        return events;
+    }
+
+    /**
+     * Blocks the handling of the first message until it's released.
+     */
+    private static class BlockingSubscriber implements ReceiveEventHub.Subscriber {
+
+        private final List<ReceiveEvent> handled = new CopyOnWriteArrayList<>();
+        private final CountDownLatch first = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        @Override
+        public void handleEvent(final ReceiveEvent event) {
+            handled.add(event);
+            first.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        void awaitFirst() throws InterruptedException {
+            assertTrue(first.await(5, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            released.countDown();
+        }
+    }
+}
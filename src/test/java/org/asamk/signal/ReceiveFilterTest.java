@@ -0,0 +1,80 @@
+package org.asamk.signal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReceiveFilterTest {
+
+    private static final ReceiveFilter.Attributes GROUP_DATA = new ReceiveFilter.Attributes(EnumSet.of(
+            ReceiveFilter.EnvelopeType.DATA), Set.of("Z3JvdXA="), Set.of("+491234", "uuid"), true);
+    private static final ReceiveFilter.Attributes RECEIPT = new ReceiveFilter.Attributes(EnumSet.of(
+            ReceiveFilter.EnvelopeType.RECEIPT), Set.of(), Set.of("+495678"), false);
+
+    @Test
+    void parsesQueryWithCommaSeparatedValues() {
+        final var filter = ReceiveFilter.fromQuery(Map.of("envelopeTypes",
+                "data,sync",
+                "groupIds",
+                "Z3JvdXA=,b3RoZXI=",
+                "senders",
+                "+491234",
+                "hasAttachments",
+                "false"));
+
+        assertEquals(EnumSet.of(ReceiveFilter.EnvelopeType.DATA, ReceiveFilter.EnvelopeType.SYNC),
+                filter.envelopeTypes());
+        assertEquals(Set.of("Z3JvdXA=", "b3RoZXI="), filter.groupIds());
+        assertEquals(Set.of("+491234"), filter.senders());
+        assertEquals(Boolean.FALSE, filter.hasAttachments());
+    }
+
+    @Test
+    void emptyQueryMatchesAll() {
+        final var filter = ReceiveFilter.fromQuery(Map.of("envelopeTypes", ""));
+
+        assertTrue(filter.matchesAll());
+        assertNull(filter.hasAttachments());
+    }
+
+    @Test
+    void rejectsInvalidQueryValues() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ReceiveFilter.fromQuery(Map.of("hasAttachments", "yes")));
+        assertThrows(IllegalArgumentException.class, () -> ReceiveFilter.fromQuery(Map.of("hasAttachments", "1")));
+        assertThrows(IllegalArgumentException.class, () -> ReceiveFilter.fromQuery(Map.of("envelopeTypes", "foo")));
+    }
+
+    @Test
+    void matchesAttributes() {
+        final var filter = ReceiveFilter.from(List.of("data"), List.of("Z3JvdXA="), List.of(), null);
+
+        assertTrue(filter.matches(GROUP_DATA));
+        assertFalse(filter.matches(RECEIPT));
+        assertTrue(filter.matches((ReceiveFilter.Attributes) null));
+    }
+
+    @Test
+    void matchesSendersAndAttachments() {
+        assertTrue(ReceiveFilter.from(List.of(), List.of(), List.of("uuid"), null).matches(GROUP_DATA));
+        assertFalse(ReceiveFilter.from(List.of(), List.of(), List.of("uuid"), null).matches(RECEIPT));
+        assertTrue(ReceiveFilter.from(List.of(), List.of(), List.of(), false).matches(RECEIPT));
+        assertFalse(ReceiveFilter.from(List.of(), List.of(), List.of(), false).matches(GROUP_DATA));
+    }
+
+    @Test
+    void allMatchesEveryMessage() {
+        assertTrue(ReceiveFilter.ALL.matchesAll());
+        assertTrue(ReceiveFilter.ALL.matches(RECEIPT));
+        assertTrue(ReceiveFilter.ALL.matches(ReceiveFilter.Attributes.NONE));
+    }
+}
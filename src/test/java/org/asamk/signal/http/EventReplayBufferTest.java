@@ -0,0 +1,152 @@
+package org.asamk.signal.http;
+
+import org.asamk.signal.ReceiveFilter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventReplayBufferTest {
+
+    private static final ReceiveFilter.Attributes ATTRIBUTES = new ReceiveFilter.Attributes(EnumSet.of(
+            ReceiveFilter.EnvelopeType.DATA,
+            ReceiveFilter.EnvelopeType.SYNC), Set.of("Z3JvdXA="), Set.of("+491234", "uuid"), true);
+
+    @Test
+    void replaysEventsAfterId() {
+        try (final var buffer = new EventReplayBuffer("+491234", new EventReplayBuffer.Config(1024, null, 0))) {
+            final var firstId = addEvents(buffer, 3);
+
+            try (final var replay = buffer.getEventsAfter(firstId)) {
+                assertTrue(replay.complete());
+                assertEquals(List.of(firstId + 1, firstId + 2), getIds(replay));
+            }
+        }
+    }
+
+    @Test
+    void dropsOldestEventsFromMemory() {
+        try (final var buffer = new EventReplayBuffer("+491234", new EventReplayBuffer.Config(40, null, 0))) {
+            final var firstId = addEvents(buffer, 10);
+
+            try (final var replay = buffer.getEventsAfter(firstId)) {
+                assertFalse(replay.complete());
+                final var ids = getIds(replay);
+                assertTrue(ids.size() < 9);
+                assertEquals(firstId + 9, (long) ids.get(ids.size() - 1));
+            }
+            assertEquals(1, buffer.getStatus().missCount());
+        }
+    }
+
+    @Test
+    void replaysSpilledEventsAfterRestart() throws IOException, InterruptedException {
+        final var directory = Files.createTempDirectory("event-replay").toFile();
+        try {
+            final var config = new EventReplayBuffer.Config(40, directory, 1024 * 1024);
+            final long firstId;
+            try (final var buffer = new EventReplayBuffer("+491234", config)) {
+                firstId = addEvents(buffer, 10);
+            }
+            // Events of the previous run are older than the new buffer
+            Thread.sleep(2);
+
+            try (final var buffer = new EventReplayBuffer("+491234", config)) {
+                try (final var replay = buffer.getEventsAfter(firstId - 1)) {
+                    assertTrue(replay.complete());
+                    final var events = replay.events().toList();
+                    assertEquals(10, events.size());
+                    assertEquals(getJson(firstId + 3), events.get(3).json());
+                    assertEquals(ATTRIBUTES, events.get(3).attributes());
+                }
+            }
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    void rotatesSpillFiles() throws IOException, InterruptedException {
+        final var directory = Files.createTempDirectory("event-replay").toFile();
+        try {
+            final var config = new EventReplayBuffer.Config(40, directory, 1000);
+            final long firstId;
+            try (final var buffer = new EventReplayBuffer("+491234", config)) {
+                firstId = addEvents(buffer, 20);
+            }
+            Thread.sleep(2);
+
+            assertTrue(new File(directory, "+491234.events.old").exists());
+            try (final var buffer = new EventReplayBuffer("+491234", config)) {
+                try (final var replay = buffer.getEventsAfter(firstId - 1)) {
+                    assertFalse(replay.complete());
+                    final var ids = getIds(replay);
+                    assertTrue(ids.size() < 20);
+                    assertEquals(firstId + 19, (long) ids.get(ids.size() - 1));
+                }
+            }
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    @Test
+    void readsLinesOfOlderVersions() throws IOException {
+        final var directory = Files.createTempDirectory("event-replay").toFile();
+        try {
+            final var id = System.currentTimeMillis() * 1000 - 10;
+            Files.writeString(new File(directory, "+491234.events").toPath(),
+                    id + "\t{\"old\":true}\ninvalid line\n",
+                    StandardCharsets.UTF_8);
+
+            final var config = new EventReplayBuffer.Config(1024, directory, 1024 * 1024);
+            try (final var buffer = new EventReplayBuffer("+491234", config)) {
+                try (final var replay = buffer.getEventsAfter(id - 1)) {
+                    assertTrue(replay.complete());
+                    final var events = replay.events().toList();
+                    assertEquals(1, events.size());
+                    assertEquals("{\"old\":true}", events.get(0).json());
+                    assertNull(events.get(0).attributes());
+                }
+            }
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    /**
+     * @return the id of the first added event
+     */
+    private static long addEvents(final EventReplayBuffer buffer, final int count) {
+        final var firstId = System.currentTimeMillis() * 1000 + 1;
+        for (var i = 0; i < count; i++) {
+            buffer.add(new EventReplayBuffer.Entry(firstId + i, getJson(firstId + i), ATTRIBUTES));
+        }
+        return firstId;
+    }
+
+    private static String getJson(final long id) {
+        return "{\"id\":" + id + ",\"text\":\"äöü\"}";
+    }
+
+    private static List<Long> getIds(final EventReplayBuffer.Replay replay) {
+        return replay.events().map(EventReplayBuffer.Entry::id).toList();
+    }
+
+    private static void deleteRecursively(final File directory) throws IOException {
+        try (final var files = Files.walk(directory.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+        }
+    }
+}
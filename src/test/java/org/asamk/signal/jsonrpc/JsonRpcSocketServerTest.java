@@ -0,0 +1,186 @@
+package org.asamk.signal.jsonrpc;
+
+import org.asamk.signal.output.JsonWriter;
+import org.asamk.signal.output.WireFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class JsonRpcSocketServerTest {
+
+    @Test
+    void splitsJsonLines() throws IOException, InterruptedException {
+        try (final var server = new TestServer(WireFormat.JSON); final var client = server.connect()) {
+            write(client, "{\"a\":1}\r\n{\"b\"");
+            write(client, ":2}\n{\"c\":3}");
+            client.shutdownOutput();
+
+            assertEquals("{\"a\":1}", server.takeMessage());
+            assertEquals("{\"b\":2}", server.takeMessage());
+            assertEquals("{\"c\":3}", server.takeMessage());
+        }
+    }
+
+    @Test
+    void reassemblesCborFrames() throws IOException, InterruptedException {
+        try (final var server = new TestServer(WireFormat.CBOR); final var client = server.connect()) {
+            final var large = new byte[200 * 1024];
+            Arrays.fill(large, (byte) 0xa5);
+            final var frames = ByteBuffer.allocate(4 + 3 + 4 + large.length)
+                    .putInt(3)
+                    .put(new byte[]{1, 2, 3})
+                    .putInt(large.length)
+                    .put(large)
+                    .flip();
+            // Split the frame headers and the frames over multiple writes
+            while (frames.hasRemaining()) {
+                final var chunkSize = frames.position() < 16 ? 3 : 50_000;
+                final var chunk = frames.slice(frames.position(), Math.min(frames.remaining(), chunkSize));
+                frames.position(frames.position() + chunk.remaining());
+                client.write(chunk);
+            }
+
+            assertArrayEquals(new byte[]{1, 2, 3}, server.takeRawMessage());
+            assertArrayEquals(large, server.takeRawMessage());
+        }
+    }
+
+    @Test
+    void closesConnectionForOversizedFrame() throws IOException {
+        try (final var server = new TestServer(WireFormat.CBOR); final var client = server.connect()) {
+            client.write(ByteBuffer.allocate(4).putInt(JsonRpcSocketServer.MAX_MESSAGE_SIZE + 1).flip());
+
+            assertClosed(client);
+        }
+    }
+
+    @Test
+    void closesConnectionForOversizedLine() throws IOException {
+        try (final var server = new TestServer(WireFormat.JSON); final var client = server.connect()) {
+            final var line = new byte[JsonRpcSocketServer.MAX_MESSAGE_SIZE + 1];
+            Arrays.fill(line, (byte) ' ');
+            final var buffer = ByteBuffer.wrap(line);
+            try {
+                while (buffer.hasRemaining()) {
+                    client.write(buffer);
+                }
+            } catch (IOException ignored) {
+                // The server may close the connection before the whole line is sent
+            }
+
+            assertClosed(client);
+        }
+    }
+
+    @Test
+    void writesMessagesInWireFormat() throws IOException {
+        final var message = "{\"x\":1}".getBytes(StandardCharsets.UTF_8);
+        try (final var server = new TestServer(WireFormat.JSON); final var client = server.connect()) {
+            server.writer().writeRaw(message);
+
+            final var line = ByteBuffer.allocate(message.length + 1);
+            readFully(client, line);
+            assertEquals("{\"x\":1}\n", new String(line.array(), StandardCharsets.UTF_8));
+        }
+        try (final var server = new TestServer(WireFormat.CBOR); final var client = server.connect()) {
+            server.writer().writeRaw(message);
+
+            final var frame = ByteBuffer.allocate(4 + message.length);
+            readFully(client, frame);
+            assertEquals(message.length, frame.getInt(0));
+            assertArrayEquals(message, Arrays.copyOfRange(frame.array(), 4, frame.capacity()));
+        }
+    }
+
+    private static void write(final SocketChannel channel, final String text) throws IOException {
+        final var buffer = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void assertClosed(final SocketChannel channel) {
+        try {
+            assertEquals(-1, readFully(channel, ByteBuffer.allocate(1)));
+        } catch (IOException ignored) {
+            // The connection may also be reset
+        }
+    }
+
+    private static int readFully(final SocketChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return -1;
+            }
+        }
+        return buffer.position();
+    }
+
+    private static class TestServer implements AutoCloseable {
+
+        private final ServerSocketChannel serverChannel;
+        private final BlockingQueue<byte[]> messages = new LinkedBlockingQueue<>();
+        private final BlockingQueue<JsonWriter> writers = new LinkedBlockingQueue<>();
+
+        private TestServer(final WireFormat wireFormat) throws IOException {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            new JsonRpcSocketServer(serverChannel, (jsonWriter, closeConnection) -> {
+                writers.add(jsonWriter);
+                return new JsonRpcSocketServer.ConnectionHandler() {
+                    @Override
+                    public void handleMessage(final byte[] message) {
+                        messages.add(message);
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+            }, () -> {}, wireFormat).start();
+        }
+
+        private SocketChannel connect() throws IOException {
+            return SocketChannel.open(serverChannel.getLocalAddress());
+        }
+
+        private JsonWriter writer() {
+            try {
+                final var writer = writers.poll(10, TimeUnit.SECONDS);
+                assertNotNull(writer);
+                return writer;
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        private byte[] takeRawMessage() throws InterruptedException {
+            final var message = messages.poll(10, TimeUnit.SECONDS);
+            assertNotNull(message);
+            return message;
+        }
+
+        private String takeMessage() throws InterruptedException {
+            return new String(takeRawMessage(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverChannel.close();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.asamk.signal.output;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the encode and decode throughput of the wire formats for a received message with an attachment.
+ * It's not part of the test suite, run it with the test classpath, optionally passing the attachment sizes in bytes.
+ */
+public class WireFormatBenchmark {
+
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+    private static final long MEASURE_NANOS = 5_000_000_000L;
+
+    public static void main(String[] args) throws IOException {
+        final var attachmentSizes = args.length == 0
+                ? new int[]{0, 16 * 1024, 1024 * 1024}
+                : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        System.out.printf("%-6s %10s %10s %14s %14s %12s%n",
+                "format",
+                "attachment",
+                "size",
+                "encode msg/s",
+                "decode msg/s",
+                "decode MB/s");
+        for (final var attachmentSize : attachmentSizes) {
+            final var envelope = createEnvelope(attachmentSize);
+            for (final var wireFormat : WireFormat.values()) {
+                run(wireFormat, envelope, attachmentSize);
+            }
+        }
+    }
+
+    private static void run(
+            final WireFormat wireFormat, final Map<String, Object> envelope, final int attachmentSize
+    ) throws IOException {
+        final var encoded = wireFormat.encode(envelope);
+        final var mapper = wireFormat.getObjectMapper();
+
+        measure(WARMUP_NANOS, () -> wireFormat.encode(envelope));
+        final var encodeRate = measure(MEASURE_NANOS, () -> wireFormat.encode(envelope));
+        measure(WARMUP_NANOS, () -> mapper.readTree(encoded));
+        final var decodeRate = measure(MEASURE_NANOS, () -> mapper.readTree(encoded));
+
+        System.out.printf("%-6s %10d %10d %14.0f %14.0f %12.1f%n",
+                wireFormat,
+                attachmentSize,
+                encoded.length,
+                encodeRate,
+                decodeRate,
+                decodeRate * encoded.length / (1024 * 1024));
+    }
+
+    /**
+     * @return the number of operations per second
+     */
+    private static double measure(final long durationNanos, final Operation operation) throws IOException {
+        final var start = System.nanoTime();
+        final var end = start + durationNanos;
+        long count = 0;
+        long now;
+        do {
+            operation.run();
+            count++;
+            now = System.nanoTime();
+        } while (now < end);
+        return count * 1_000_000_000.0 / (now - start);
+    }
+
+    /**
+     * Same structure and field sizes as a JsonMessageEnvelope of a received data message.
+     */
+    private static Map<String, Object> createEnvelope(final int attachmentSize) {
+        final var data = new byte[attachmentSize];
+        for (var i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        final var attachment = new LinkedHashMap<String, Object>();
+        attachment.put("contentType", "image/jpeg");
+        attachment.put("filename", "IMG_20240101_120000.jpg");
+        attachment.put("id", "Kx8vQ2nTz0cE5mYbR7wA.jpg");
+        attachment.put("size", attachmentSize);
+        attachment.put("width", 1600);
+        attachment.put("height", 1200);
+        attachment.put("caption", null);
+        attachment.put("uploadTimestamp", 1704110400000L);
+        attachment.put("data", data);
+
+        final var dataMessage = new LinkedHashMap<String, Object>();
+        dataMessage.put("timestamp", 1704110400123L);
+        dataMessage.put("message", "Here are the photos from yesterday, the second one is the best 📷");
+        dataMessage.put("expiresInSeconds", 0);
+        dataMessage.put("viewOnce", false);
+        dataMessage.put("attachments", List.of(attachment));
+
+        final var envelope = new LinkedHashMap<String, Object>();
+        envelope.put("source", "+491234567890");
+        envelope.put("sourceNumber", "+491234567890");
+        envelope.put("sourceUuid", "6f1c2a9e-0b3d-4e5f-8a7b-9c0d1e2f3a4b");
+        envelope.put("sourceName", "Alice Example");
+        envelope.put("sourceDevice", 1);
+        envelope.put("timestamp", 1704110400123L);
+        envelope.put("serverReceivedTimestamp", 1704110400456L);
+        envelope.put("serverDeliveredTimestamp", 1704110400789L);
+        envelope.put("dataMessage", dataMessage);
+        return Map.of("account", "+499876543210", "envelope", envelope);
+    }
+
+    private interface Operation {
+
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,68 @@
+package org.asamk.signal.output;
+
+import org.asamk.signal.util.Util;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WireFormatTest {
+
+    private static final byte[] DATA = {0, 1, 2, (byte) 0xff};
+
+    @Test
+    void roundTripsValuesInBothFormats() throws IOException {
+        for (final var wireFormat : WireFormat.values()) {
+            final var value = new LinkedHashMap<String, Object>();
+            value.put("text", "Grüße");
+            value.put("number", 42);
+            value.put("list", List.of("a", "b"));
+            value.put("data", DATA);
+
+            final var tree = wireFormat.getObjectMapper().readTree(wireFormat.encode(value));
+
+            assertEquals("Grüße", tree.get("text").asText(), wireFormat.toString());
+            assertEquals(42, tree.get("number").asInt());
+            assertEquals(2, tree.get("list").size());
+            assertArrayEquals(DATA, tree.get("data").binaryValue());
+        }
+    }
+
+    @Test
+    void encodesBinaryValuesAsByteStringsInCbor() throws IOException {
+        final var json = Util.getJsonObjectMapper().readTree(WireFormat.JSON.encode(Map.of("data", DATA)));
+        final var cbor = Util.getCborObjectMapper().readTree(WireFormat.CBOR.encode(Map.of("data", DATA)));
+
+        assertTrue(json.get("data").isTextual());
+        assertTrue(cbor.get("data").isBinary());
+    }
+
+    @Test
+    void encodesObjectsFromEncodedFields() throws IOException {
+        for (final var wireFormat : WireFormat.values()) {
+            final var fields = new LinkedHashMap<String, byte[]>();
+            fields.put("jsonrpc", wireFormat.encode("2.0"));
+            fields.put("params", wireFormat.encode(Map.of("data", DATA)));
+
+            final var mapper = wireFormat.getObjectMapper();
+            final var expected = mapper.readTree(wireFormat.encode(Map.of("jsonrpc",
+                    "2.0",
+                    "params",
+                    Map.of("data", DATA))));
+            assertEquals(expected, mapper.readTree(wireFormat.encodeObject(fields)), wireFormat.toString());
+        }
+    }
+
+    @Test
+    void encodesJsonAsUtf8Text() {
+        assertEquals("{\"text\":\"Grüße\"}",
+                new String(WireFormat.JSON.encode(Map.of("text", "Grüße")), StandardCharsets.UTF_8));
+    }
+}
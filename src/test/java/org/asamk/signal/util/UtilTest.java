@@ -0,0 +1,32 @@
+package org.asamk.signal.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UtilTest {
+
+    @Test
+    void splitsQueryParametersAtFirstEquals() {
+        final var query = Util.getQueryMap("groupIds=Z3JvdXA=,b3RoZXI=&senders=");
+
+        assertEquals("Z3JvdXA=,b3RoZXI=", query.get("groupIds"));
+        assertEquals("", query.get("senders"));
+    }
+
+    @Test
+    void decodesRawQueryOnce() {
+        final var uri = URI.create("/api/v1/events?account=%2B491234&groupIds=Z3JvdXA%3D&text=a%2525b+c&flag");
+        final var query = Util.getQueryMap(uri.getRawQuery());
+
+        assertEquals("+491234", query.get("account"));
+        assertEquals("Z3JvdXA=", query.get("groupIds"));
+        assertEquals("a%25b c", query.get("text"));
+        assertTrue(query.containsKey("flag"));
+        assertNull(query.get("flag"));
+    }
+}